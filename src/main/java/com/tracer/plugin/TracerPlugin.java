@@ -1,6 +1,8 @@
 package com.tracer.plugin;
 
 import com.tracer.plugin.analysis.ChunkAnalyzer;
+import com.tracer.plugin.analysis.EntityTrackerListener;
+import com.tracer.plugin.analysis.RedstoneIndexListener;
 import com.tracer.plugin.commands.TracerCommand;
 import com.tracer.plugin.config.ConfigManager;
 import com.tracer.plugin.scheduler.ScanScheduler;
@@ -39,6 +41,8 @@ public final class TracerPlugin extends JavaPlugin {
     @Getter
     private ChunkAnalyzer chunkAnalyzer;
     
+    private RedstoneIndexListener redstoneIndexListener;
+    
     @Override
     public void onEnable() {
         // Set static instance
@@ -50,6 +54,9 @@ public final class TracerPlugin extends JavaPlugin {
         // Register commands
         this.registerCommands();
         
+        // Register event listeners
+        this.registerListeners();
+        
         // Start background tasks
         this.startBackgroundTasks();
         
@@ -66,6 +73,14 @@ public final class TracerPlugin extends JavaPlugin {
             this.scanScheduler.shutdown();
         }
         
+        if (this.redstoneIndexListener != null) {
+            this.redstoneIndexListener.shutdown();
+        }
+        
+        if (this.chunkAnalyzer != null) {
+            this.chunkAnalyzer.shutdown();
+        }
+        
         // Clear all visualizations
         if (this.visualizationManager != null) {
             this.visualizationManager.clearAllVisualizations();
@@ -124,11 +139,35 @@ public final class TracerPlugin extends JavaPlugin {
         }
     }
     
+    /**
+     * Register all plugin event listeners.
+     */
+    private void registerListeners() {
+        try {
+            // Keep the redstone index current from block events
+            this.redstoneIndexListener = new RedstoneIndexListener(this, this.chunkAnalyzer.getRedstoneIndex());
+            this.getServer().getPluginManager().registerEvents(this.redstoneIndexListener, this);
+            
+            // Keep live entity counts current from entity events
+            this.getServer().getPluginManager().registerEvents(
+                new EntityTrackerListener(this.chunkAnalyzer.getEntityTracker()), this);
+            
+            this.getLogger().info("Listeners registered successfully.");
+            
+        } catch (Exception e) {
+            this.getLogger().severe("Failed to register listeners: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
     /**
      * Start background tasks and schedulers.
      */
     private void startBackgroundTasks() {
         try {
+            // Start live entity tracking if enabled
+            this.chunkAnalyzer.configureEntityTracker();
+            
             // Start automatic scanning if enabled
             if (this.configManager.isScanningEnabled()) {
                 this.scanScheduler.startAutomaticScanning();
@@ -0,0 +1,148 @@
+package com.tracer.plugin.analysis;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded worker pool for chunk analysis, owned by Tracer so that large scans
+ * never occupy the shared Bukkit async pool.
+ * 
+ * The pool has {@code performance.max-async-tasks} named daemon threads and a bounded
+ * work queue. The capture queue checks {@link #hasCapacity()} before taking a capture,
+ * so the work queue never overflows and captured snapshots do not pile up in memory.
+ */
+final class AnalysisExecutor {
+    
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+    
+    private final ThreadPoolExecutor executor;
+    private final ArrayBlockingQueue<Runnable> workQueue;
+    private final Logger logger;
+    
+    AnalysisExecutor(final int threads, final int queueCapacity, final Logger logger) {
+        this.logger = logger;
+        this.workQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        
+        final int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+            this.workQueue, new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Resize the pool.
+     * 
+     * @param threads The number of worker threads
+     */
+    void setThreads(final int threads) {
+        final int poolSize = Math.max(1, threads);
+        if (poolSize > this.executor.getMaximumPoolSize()) {
+            this.executor.setMaximumPoolSize(poolSize);
+            this.executor.setCorePoolSize(poolSize);
+        } else {
+            this.executor.setCorePoolSize(poolSize);
+            this.executor.setMaximumPoolSize(poolSize);
+        }
+    }
+    
+    /**
+     * Check if another task can be queued without being rejected.
+     * 
+     * @return true if the work queue has room
+     */
+    boolean hasCapacity() {
+        return !this.executor.isShutdown() && this.workQueue.remainingCapacity() > 0;
+    }
+    
+    /**
+     * Submit an analysis task.
+     * 
+     * @param task The task to run on a worker thread
+     * @throws java.util.concurrent.RejectedExecutionException if the queue is full or the pool is shut down
+     */
+    void execute(final Runnable task) {
+        this.executor.execute(task);
+    }
+    
+    /**
+     * Get the number of tasks waiting for a worker.
+     * 
+     * @return The queue depth
+     */
+    int getQueueDepth() {
+        return this.workQueue.size();
+    }
+    
+    /**
+     * Get the capacity of the work queue.
+     * 
+     * @return The queue capacity
+     */
+    int getQueueCapacity() {
+        return this.workQueue.size() + this.workQueue.remainingCapacity();
+    }
+    
+    /**
+     * Get the number of workers currently running a task.
+     * 
+     * @return The active worker count
+     */
+    int getActiveWorkers() {
+        return this.executor.getActiveCount();
+    }
+    
+    /**
+     * Get the configured number of workers.
+     * 
+     * @return The pool size
+     */
+    int getPoolSize() {
+        return this.executor.getMaximumPoolSize();
+    }
+    
+    /**
+     * Get the number of completed tasks.
+     * 
+     * @return The completed task count
+     */
+    long getCompletedTasks() {
+        return this.executor.getCompletedTaskCount();
+    }
+    
+    /**
+     * Stop accepting tasks and wait briefly for queued and running tasks to finish.
+     */
+    void shutdown() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                this.logger.warning("Analysis workers did not finish in time, interrupting them.");
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Creates named daemon worker threads.
+     */
+    private final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "Tracer-Analysis-" + this.counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((t, e) ->
+                logger.log(Level.WARNING, "Uncaught exception in " + t.getName(), e));
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.tracer.plugin.analysis;
+
+import com.tracer.plugin.TracerPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Central queue of chunk captures, drained on the main thread within a per-tick budget.
+ * 
+ * Each tick at most {@code scanning.max-chunks-per-tick} captures run, and draining stops
+ * early once {@code scanning.capture-budget-micros} of wall-clock time has been used.
+ * At least one capture runs per tick so the queue always makes progress, unless the
+ * analysis workers have no room for another capture.
+ */
+final class CaptureQueue {
+    
+    private final TracerPlugin plugin;
+    private final Queue<PendingCapture> queue;
+    private final AtomicInteger pending;
+    
+    /**
+     * Whether downstream analysis can take another capture
+     */
+    private final BooleanSupplier canCapture;
+    
+    private volatile int maxCapturesPerTick;
+    private volatile long budgetNanos;
+    
+    private BukkitTask drainTask;
+    
+    // Statistics
+    private volatile int lastTickCaptures;
+    private volatile long lastTickNanos;
+    
+    CaptureQueue(final TracerPlugin plugin, final int maxCapturesPerTick, final int budgetMicros,
+                 final BooleanSupplier canCapture) {
+        this.plugin = plugin;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger();
+        this.canCapture = canCapture;
+        this.configure(maxCapturesPerTick, budgetMicros);
+    }
+    
+    /**
+     * Apply new budgets.
+     * 
+     * @param maxCapturesPerTick The maximum number of captures per tick
+     * @param budgetMicros The wall-clock budget per tick in microseconds
+     */
+    void configure(final int maxCapturesPerTick, final int budgetMicros) {
+        this.maxCapturesPerTick = Math.max(1, maxCapturesPerTick);
+        this.budgetNanos = Math.max(1, budgetMicros) * 1000L;
+    }
+    
+    /**
+     * Start draining the queue every tick.
+     */
+    synchronized void start() {
+        if (this.drainTask != null) {
+            return;
+        }
+        
+        this.drainTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }.runTaskTimer(this.plugin, 1L, 1L);
+    }
+    
+    /**
+     * Queue a capture. Safe to call from any thread.
+     * 
+     * @param capture The capture to run on the main thread
+     * @param future The future completed by the capture, completed with null if the queue shuts down first
+     */
+    void submit(final Runnable capture, final CompletableFuture<?> future) {
+        this.queue.add(new PendingCapture(capture, future));
+        this.pending.incrementAndGet();
+    }
+    
+    /**
+     * Run queued captures until the count or time budget of this tick is used up.
+     */
+    private void drain() {
+        if (this.queue.isEmpty()) {
+            this.lastTickCaptures = 0;
+            this.lastTickNanos = 0;
+            return;
+        }
+        
+        final long start = System.nanoTime();
+        final long deadline = start + this.budgetNanos;
+        final int maxCaptures = this.maxCapturesPerTick;
+        int captures = 0;
+        
+        PendingCapture next;
+        while (captures < maxCaptures && this.canCapture.getAsBoolean() && (next = this.queue.poll()) != null) {
+            this.pending.decrementAndGet();
+            captures++;
+            try {
+                next.capture.run();
+            } catch (Exception e) {
+                next.future.completeExceptionally(e);
+            }
+            
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        
+        this.lastTickCaptures = captures;
+        this.lastTickNanos = System.nanoTime() - start;
+    }
+    
+    /**
+     * Get the number of captures waiting in the queue.
+     * 
+     * @return The queue length
+     */
+    int getPendingCount() {
+        return this.pending.get();
+    }
+    
+    /**
+     * Get the number of captures run in the last tick.
+     * 
+     * @return The capture count
+     */
+    int getLastTickCaptures() {
+        return this.lastTickCaptures;
+    }
+    
+    /**
+     * Get the time spent capturing in the last tick.
+     * 
+     * @return The time in microseconds
+     */
+    long getLastTickMicros() {
+        return this.lastTickNanos / 1000L;
+    }
+    
+    /**
+     * Stop draining and complete all queued captures with null.
+     */
+    synchronized void shutdown() {
+        if (this.drainTask != null) {
+            this.drainTask.cancel();
+            this.drainTask = null;
+        }
+        
+        PendingCapture next;
+        while ((next = this.queue.poll()) != null) {
+            this.pending.decrementAndGet();
+            next.future.complete(null);
+        }
+    }
+    
+    /**
+     * A queued capture and the future it completes.
+     */
+    private static final class PendingCapture {
+        private final Runnable capture;
+        private final CompletableFuture<?> future;
+        
+        private PendingCapture(final Runnable capture, final CompletableFuture<?> future) {
+            this.capture = capture;
+            this.future = future;
+        }
+    }
+}
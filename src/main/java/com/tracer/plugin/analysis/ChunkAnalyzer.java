@@ -2,21 +2,30 @@ package com.tracer.plugin.analysis;
 
 import com.tracer.plugin.TracerPlugin;
 import com.tracer.plugin.config.ConfigManager;
+import com.tracer.plugin.util.ChunkKeys;
 import com.tracer.plugin.analysis.LagLevel;
 import com.tracer.plugin.analysis.LagScore;
 import lombok.Getter;
+import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.data.AnaloguePowerable;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Lightable;
+import org.bukkit.block.data.Powerable;
+import org.bukkit.block.data.type.Dispenser;
+import org.bukkit.block.data.type.Hopper;
+import org.bukkit.block.data.type.Piston;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 /**
@@ -29,20 +38,46 @@ public final class ChunkAnalyzer {
     private final ConfigManager configManager;
     
     /**
-     * Cache for storing recent analysis results
+     * Pending analyses per world by packed chunk key, so concurrent callers for a chunk share one analysis
+     */
+    private final Map<String, Map<Long, CompletableFuture<LagScore>>> inFlightAnalyses;
+    
+    /**
+     * Main-thread captures, drained within a per-tick budget
+     */
+    private final CaptureQueue captureQueue;
+    
+    /**
+     * Bounded worker pool that analyzes captured chunks
+     */
+    private final AnalysisExecutor analysisExecutor;
+    
+    /**
+     * Skips chunk sections that cannot contain redstone components
+     */
+    private final SectionFilter redstoneSectionFilter;
+    
+    /**
+     * Event-maintained redstone counts, used instead of walking indexed chunks
+     */
+    @Getter
+    private final RedstoneIndex redstoneIndex;
+    
+    /**
+     * Live per-chunk entity counts, used instead of iterating chunk entities
      */
     @Getter
-    private final Map<String, LagScore> analysisCache;
+    private final EntityTracker entityTracker;
     
     /**
-     * Set of chunks currently being analyzed to prevent duplicate analysis
+     * Weight of each entity type in the entity count, indexed by ordinal
      */
-    private final Set<String> analyzingChunks;
+    private volatile int[] entityWeights;
     
     /**
      * Materials that are considered redstone components
      */
-    private static final Set<Material> REDSTONE_MATERIALS = EnumSet.of(
+    static final Set<Material> REDSTONE_MATERIALS = EnumSet.of(
         Material.REDSTONE_WIRE,
         Material.REDSTONE_TORCH,
         Material.REDSTONE_WALL_TORCH,
@@ -97,15 +132,28 @@ public final class ChunkAnalyzer {
     public ChunkAnalyzer(final TracerPlugin plugin) {
         this.plugin = plugin;
         this.configManager = plugin.getConfigManager();
-        this.analysisCache = new ConcurrentHashMap<>();
-        this.analyzingChunks = ConcurrentHashMap.newKeySet();
+        this.inFlightAnalyses = new ConcurrentHashMap<>();
+        this.redstoneSectionFilter = new SectionFilter(REDSTONE_MATERIALS, plugin);
+        this.analysisExecutor = new AnalysisExecutor(this.configManager.getMaxAsyncTasks(),
+            this.configManager.getAnalysisQueueSize(), plugin.getLogger());
+        this.captureQueue = new CaptureQueue(plugin, this.configManager.getMaxChunksPerTick(),
+            this.configManager.getCaptureBudgetMicros(),
+            () -> !this.configManager.isAsyncScanning() || this.analysisExecutor.hasCapacity());
+        this.redstoneIndex = new RedstoneIndex(this.configManager.isRedstoneIndexEnabled(),
+            this.configManager.getRedstoneIndexMaxAge());
+        this.entityTracker = new EntityTracker(plugin);
+        this.entityWeights = this.buildEntityWeights();
+        
+        // Start draining queued captures
+        this.captureQueue.start();
         
-        // Start cache cleanup task
-        this.startCacheCleanupTask();
+        // Re-analyze hot chunks before their cached score expires
+        plugin.getDataStorage().setRefreshHandler(this::refreshChunk);
     }
     
     /**
      * Analyze a single chunk and return its lag score.
+     * Callers asking for a chunk that is already being analyzed join that analysis.
      * 
      * @param chunk The chunk to analyze
      * @return CompletableFuture containing the lag score
@@ -115,55 +163,91 @@ public final class ChunkAnalyzer {
             return CompletableFuture.completedFuture(null);
         }
         
-        final String chunkKey = this.getChunkKey(chunk);
+        final String worldName = chunk.getWorld().getName();
+        final long chunkKey = ChunkKeys.pack(chunk.getX(), chunk.getZ());
+        final Map<Long, CompletableFuture<LagScore>> worldAnalyses = this.inFlightAnalyses.computeIfAbsent(
+            worldName, name -> new ConcurrentHashMap<>());
         
-        // Check if chunk is already being analyzed
-        if (this.analyzingChunks.contains(chunkKey)) {
-            return CompletableFuture.completedFuture(this.plugin.getDataStorage().getLagScore(
-                chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
+        // Join the analysis of this chunk if one is already in flight
+        final CompletableFuture<LagScore> inFlight = worldAnalyses.get(chunkKey);
+        if (inFlight != null) {
+            return inFlight;
         }
         
-        // Check cache first
-        final LagScore cachedScore = this.plugin.getDataStorage().getLagScore(
-            chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
-        if (cachedScore != null && cachedScore.isFresh(this.configManager.getCacheDuration() * 1000L)) {
+        // Check cache first, expired scores are never returned
+        final LagScore cachedScore = this.plugin.getDataStorage().getLagScore(worldName, chunk.getX(), chunk.getZ());
+        if (cachedScore != null) {
             return CompletableFuture.completedFuture(cachedScore);
         }
         
-        // Mark chunk as being analyzed
-        this.analyzingChunks.add(chunkKey);
+        return this.startAnalysis(chunk, worldName, chunkKey);
+    }
+    
+    /**
+     * Re-analyze a chunk whose cached score is about to expire, if it is still loaded.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     */
+    private void refreshChunk(final String worldName, final int chunkX, final int chunkZ) {
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(this.plugin, () -> this.refreshChunk(worldName, chunkX, chunkZ));
+            return;
+        }
+        
+        final World world = Bukkit.getWorld(worldName);
+        if (world == null || !world.isChunkLoaded(chunkX, chunkZ)) {
+            return;
+        }
         
+        this.plugin.debugLog("Refreshing cached score of chunk " + worldName + ":" + chunkX + "," + chunkZ);
+        this.startAnalysis(world.getChunkAt(chunkX, chunkZ), worldName, ChunkKeys.pack(chunkX, chunkZ));
+    }
+    
+    /**
+     * Queue the analysis of a chunk without consulting the cache.
+     * 
+     * @param chunk The chunk to analyze
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @return CompletableFuture containing the lag score
+     */
+    private CompletableFuture<LagScore> startAnalysis(final Chunk chunk, final String worldName, final long chunkKey) {
+        final Map<Long, CompletableFuture<LagScore>> worldAnalyses = this.inFlightAnalyses.computeIfAbsent(
+            worldName, name -> new ConcurrentHashMap<>());
+        
+        // Register the analysis, or join one that is already in flight
         final CompletableFuture<LagScore> future = new CompletableFuture<>();
+        final CompletableFuture<LagScore> existing = worldAnalyses.putIfAbsent(chunkKey, future);
+        if (existing != null) {
+            return existing;
+        }
         
         if (this.configManager.isAsyncScanning()) {
-            // Perform analysis asynchronously
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    try {
-                        final LagScore score = performAnalysis(chunk);
-                        plugin.getDataStorage().storeLagScore(score);
-                        analyzingChunks.remove(chunkKey);
-                        future.complete(score);
-                    } catch (Exception e) {
-                        plugin.getLogger().log(Level.WARNING, "Error analyzing chunk " + chunkKey, e);
-                        analyzingChunks.remove(chunkKey);
-                        future.completeExceptionally(e);
-                    }
+            // Capture on the main thread, then walk the snapshot on a worker thread
+            this.captureQueue.submit(this.guardAnalysis(worldName, chunkKey, future, () -> {
+                final ChunkCapture capture = this.tryCapture(chunk, worldName, chunkKey, future);
+                if (capture == null) {
+                    return;
                 }
-            }.runTaskAsynchronously(this.plugin);
+                
+                try {
+                    this.analysisExecutor.execute(() -> this.completeAnalysis(capture, worldName, chunkKey, future));
+                } catch (RejectedExecutionException e) {
+                    // Only happens while shutting down
+                    this.finishInFlight(worldName, chunkKey, future);
+                    future.complete(null);
+                }
+            }), future);
         } else {
-            // Perform analysis synchronously
-            try {
-                final LagScore score = this.performAnalysis(chunk);
-                this.plugin.getDataStorage().storeLagScore(score);
-                this.analyzingChunks.remove(chunkKey);
-                future.complete(score);
-            } catch (Exception e) {
-                this.plugin.getLogger().log(Level.WARNING, "Error analyzing chunk " + chunkKey, e);
-                this.analyzingChunks.remove(chunkKey);
-                future.completeExceptionally(e);
-            }
+            // Perform capture and analysis synchronously
+            this.captureQueue.submit(this.guardAnalysis(worldName, chunkKey, future, () -> {
+                final ChunkCapture capture = this.tryCapture(chunk, worldName, chunkKey, future);
+                if (capture != null) {
+                    this.completeAnalysis(capture, worldName, chunkKey, future);
+                }
+            }), future);
         }
         
         return future;
@@ -249,55 +333,199 @@ public final class ChunkAnalyzer {
     }
     
     /**
-     * Perform the actual analysis of a chunk.
+     * Wrap a task of a pending analysis so that an unexpected failure still unregisters the
+     * analysis, otherwise every later caller would join the failed future.
      * 
-     * @param chunk The chunk to analyze
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @param future The future of the pending analysis
+     * @param task The task
+     * @return The guarded task
+     */
+    private Runnable guardAnalysis(final String worldName, final long chunkKey, final CompletableFuture<LagScore> future,
+                                   final Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                this.plugin.getLogger().log(Level.WARNING, "Error analyzing chunk " + this.describeChunk(worldName, chunkKey), e);
+                this.finishInFlight(worldName, chunkKey, future);
+                future.completeExceptionally(e);
+            }
+        };
+    }
+    
+    /**
+     * Capture a chunk, completing the future directly if the capture is not possible.
+     * 
+     * @param chunk The chunk to capture
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @param future The future of the pending analysis
+     * @return The capture, or null if the future has already been completed
+     */
+    private ChunkCapture tryCapture(final Chunk chunk, final String worldName, final long chunkKey,
+                                    final CompletableFuture<LagScore> future) {
+        try {
+            final ChunkCapture capture = this.captureChunk(chunk);
+            if (capture == null) {
+                // Chunk was unloaded before it could be captured
+                this.finishInFlight(worldName, chunkKey, future);
+                future.complete(null);
+            }
+            return capture;
+        } catch (Exception e) {
+            this.plugin.getLogger().log(Level.WARNING, "Error capturing chunk " + this.describeChunk(worldName, chunkKey), e);
+            this.finishInFlight(worldName, chunkKey, future);
+            future.completeExceptionally(e);
+            return null;
+        }
+    }
+    
+    /**
+     * Analyze a capture, store the result and complete the future.
+     * 
+     * @param capture The chunk capture
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @param future The future of the pending analysis
+     */
+    private void completeAnalysis(final ChunkCapture capture, final String worldName, final long chunkKey,
+                                  final CompletableFuture<LagScore> future) {
+        try {
+            final LagScore score = this.performAnalysis(capture);
+            this.plugin.getDataStorage().storeLagScore(score);
+            this.finishInFlight(worldName, chunkKey, future);
+            future.complete(score);
+        } catch (Exception e) {
+            this.plugin.getLogger().log(Level.WARNING, "Error analyzing chunk " + this.describeChunk(worldName, chunkKey), e);
+            this.finishInFlight(worldName, chunkKey, future);
+            future.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * Remove a finished analysis from the in-flight analyses, unless a newer one replaced it.
+     * 
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @param future The future of the finished analysis
+     */
+    private void finishInFlight(final String worldName, final long chunkKey, final CompletableFuture<LagScore> future) {
+        final Map<Long, CompletableFuture<LagScore>> worldAnalyses = this.inFlightAnalyses.get(worldName);
+        if (worldAnalyses != null) {
+            worldAnalyses.remove(chunkKey, future);
+        }
+    }
+    
+    /**
+     * Capture the state of a chunk needed for analysis.
+     * Must be called on the main thread.
+     * 
+     * @param chunk The chunk to capture
+     * @return The capture, or null if the chunk is no longer loaded
+     */
+    private ChunkCapture captureChunk(final Chunk chunk) {
+        if (!chunk.isLoaded()) {
+            return null;
+        }
+        
+        final World world = chunk.getWorld();
+        
+        // Only take a block snapshot if the redstone index has no usable entry
+        final int indexedRedstone = this.redstoneIndex.getRedstoneCount(world.getName(), chunk.getX(), chunk.getZ());
+        ChunkSnapshot snapshot = null;
+        int captureTick = -1;
+        if (indexedRedstone < 0) {
+            snapshot = chunk.getChunkSnapshot(false, false, false);
+            captureTick = this.redstoneIndex.beginBuild(world.getName(), chunk.getX(), chunk.getZ());
+        }
+        
+        final int[] entityTypes = new int[this.entityWeights.length];
+        // Few materials occur per chunk, a hash map is much smaller than an enum map over every material
+        final Map<Material, Integer> tileEntityTypes = new HashMap<>();
+        final int entityCount = this.countEntities(chunk, entityTypes);
+        final int tileEntityCount = this.countTileEntities(chunk, tileEntityTypes);
+        
+        return new ChunkCapture(
+            world.getName(),
+            chunk.getX(),
+            chunk.getZ(),
+            world.getMinHeight(),
+            world.getMaxHeight(),
+            entityCount,
+            tileEntityCount,
+            TypeCounts.of(entityTypes, tileEntityTypes),
+            indexedRedstone,
+            captureTick,
+            snapshot
+        );
+    }
+    
+    /**
+     * Perform the actual analysis of a captured chunk.
+     * Safe to call from any thread.
+     * 
+     * @param capture The chunk capture to analyze
      * @return The calculated lag score
      */
-    private LagScore performAnalysis(final Chunk chunk) {
+    private LagScore performAnalysis(final ChunkCapture capture) {
         try {
-            // Count entities, tile entities, and redstone components
-            final int entityCount = this.countEntities(chunk);
-            final int tileEntityCount = this.countTileEntities(chunk);
-            final int redstoneCount = this.countRedstoneComponents(chunk);
+            // Entities and tile entities were counted during capture
+            final int redstoneCount = capture.getSnapshot() != null
+                ? this.countRedstoneComponents(capture)
+                : capture.getIndexedRedstoneCount();
             final double currentTps = this.getCurrentTPS();
             
             // Create LagScore with all the data
             final LagScore score = new LagScore(
-                chunk.getWorld().getName(),
-                chunk.getX(),
-                chunk.getZ(),
-                entityCount,
-                tileEntityCount,
+                capture.getWorldName(),
+                capture.getChunkX(),
+                capture.getChunkZ(),
+                capture.getEntityCount(),
+                capture.getTileEntityCount(),
                 redstoneCount,
-                currentTps
+                currentTps,
+                capture.getTypeCounts()
             );
             
-            this.plugin.debugLog("Analyzed chunk " + this.getChunkKey(chunk) + ": " + score.getFormattedString());
+            // Only format the score when it is logged
+            if (this.plugin.isDebugMode()) {
+                this.plugin.debugLog("Analyzed chunk " + capture.getWorldName() + ":" + capture.getChunkX() + "," + capture.getChunkZ()
+                    + ": " + score.getFormattedString());
+            }
             return score;
             
         } catch (Exception e) {
             this.plugin.getLogger().log(Level.WARNING, "Error during chunk analysis", e);
             // Return a default score in case of error
-            final LagScore errorScore = new LagScore(
-                chunk.getWorld().getName(),
-                chunk.getX(),
-                chunk.getZ(),
-                0, 0, 0, 20.0
-            );
-            errorScore.setDetails("Analysis error: " + e.getMessage());
-             return errorScore;
-   }
-       }
+            return LagScore.failed(capture.getWorldName(), capture.getChunkX(), capture.getChunkZ(),
+                "Analysis error: " + e.getMessage());
+        }
+    }
     
     /**
      * Count entities in a chunk.
+     * Reads the live counts of the entity tracker when it is running.
      * 
      * @param chunk The chunk to analyze
+     * @param types Receives the unweighted count of every entity type in the chunk, indexed by ordinal
      * @return The number of entities
      */
-    private int countEntities(final Chunk chunk) {
+    private int countEntities(final Chunk chunk, final int[] types) {
         try {
+            final int[] weights = this.entityWeights;
+            if (this.entityTracker.isRunning()) {
+                this.entityTracker.copyCounts(chunk.getWorld().getName(), chunk.getX(), chunk.getZ(), types);
+                int count = 0;
+                for (int type = 0; type < types.length; type++) {
+                    if (types[type] != 0) {
+                        count += types[type] * weights[type];
+                    }
+                }
+                return count;
+            }
+            
             final Entity[] entities = chunk.getEntities();
             if (entities == null) {
                 return 0;
@@ -305,13 +533,9 @@ public final class ChunkAnalyzer {
             
             int count = 0;
             for (Entity entity : entities) {
-                if (entity != null && this.shouldCountEntity(entity)) {
-                    count++;
-                    
-                    // Give extra weight to performance-intensive entities
-                    if (INTENSIVE_ENTITIES.contains(entity.getType())) {
-                        count++; // Count twice
-                    }
+                if (entity != null) {
+                    count += weights[entity.getType().ordinal()];
+                    types[entity.getType().ordinal()]++;
                 }
             }
             
@@ -326,9 +550,10 @@ public final class ChunkAnalyzer {
      * Count tile entities (block entities) in a chunk.
      * 
      * @param chunk The chunk to analyze
+     * @param types Receives the count of every counted tile entity material
      * @return The number of tile entities
      */
-    private int countTileEntities(final Chunk chunk) {
+    private int countTileEntities(final Chunk chunk, final Map<Material, Integer> types) {
         try {
             final BlockState[] tileEntities = chunk.getTileEntities();
             if (tileEntities == null) {
@@ -339,6 +564,7 @@ public final class ChunkAnalyzer {
             for (BlockState tileEntity : tileEntities) {
                 if (tileEntity != null && this.shouldCountTileEntity(tileEntity)) {
                     count++;
+                    types.merge(tileEntity.getType(), 1, Integer::sum);
                 }
             }
             
@@ -350,36 +576,54 @@ public final class ChunkAnalyzer {
     }
     
     /**
-     * Count redstone components in a chunk.
+     * Count redstone components in a captured chunk and seed the redstone index with the result.
+     * Walks the immutable snapshot, so no live world state is touched.
+     * Sections that cannot contain a redstone component are skipped whole.
      * 
-     * @param chunk The chunk to analyze
+     * @param capture The chunk capture
      * @return The number of redstone components
      */
-    private int countRedstoneComponents(final Chunk chunk) {
+    private int countRedstoneComponents(final ChunkCapture capture) {
         try {
-            int count = 0;
-            final int chunkX = chunk.getX() << 4;
-            final int chunkZ = chunk.getZ() << 4;
-            final World world = chunk.getWorld();
+            int components = 0;
+            int active = 0;
+            final ChunkSnapshot snapshot = capture.getSnapshot();
+            final int minHeight = capture.getMinHeight();
+            final int maxHeight = capture.getMaxHeight();
+            final int minSection = minHeight >> 4;
+            final int maxSection = (maxHeight - 1) >> 4;
             
-            // Scan all blocks in the chunk
-            for (int x = 0; x < 16; x++) {
-                for (int z = 0; z < 16; z++) {
-                    for (int y = world.getMinHeight(); y < world.getMaxHeight(); y++) {
-                        final Block block = world.getBlockAt(chunkX + x, y, chunkZ + z);
-                        if (this.isRedstoneComponent(block)) {
-                            count++;
-                            
-                            // Check if the component is powered (active)
-                            if (block.isBlockPowered() || block.isBlockIndirectlyPowered()) {
-                                count++; // Count active components twice
+            // Scan only the sections that may contain redstone
+            for (int section = minSection; section <= maxSection; section++) {
+                if (!this.redstoneSectionFilter.mayContain(snapshot, section - minSection)) {
+                    continue;
+                }
+                
+                final int startY = Math.max(minHeight, section << 4);
+                final int endY = Math.min(maxHeight, (section + 1) << 4);
+                
+                for (int y = startY; y < endY; y++) {
+                    for (int x = 0; x < 16; x++) {
+                        for (int z = 0; z < 16; z++) {
+                            if (this.isRedstoneComponent(snapshot.getBlockType(x, y, z))) {
+                                components++;
+                                
+                                // Check if the component is active
+                                if (isActiveComponent(snapshot.getBlockData(x, y, z))) {
+                                    active++;
+                                }
                             }
                         }
                     }
                 }
             }
             
-            return count;
+            if (capture.getCaptureTick() >= 0) {
+                this.redstoneIndex.completeBuild(capture.getWorldName(), capture.getChunkX(), capture.getChunkZ(),
+                    capture.getCaptureTick(), components, active);
+            }
+            
+            return components + active; // Count active components twice
         } catch (Exception e) {
             this.plugin.debugLog("Error counting redstone components in chunk: " + e.getMessage());
             return 0;
@@ -387,23 +631,38 @@ public final class ChunkAnalyzer {
     }
     
     /**
-     * Check if an entity should be counted in the analysis.
+     * Build the weight of every entity type from the configuration.
+     * Uncounted types weigh 0 and performance-intensive types are counted twice.
      * 
-     * @param entity The entity to check
-     * @return true if the entity should be counted
+     * @return The weights indexed by entity type ordinal
      */
-    private boolean shouldCountEntity(final Entity entity) {
-        if (entity == null) {
-            return false;
+    private int[] buildEntityWeights() {
+        final EntityType[] types = EntityType.values();
+        final int[] weights = new int[types.length];
+        for (EntityType type : types) {
+            if (this.shouldCountEntity(type)) {
+                weights[type.ordinal()] = INTENSIVE_ENTITIES.contains(type) ? 2 : 1;
+            }
         }
-        
-        final EntityType type = entity.getType();
-        
+        return weights;
+    }
+    
+    /**
+     * Check if an entity type should be counted in the analysis.
+     * 
+     * @param type The entity type to check
+     * @return true if entities of the type should be counted
+     */
+    private boolean shouldCountEntity(final EntityType type) {
         // Always count certain types
         if (INTENSIVE_ENTITIES.contains(type)) {
             return true;
         }
         
+        if (type.getEntityClass() == null) {
+            return true; // Count other entities by default
+        }
+        
         // Check configuration for specific entity types
         switch (type.getEntityClass().getSimpleName()) {
             case "Animals":
@@ -436,17 +695,41 @@ public final class ChunkAnalyzer {
     }
     
     /**
-     * Check if a block is a redstone component.
+     * Check if a material is a redstone component.
      * 
-     * @param block The block to check
-     * @return true if the block is a redstone component
+     * @param material The material to check
+     * @return true if the material is a redstone component
      */
-    private boolean isRedstoneComponent(final Block block) {
-        if (block == null) {
-            return false;
+    private boolean isRedstoneComponent(final Material material) {
+        return material != null && REDSTONE_MATERIALS.contains(material);
+    }
+    
+    /**
+     * Check if a redstone component is active, based on its own block state.
+     * 
+     * @param data The block data of the component
+     * @return true if the component is powered, lit, extended or triggered
+     */
+    static boolean isActiveComponent(final BlockData data) {
+        if (data instanceof AnaloguePowerable analoguePowerable) {
+            return analoguePowerable.getPower() > 0;
         }
-        
-        return REDSTONE_MATERIALS.contains(block.getType());
+        if (data instanceof Powerable powerable) {
+            return powerable.isPowered();
+        }
+        if (data instanceof Lightable lightable) {
+            return lightable.isLit();
+        }
+        if (data instanceof Piston piston) {
+            return piston.isExtended();
+        }
+        if (data instanceof Dispenser dispenser) {
+            return dispenser.isTriggered();
+        }
+        if (data instanceof Hopper hopper) {
+            return !hopper.isEnabled(); // Hoppers are disabled by power
+        }
+        return false;
     }
     
     /**
@@ -467,13 +750,14 @@ public final class ChunkAnalyzer {
     }
     
     /**
-     * Generate a unique key for a chunk.
+     * Describe a chunk for log messages.
      * 
-     * @param chunk The chunk
-     * @return The chunk key
+     * @param worldName The world name
+     * @param chunkKey The packed chunk key
+     * @return The chunk description
      */
-    private String getChunkKey(final Chunk chunk) {
-        return chunk.getWorld().getName() + ":" + chunk.getX() + "," + chunk.getZ();
+    private String describeChunk(final String worldName, final long chunkKey) {
+        return worldName + ":" + ChunkKeys.unpackX(chunkKey) + "," + ChunkKeys.unpackZ(chunkKey);
     }
     
     /**
@@ -490,28 +774,35 @@ public final class ChunkAnalyzer {
      * @return The cache size
      */
     public int getCacheSize() {
-        return this.plugin.getDataStorage().getCacheStats().containsKey("cache_size") ? 
-            (Integer) this.plugin.getDataStorage().getCacheStats().get("cache_size") : 0;
+        final Object size = this.plugin.getDataStorage().getCacheStats().get("cache_size");
+        return size instanceof Integer ? (Integer) size : 0;
     }
     
     /**
-     * Start the cache cleanup task to remove old entries.
+     * Get the number of chunks waiting to be captured.
+     * 
+     * @return The capture queue length
      */
-    private void startCacheCleanupTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                cleanupCache();
-            }
-        }.runTaskTimerAsynchronously(this.plugin, 20 * 60, 20 * 60); // Run every minute
+    public int getPendingCaptureCount() {
+        return this.captureQueue.getPendingCount();
     }
     
     /**
-     * Clean up old entries from the cache.
+     * Get statistics of the capture queue and the analysis workers.
+     * 
+     * @return Map containing queue and worker statistics
      */
-    private void cleanupCache() {
-        // Cache cleanup is now handled by DataStorage
-        this.plugin.debugLog("Cache cleanup delegated to DataStorage");
+    public Map<String, Object> getWorkerStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending_captures", this.captureQueue.getPendingCount());
+        stats.put("captures_last_tick", this.captureQueue.getLastTickCaptures());
+        stats.put("capture_micros_last_tick", this.captureQueue.getLastTickMicros());
+        stats.put("queue_depth", this.analysisExecutor.getQueueDepth());
+        stats.put("queue_capacity", this.analysisExecutor.getQueueCapacity());
+        stats.put("active_workers", this.analysisExecutor.getActiveWorkers());
+        stats.put("worker_threads", this.analysisExecutor.getPoolSize());
+        stats.put("completed_analyses", this.analysisExecutor.getCompletedTasks());
+        return stats;
     }
     
     /**
@@ -520,9 +811,33 @@ public final class ChunkAnalyzer {
     public void reloadConfiguration() {
         // Clear cache when configuration is reloaded
         this.clearCache();
+        this.redstoneIndex.configure(this.configManager.isRedstoneIndexEnabled(),
+            this.configManager.getRedstoneIndexMaxAge());
+        this.entityWeights = this.buildEntityWeights();
+        this.configureEntityTracker();
+        this.captureQueue.configure(this.configManager.getMaxChunksPerTick(),
+            this.configManager.getCaptureBudgetMicros());
+        this.analysisExecutor.setThreads(this.configManager.getMaxAsyncTasks());
+    }
+    
+    /**
+     * Start or stop the entity tracker according to the configuration.
+     * Must be called on the main thread.
+     */
+    public void configureEntityTracker() {
+        if (this.configManager.isEntityTrackingEnabled()) {
+            this.entityTracker.start(this.configManager.getEntityReconcileChunksPerTick());
+        } else if (this.entityTracker.isRunning()) {
+            this.entityTracker.shutdown();
+        }
     }
     
     public void shutdown() {
-        this.analyzingChunks.clear();
+        this.plugin.getDataStorage().setRefreshHandler(null);
+        this.captureQueue.shutdown();
+        this.analysisExecutor.shutdown();
+        this.inFlightAnalyses.clear();
+        this.redstoneIndex.clear();
+        this.entityTracker.shutdown();
     }
 }
\ No newline at end of file
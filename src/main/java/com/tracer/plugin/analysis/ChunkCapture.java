@@ -0,0 +1,85 @@
+package com.tracer.plugin.analysis;
+
+import lombok.Getter;
+import org.bukkit.ChunkSnapshot;
+
+/**
+ * Immutable capture of a chunk taken on the main thread.
+ * Holds everything the analysis workers need so that no live world state
+ * has to be touched off the main thread.
+ */
+public final class ChunkCapture {
+    
+    // Chunk identification
+    @Getter
+    private final String worldName;
+    
+    @Getter
+    private final int chunkX;
+    
+    @Getter
+    private final int chunkZ;
+    
+    // World height bounds at capture time
+    @Getter
+    private final int minHeight;
+    
+    @Getter
+    private final int maxHeight;
+    
+    // Counts that can only be read on the main thread
+    @Getter
+    private final int entityCount;
+    
+    @Getter
+    private final int tileEntityCount;
+    
+    // Entity and tile entity counts per type
+    @Getter
+    private final TypeCounts typeCounts;
+    
+    // Redstone count from the redstone index, or -1 if the snapshot must be walked
+    @Getter
+    private final int indexedRedstoneCount;
+    
+    // Server tick the redstone index build started on, or -1 if no build was started
+    @Getter
+    private final int captureTick;
+    
+    // Immutable block snapshot for the redstone walk, null if the index count is used
+    @Getter
+    private final ChunkSnapshot snapshot;
+    
+    /**
+     * Create a new ChunkCapture.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param minHeight The minimum build height of the world
+     * @param maxHeight The maximum build height of the world
+     * @param entityCount The weighted entity count
+     * @param tileEntityCount The tile entity count
+     * @param typeCounts The entity and tile entity counts per type
+     * @param indexedRedstoneCount The indexed redstone count, or -1 if unavailable
+     * @param captureTick The tick of the redstone index build, or -1 if none was started
+     * @param snapshot The block snapshot of the chunk, or null if the indexed count is used
+     */
+    public ChunkCapture(final String worldName, final int chunkX, final int chunkZ,
+                        final int minHeight, final int maxHeight,
+                        final int entityCount, final int tileEntityCount, final TypeCounts typeCounts,
+                        final int indexedRedstoneCount, final int captureTick,
+                        final ChunkSnapshot snapshot) {
+        this.worldName = worldName;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.entityCount = entityCount;
+        this.tileEntityCount = tileEntityCount;
+        this.typeCounts = typeCounts;
+        this.indexedRedstoneCount = indexedRedstoneCount;
+        this.captureTick = captureTick;
+        this.snapshot = snapshot;
+    }
+}
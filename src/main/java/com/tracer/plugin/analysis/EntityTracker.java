@@ -0,0 +1,344 @@
+package com.tracer.plugin.analysis;
+
+import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live per-chunk entity counts, kept current from entity events.
+ * 
+ * Every tracked entity remembers the chunk it is counted in, and each chunk holds
+ * its counts in a primitive array indexed by {@link EntityType} ordinal. Add and remove
+ * events keep the counts exact; moves of players and vehicles are applied as they
+ * happen. Other entities can cross chunks without an event, so a reconciliation pass
+ * visits a few loaded chunks every tick and moves entities to the chunk they are
+ * actually in. Entities that have not been seen for two full passes are dropped.
+ */
+public final class EntityTracker {
+    
+    private static final EntityType[] TYPES = EntityType.values();
+    
+    /**
+     * Index of the total count in a chunk's count array
+     */
+    private static final int TOTAL = TYPES.length;
+    
+    private final TracerPlugin plugin;
+    
+    /**
+     * Entity counts per world and chunk
+     */
+    private final Map<String, LongObjectHashMap<int[]>> worlds;
+    
+    /**
+     * Tracked entities keyed by entity id
+     */
+    private final LongObjectHashMap<TrackedEntity> entities;
+    
+    /**
+     * Loaded chunks still to be reconciled in the current pass
+     */
+    private final ArrayDeque<Chunk> reconcileQueue;
+    private int reconcileCycle;
+    private int chunksPerTick;
+    private BukkitTask reconcileTask;
+    
+    public EntityTracker(final TracerPlugin plugin) {
+        this.plugin = plugin;
+        this.worlds = new HashMap<>();
+        this.entities = new LongObjectHashMap<>(1024);
+        this.reconcileQueue = new ArrayDeque<>();
+    }
+    
+    /**
+     * Count all entities already in the worlds and start the reconciliation task.
+     * Must be called on the main thread.
+     * 
+     * @param chunksPerTick The number of chunks to reconcile per tick
+     */
+    public void start(final int chunksPerTick) {
+        this.chunksPerTick = Math.max(1, chunksPerTick);
+        if (this.reconcileTask != null) {
+            return;
+        }
+        
+        this.reconcileTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                reconcile();
+            }
+        }.runTaskTimer(this.plugin, 20L, 1L);
+        
+        // Entities already in the worlds will not fire add events
+        for (World world : Bukkit.getWorlds()) {
+            for (Entity entity : world.getEntities()) {
+                this.add(entity);
+            }
+        }
+    }
+    
+    /**
+     * Stop the reconciliation task and forget all counts.
+     */
+    public synchronized void shutdown() {
+        if (this.reconcileTask != null) {
+            this.reconcileTask.cancel();
+            this.reconcileTask = null;
+        }
+        this.reconcileQueue.clear();
+        this.worlds.clear();
+        this.entities.clear();
+    }
+    
+    /**
+     * Check if the tracker is running.
+     * 
+     * @return true if counts are being kept
+     */
+    public boolean isRunning() {
+        return this.reconcileTask != null;
+    }
+    
+    /**
+     * Start counting an entity.
+     * 
+     * @param entity The entity added to its world
+     */
+    public synchronized void add(final Entity entity) {
+        if (this.reconcileTask == null) {
+            return;
+        }
+        
+        final Location location = entity.getLocation();
+        final String worldName = entity.getWorld().getName();
+        final long chunkKey = ChunkKeys.pack(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        
+        final TrackedEntity tracked = this.entities.get(entity.getEntityId());
+        if (tracked != null) {
+            this.relocate(tracked, worldName, chunkKey);
+            tracked.seenCycle = this.reconcileCycle;
+            return;
+        }
+        
+        final TrackedEntity added = new TrackedEntity(worldName, chunkKey, entity.getType().ordinal(), this.reconcileCycle);
+        this.entities.put(entity.getEntityId(), added);
+        this.increment(added);
+    }
+    
+    /**
+     * Stop counting an entity.
+     * 
+     * @param entity The entity removed from its world
+     */
+    public synchronized void remove(final Entity entity) {
+        if (this.reconcileTask == null) {
+            return;
+        }
+        
+        final TrackedEntity tracked = this.entities.remove(entity.getEntityId());
+        if (tracked != null) {
+            this.decrement(tracked);
+        }
+    }
+    
+    /**
+     * Move an entity to the chunk of a new location.
+     * 
+     * @param entity The entity
+     * @param to The new location
+     */
+    public synchronized void move(final Entity entity, final Location to) {
+        if (this.reconcileTask == null) {
+            return;
+        }
+        
+        final TrackedEntity tracked = this.entities.get(entity.getEntityId());
+        if (tracked == null || to.getWorld() == null) {
+            return;
+        }
+        
+        this.relocate(tracked, to.getWorld().getName(),
+            ChunkKeys.pack(to.getBlockX() >> 4, to.getBlockZ() >> 4));
+    }
+    
+    /**
+     * Copy the entity counts of a chunk without touching its entities.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param target Receives the count of each entity type, indexed by ordinal
+     */
+    public synchronized void copyCounts(final String worldName, final int chunkX, final int chunkZ, final int[] target) {
+        final int[] counts = this.getChunkCounts(worldName, chunkX, chunkZ);
+        if (counts == null) {
+            Arrays.fill(target, 0);
+            return;
+        }
+        System.arraycopy(counts, 0, target, 0, TOTAL);
+    }
+    
+    /**
+     * Get the number of tracked entities.
+     * 
+     * @return The number of tracked entities
+     */
+    public synchronized int getTrackedCount() {
+        return this.entities.size();
+    }
+    
+    /**
+     * Forget all counts of an unloaded world.
+     * 
+     * @param worldName The world name
+     */
+    public synchronized void dropWorld(final String worldName) {
+        this.worlds.remove(worldName);
+        
+        final List<Long> stale = new ArrayList<>();
+        this.entities.forEach((id, tracked) -> {
+            if (tracked.worldName.equals(worldName)) {
+                stale.add(id);
+            }
+        });
+        for (long id : stale) {
+            this.entities.remove(id);
+        }
+    }
+    
+    /**
+     * Reconcile the next few loaded chunks of the current pass.
+     * Starts a new pass once every loaded chunk has been visited.
+     */
+    private void reconcile() {
+        if (this.reconcileQueue.isEmpty()) {
+            this.startReconcileCycle();
+        }
+        
+        for (int i = 0; i < this.chunksPerTick && !this.reconcileQueue.isEmpty(); i++) {
+            final Chunk chunk = this.reconcileQueue.poll();
+            if (chunk.isLoaded() && chunk.isEntitiesLoaded()) {
+                this.reconcileChunk(chunk);
+            }
+        }
+    }
+    
+    private void reconcileChunk(final Chunk chunk) {
+        final Entity[] chunkEntities = chunk.getEntities();
+        final String worldName = chunk.getWorld().getName();
+        final long chunkKey = ChunkKeys.pack(chunk.getX(), chunk.getZ());
+        
+        synchronized (this) {
+            for (Entity entity : chunkEntities) {
+                final TrackedEntity tracked = this.entities.get(entity.getEntityId());
+                if (tracked == null) {
+                    this.add(entity); // Missed add event
+                    continue;
+                }
+                this.relocate(tracked, worldName, chunkKey);
+                tracked.seenCycle = this.reconcileCycle;
+            }
+        }
+    }
+    
+    /**
+     * Drop entities missed by two full passes and queue all loaded chunks again.
+     */
+    private synchronized void startReconcileCycle() {
+        final int oldestValidCycle = this.reconcileCycle - 1;
+        final List<Long> stale = new ArrayList<>();
+        this.entities.forEach((id, tracked) -> {
+            if (tracked.seenCycle < oldestValidCycle) {
+                stale.add(id);
+            }
+        });
+        for (long id : stale) {
+            this.decrement(this.entities.remove(id));
+        }
+        if (!stale.isEmpty()) {
+            this.plugin.debugLog("Entity tracker dropped " + stale.size() + " stale entities");
+        }
+        
+        this.reconcileCycle++;
+        for (World world : Bukkit.getWorlds()) {
+            Collections.addAll(this.reconcileQueue, world.getLoadedChunks());
+        }
+    }
+    
+    private void relocate(final TrackedEntity tracked, final String worldName, final long chunkKey) {
+        if (tracked.chunkKey == chunkKey && tracked.worldName.equals(worldName)) {
+            return;
+        }
+        
+        this.decrement(tracked);
+        tracked.worldName = worldName;
+        tracked.chunkKey = chunkKey;
+        this.increment(tracked);
+    }
+    
+    private void increment(final TrackedEntity tracked) {
+        final LongObjectHashMap<int[]> chunks = this.worlds.computeIfAbsent(tracked.worldName, name -> new LongObjectHashMap<>());
+        int[] counts = chunks.get(tracked.chunkKey);
+        if (counts == null) {
+            counts = new int[TOTAL + 1];
+            chunks.put(tracked.chunkKey, counts);
+        }
+        counts[tracked.type]++;
+        counts[TOTAL]++;
+    }
+    
+    private void decrement(final TrackedEntity tracked) {
+        final LongObjectHashMap<int[]> chunks = this.worlds.get(tracked.worldName);
+        if (chunks == null) {
+            return;
+        }
+        
+        final int[] counts = chunks.get(tracked.chunkKey);
+        if (counts == null) {
+            return;
+        }
+        
+        counts[tracked.type]--;
+        if (--counts[TOTAL] <= 0) {
+            chunks.remove(tracked.chunkKey);
+        }
+    }
+    
+    private int[] getChunkCounts(final String worldName, final int chunkX, final int chunkZ) {
+        final LongObjectHashMap<int[]> chunks = this.worlds.get(worldName);
+        return chunks != null ? chunks.get(ChunkKeys.pack(chunkX, chunkZ)) : null;
+    }
+    
+    /**
+     * The chunk an entity is currently counted in.
+     */
+    private static final class TrackedEntity {
+        private String worldName;
+        private long chunkKey;
+        private final int type;
+        private int seenCycle;
+        
+        private TrackedEntity(final String worldName, final long chunkKey, final int type, final int seenCycle) {
+            this.worldName = worldName;
+            this.chunkKey = chunkKey;
+            this.type = type;
+            this.seenCycle = seenCycle;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tracer.plugin.analysis;
+
+import com.destroystokyo.paper.event.entity.EntityAddToWorldEvent;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Keeps the {@link EntityTracker} current from entity events.
+ * 
+ * Mob movement is deliberately not listened to: Paper only fires its per-tick entity
+ * move event while a plugin listens for it, so mobs crossing chunks are picked up by
+ * the tracker's reconciliation pass instead.
+ */
+public final class EntityTrackerListener implements Listener {
+    
+    private final EntityTracker tracker;
+    
+    public EntityTrackerListener(final EntityTracker tracker) {
+        this.tracker = tracker;
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityAdd(final EntityAddToWorldEvent event) {
+        this.tracker.add(event.getEntity());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(final EntityRemoveFromWorldEvent event) {
+        this.tracker.remove(event.getEntity());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(final PlayerMoveEvent event) {
+        if (crossesChunk(event.getFrom(), event.getTo())) {
+            this.tracker.move(event.getPlayer(), event.getTo());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(final PlayerTeleportEvent event) {
+        if (crossesChunk(event.getFrom(), event.getTo())) {
+            this.tracker.move(event.getPlayer(), event.getTo());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onVehicleMove(final VehicleMoveEvent event) {
+        if (crossesChunk(event.getFrom(), event.getTo())) {
+            this.tracker.move(event.getVehicle(), event.getTo());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(final WorldUnloadEvent event) {
+        this.tracker.dropWorld(event.getWorld().getName());
+    }
+    
+    /**
+     * Check if a move ends in a different chunk than it started in.
+     * 
+     * @param from The start of the move
+     * @param to The end of the move
+     * @return true if the move crosses a chunk border
+     */
+    private static boolean crossesChunk(final Location from, final Location to) {
+        if (to == null) {
+            return false;
+        }
+        return (from.getBlockX() >> 4) != (to.getBlockX() >> 4)
+            || (from.getBlockZ() >> 4) != (to.getBlockZ() >> 4)
+            || from.getWorld() != to.getWorld();
+    }
+}
@@ -12,12 +12,19 @@ import java.util.Map;
 
 /**
  * Represents the lag analysis results for a specific chunk.
+ * 
+ * Scores are immutable and kept compact, as hundreds of thousands of them can be cached
+ * and read back from history at once: the world is an interned id and every other value
+ * is a primitive. Lag sources, recommendations and descriptions are text derived from the
+ * counts and are built when they are asked for, never stored.
  */
-@EqualsAndHashCode(of = {"worldName", "chunkX", "chunkZ", "timestamp"})
+@EqualsAndHashCode(of = {"worldId", "chunkX", "chunkZ", "timestamp"})
 public final class LagScore {
     
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    
     // Chunk identification
-    private final String worldName;
+    private final int worldId;
     private final int chunkX;
     private final int chunkZ;
     
@@ -30,17 +37,17 @@ public final class LagScore {
     private final int redstoneCount;
     
     // Calculated scores
-    private double overallScore;
+    private final double overallScore;
     private final double currentTps;
     
-    // Lag assessment
-    private LagLevel lagLevel;
+    // Lag assessment, the ordinal of the lag level
+    private final byte lagLevel;
     
-    // Detailed lag sources
-    private List<String> lagSources;
+    // Details string for display, only set when the analysis failed
+    private final String details;
     
-    // Details string for display
-    private String details;
+    // Entity and tile entity counts per type, empty if unknown
+    private final TypeCounts typeCounts;
     
     /**
      * Create a new LagScore.
@@ -56,7 +63,25 @@ public final class LagScore {
     public LagScore(final String worldName, final int chunkX, final int chunkZ,
                    final int entityCount, final int tileEntityCount, final int redstoneCount,
                    final double currentTps) {
-        this.worldName = worldName;
+        this(worldName, chunkX, chunkZ, entityCount, tileEntityCount, redstoneCount, currentTps, TypeCounts.EMPTY);
+    }
+    
+    /**
+     * Create a new LagScore with the counts per type it was found from.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param entityCount The number of entities
+     * @param tileEntityCount The number of tile entities
+     * @param redstoneCount The number of redstone components
+     * @param currentTps The current server TPS
+     * @param typeCounts The entity and tile entity counts per type
+     */
+    public LagScore(final String worldName, final int chunkX, final int chunkZ,
+                   final int entityCount, final int tileEntityCount, final int redstoneCount,
+                   final double currentTps, final TypeCounts typeCounts) {
+        this.worldId = WorldNames.intern(worldName);
         this.chunkX = chunkX;
         this.chunkZ = chunkZ;
         this.timestamp = System.currentTimeMillis();
@@ -64,15 +89,94 @@ public final class LagScore {
         this.tileEntityCount = tileEntityCount;
         this.redstoneCount = redstoneCount;
         this.currentTps = currentTps;
-        
-        // Calculate overall score
-        this.overallScore = this.calculateOverallScore();
-        
-        // Determine lag level
-        this.lagLevel = LagLevel.fromScore(this.overallScore);
-        
-        // Generate lag sources
-        this.lagSources = this.generateLagSources();
+        this.overallScore = calculateOverallScore(entityCount, tileEntityCount, redstoneCount, currentTps);
+        this.lagLevel = (byte) LagLevel.fromScore(this.overallScore).ordinal();
+        this.details = null;
+        this.typeCounts = typeCounts;
+    }
+    
+    /**
+     * Create a LagScore from stored values, keeping the stored score and level.
+     */
+    private LagScore(final String worldName, final int chunkX, final int chunkZ, final long timestamp,
+                     final int entityCount, final int tileEntityCount, final int redstoneCount,
+                     final double overallScore, final double currentTps, final LagLevel lagLevel,
+                     final String details, final TypeCounts typeCounts) {
+        this.worldId = WorldNames.intern(worldName);
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.timestamp = timestamp;
+        this.entityCount = entityCount;
+        this.tileEntityCount = tileEntityCount;
+        this.redstoneCount = redstoneCount;
+        this.overallScore = overallScore;
+        this.currentTps = currentTps;
+        this.lagLevel = (byte) lagLevel.ordinal();
+        this.details = details;
+        this.typeCounts = typeCounts;
+    }
+    
+    /**
+     * Restore a LagScore that was read back from storage.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param timestamp The analysis timestamp
+     * @param entityCount The number of entities
+     * @param tileEntityCount The number of tile entities
+     * @param redstoneCount The number of redstone components
+     * @param overallScore The stored overall score
+     * @param currentTps The server TPS at analysis time
+     * @param lagLevel The stored lag level
+     * @return The restored lag score
+     */
+    public static LagScore restore(final String worldName, final int chunkX, final int chunkZ, final long timestamp,
+                                   final int entityCount, final int tileEntityCount, final int redstoneCount,
+                                   final double overallScore, final double currentTps, final LagLevel lagLevel) {
+        return new LagScore(worldName, chunkX, chunkZ, timestamp, entityCount, tileEntityCount, redstoneCount,
+            overallScore, currentTps, lagLevel, null, TypeCounts.EMPTY);
+    }
+    
+    /**
+     * Restore a LagScore that was read back from storage together with its details and type counts.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param timestamp The analysis timestamp
+     * @param entityCount The number of entities
+     * @param tileEntityCount The number of tile entities
+     * @param redstoneCount The number of redstone components
+     * @param overallScore The stored overall score
+     * @param currentTps The server TPS at analysis time
+     * @param lagLevel The stored lag level
+     * @param details The stored details, or null
+     * @param typeCounts The stored counts per type
+     * @return The restored lag score
+     */
+    public static LagScore restore(final String worldName, final int chunkX, final int chunkZ, final long timestamp,
+                                   final int entityCount, final int tileEntityCount, final int redstoneCount,
+                                   final double overallScore, final double currentTps, final LagLevel lagLevel,
+                                   final String details, final TypeCounts typeCounts) {
+        return new LagScore(worldName, chunkX, chunkZ, timestamp, entityCount, tileEntityCount, redstoneCount,
+            overallScore, currentTps, lagLevel, details, typeCounts);
+    }
+    
+    /**
+     * Create the score of a chunk whose analysis failed, with no counts.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param details A description of the failure
+     * @return The score
+     */
+    public static LagScore failed(final String worldName, final int chunkX, final int chunkZ, final String details) {
+        final double currentTps = 20.0;
+        final double overallScore = calculateOverallScore(0, 0, 0, currentTps);
+        return new LagScore(worldName, chunkX, chunkZ, System.currentTimeMillis(), 0, 0, 0,
+            overallScore, currentTps, LagLevel.fromScore(overallScore), details, TypeCounts.EMPTY);
     }
     
     /**
@@ -80,32 +184,33 @@ public final class LagScore {
      * 
      * @return The calculated score
      */
-    private double calculateOverallScore() {
+    private static double calculateOverallScore(final int entityCount, final int tileEntityCount, final int redstoneCount,
+                                                final double currentTps) {
         double score = 0.0;
         
         // Entity contribution (weight: 1.0)
-        score += this.entityCount * 1.0;
+        score += entityCount * 1.0;
         
         // Tile entity contribution (weight: 2.0)
-        score += this.tileEntityCount * 2.0;
+        score += tileEntityCount * 2.0;
         
         // Redstone contribution (weight: 3.0)
-        score += this.redstoneCount * 3.0;
+        score += redstoneCount * 3.0;
         
         // TPS penalty (lower TPS = higher score)
-        if (this.currentTps < 20.0) {
-            score += (20.0 - this.currentTps) * 5.0;
+        if (currentTps < 20.0) {
+            score += (20.0 - currentTps) * 5.0;
         }
         
         return score;
     }
     
     /**
-     * Generate a list of lag sources based on the analysis.
+     * Get the lag sources of this chunk, built from the counts on every call.
      * 
      * @return List of lag source descriptions
      */
-    private List<String> generateLagSources() {
+    public List<String> getLagSources() {
         final List<String> sources = new ArrayList<>();
         
         if (this.entityCount > 50) {
@@ -158,7 +263,7 @@ public final class LagScore {
      */
     public String getFormattedDescription() {
         return String.format("Chunk [%d, %d] in %s - Score: %.1f (%s) - Entities: %d, TileEntities: %d, Redstone: %d",
-            this.chunkX, this.chunkZ, this.worldName, this.overallScore, this.lagLevel.name(),
+            this.chunkX, this.chunkZ, this.getWorldName(), this.overallScore, this.getLagLevel().name(),
             this.entityCount, this.tileEntityCount, this.redstoneCount);
     }
     
@@ -177,7 +282,8 @@ public final class LagScore {
      * @return true if lag level is HIGH or CRITICAL
      */
     public boolean hasSignificantLag() {
-        return this.lagLevel == LagLevel.HIGH || this.lagLevel == LagLevel.CRITICAL;
+        final LagLevel level = this.getLagLevel();
+        return level == LagLevel.HIGH || level == LagLevel.CRITICAL;
     }
     
     /**
@@ -214,12 +320,12 @@ public final class LagScore {
      */
     public Map<String, Object> toSummaryMap() {
         return Map.of(
-            "world", this.worldName,
+            "world", this.getWorldName(),
             "chunkX", this.chunkX,
             "chunkZ", this.chunkZ,
             "timestamp", this.timestamp,
             "score", this.overallScore,
-            "level", this.lagLevel.name(),
+            "level", this.getLagLevel().name(),
             "entities", this.entityCount,
             "tileEntities", this.tileEntityCount,
             "redstone", this.redstoneCount,
@@ -228,7 +334,7 @@ public final class LagScore {
     }
     
     // Getter methods
-    public String getWorldName() { return worldName; }
+    public String getWorldName() { return WorldNames.name(worldId); }
     public int getChunkX() { return chunkX; }
     public int getChunkZ() { return chunkZ; }
     public long getTimestamp() { return timestamp; }
@@ -237,27 +343,21 @@ public final class LagScore {
     public int getRedstoneCount() { return redstoneCount; }
     public double getOverallScore() { return overallScore; }
     public double getCurrentTps() { return currentTps; }
-    public LagLevel getLagLevel() { return lagLevel; }
-    public List<String> getLagSources() { return lagSources; }
+    public LagLevel getLagLevel() { return LEVELS[lagLevel]; }
     public String getDetails() { return details; }
-    
-    // Setter methods
-    public void setOverallScore(double overallScore) { this.overallScore = overallScore; }
-    public void setLagLevel(LagLevel lagLevel) { this.lagLevel = lagLevel; }
-    public void setLagSources(List<String> lagSources) { this.lagSources = lagSources; }
-    public void setDetails(String details) { this.details = details; }
+    public TypeCounts getTypeCounts() { return typeCounts != null ? typeCounts : TypeCounts.EMPTY; }
     
     // Missing method that ChunkAnalyzer expects
     public String getFormattedString() {
         return String.format("[%s] %s (%.1f) - %s", 
-            lagLevel.getDisplayName(), 
+            getLagLevel().getDisplayName(), 
             getFormattedDescription(), 
             overallScore, 
-            String.join(", ", lagSources));
+            String.join(", ", getLagSources()));
     }
     
     public org.bukkit.Location getLocation() {
-        org.bukkit.World world = org.bukkit.Bukkit.getWorld(this.worldName);
+        org.bukkit.World world = org.bukkit.Bukkit.getWorld(this.getWorldName());
         if (world != null) {
             return new org.bukkit.Location(world, this.chunkX * 16 + 8, 64, this.chunkZ * 16 + 8);
         }
@@ -0,0 +1,224 @@
+package com.tracer.plugin.analysis;
+
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+import org.bukkit.Bukkit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-chunk redstone component counters kept current from block events.
+ * 
+ * An entry is seeded from the first snapshot walk of a chunk and then adjusted by
+ * {@link RedstoneIndexListener} as components are placed, broken, moved or toggled.
+ * Entries are dropped when their chunk unloads and are recounted once they reach the
+ * configured maximum age, which corrects changes that no event reports.
+ * 
+ * Changes are ordered against snapshots by server tick: a change that happened on or
+ * before the tick an entry was captured may already be part of the snapshot, so such a
+ * change invalidates the entry instead of being applied twice.
+ */
+public final class RedstoneIndex {
+    
+    /**
+     * Indexed chunks per world, keyed by packed chunk coordinates
+     */
+    private final Map<String, LongObjectHashMap<Entry>> worlds;
+    
+    private volatile boolean enabled;
+    private volatile long maxAgeMillis;
+    
+    public RedstoneIndex(final boolean enabled, final int maxAgeSeconds) {
+        this.worlds = new HashMap<>();
+        this.configure(enabled, maxAgeSeconds);
+    }
+    
+    /**
+     * Apply new settings. Disabling the index drops all entries.
+     * 
+     * @param enabled Whether the index is used
+     * @param maxAgeSeconds Seconds before an entry is recounted
+     */
+    public void configure(final boolean enabled, final int maxAgeSeconds) {
+        this.enabled = enabled;
+        this.maxAgeMillis = Math.max(1, maxAgeSeconds) * 1000L;
+        if (!enabled) {
+            this.clear();
+        }
+    }
+    
+    /**
+     * Check if the index is enabled.
+     * 
+     * @return true if the index is enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Get the indexed redstone count of a chunk, with active components counted twice.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The redstone count, or -1 if the chunk has no usable entry
+     */
+    public synchronized int getRedstoneCount(final String worldName, final int chunkX, final int chunkZ) {
+        if (!this.enabled) {
+            return -1;
+        }
+        
+        final Entry entry = this.getEntry(worldName, chunkX, chunkZ);
+        if (entry == null || entry.building) {
+            return -1;
+        }
+        if (System.currentTimeMillis() - entry.builtAt > this.maxAgeMillis) {
+            return -1;
+        }
+        
+        return Math.max(0, entry.components) + Math.max(0, entry.active);
+    }
+    
+    /**
+     * Start seeding an entry from a snapshot taken in the current tick.
+     * Must be called on the main thread, right where the snapshot is taken.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The capture tick to pass to {@link #completeBuild}, or -1 if the index is disabled
+     */
+    public synchronized int beginBuild(final String worldName, final int chunkX, final int chunkZ) {
+        if (!this.enabled) {
+            return -1;
+        }
+        
+        final int tick = Bukkit.getCurrentTick();
+        this.worlds.computeIfAbsent(worldName, name -> new LongObjectHashMap<>())
+            .put(ChunkKeys.pack(chunkX, chunkZ), new Entry(tick));
+        return tick;
+    }
+    
+    /**
+     * Finish seeding an entry with the counts from its snapshot walk.
+     * Changes recorded while the walk was running are kept. Safe to call from any thread.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param captureTick The tick returned by {@link #beginBuild}
+     * @param components The number of redstone components
+     * @param active The number of active redstone components
+     */
+    public synchronized void completeBuild(final String worldName, final int chunkX, final int chunkZ,
+                                           final int captureTick, final int components, final int active) {
+        final Entry entry = this.getEntry(worldName, chunkX, chunkZ);
+        if (entry == null || !entry.building || entry.captureTick != captureTick) {
+            return; // Unloaded, invalidated or superseded by a newer build
+        }
+        
+        entry.components += components;
+        entry.active += active;
+        entry.builtAt = System.currentTimeMillis();
+        entry.building = false;
+    }
+    
+    /**
+     * Apply a change reported by a block event.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param componentDelta The change in component count
+     * @param activeDelta The change in active component count
+     * @param eventTick The tick the change started on
+     */
+    public synchronized void applyChange(final String worldName, final int chunkX, final int chunkZ,
+                                         final int componentDelta, final int activeDelta, final int eventTick) {
+        final LongObjectHashMap<Entry> entries = this.worlds.get(worldName);
+        if (entries == null) {
+            return;
+        }
+        
+        final long key = ChunkKeys.pack(chunkX, chunkZ);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        
+        if (eventTick <= entry.captureTick) {
+            // The snapshot may already contain this change
+            entries.remove(key);
+            return;
+        }
+        
+        entry.components += componentDelta;
+        entry.active += activeDelta;
+    }
+    
+    /**
+     * Drop the entry of a chunk.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     */
+    public synchronized void dropChunk(final String worldName, final int chunkX, final int chunkZ) {
+        final LongObjectHashMap<Entry> entries = this.worlds.get(worldName);
+        if (entries != null) {
+            entries.remove(ChunkKeys.pack(chunkX, chunkZ));
+        }
+    }
+    
+    /**
+     * Drop all entries of a world.
+     * 
+     * @param worldName The world name
+     */
+    public synchronized void dropWorld(final String worldName) {
+        this.worlds.remove(worldName);
+    }
+    
+    /**
+     * Drop all entries.
+     */
+    public synchronized void clear() {
+        this.worlds.clear();
+    }
+    
+    /**
+     * Get the number of indexed chunks.
+     * 
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (LongObjectHashMap<Entry> entries : this.worlds.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+    
+    private Entry getEntry(final String worldName, final int chunkX, final int chunkZ) {
+        final LongObjectHashMap<Entry> entries = this.worlds.get(worldName);
+        return entries != null ? entries.get(ChunkKeys.pack(chunkX, chunkZ)) : null;
+    }
+    
+    /**
+     * Counters of a single chunk.
+     */
+    private static final class Entry {
+        private final int captureTick;
+        private int components;
+        private int active;
+        private long builtAt;
+        private boolean building;
+        
+        private Entry(final int captureTick) {
+            this.captureTick = captureTick;
+            this.building = true;
+        }
+    }
+}
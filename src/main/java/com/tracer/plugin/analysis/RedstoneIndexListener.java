@@ -0,0 +1,294 @@
+package com.tracer.plugin.analysis;
+
+import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the {@link RedstoneIndex} current from block events.
+ * 
+ * Most events fire before the world is changed, so each touched position records its
+ * state at event time and is compared with its state a few ticks later. The difference
+ * is applied to the chunk's counters. Blocks moved by pistons need two ticks to settle,
+ * so piston changes are resolved later than other changes.
+ */
+public final class RedstoneIndexListener implements Listener {
+    
+    private static final int DEFAULT_DELAY_TICKS = 1;
+    private static final int PISTON_DELAY_TICKS = 3;
+    
+    private static final BlockFace[] NEIGHBOURS = {
+        BlockFace.UP, BlockFace.DOWN, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST
+    };
+    
+    private final TracerPlugin plugin;
+    private final RedstoneIndex index;
+    
+    /**
+     * Positions waiting to be resolved, per world and keyed by packed block coordinates.
+     * Only accessed on the main thread.
+     */
+    private final Map<String, LongObjectHashMap<PendingChange>> pending;
+    private BukkitTask resolveTask;
+    
+    public RedstoneIndexListener(final TracerPlugin plugin, final RedstoneIndex index) {
+        this.plugin = plugin;
+        this.index = index;
+        this.pending = new HashMap<>();
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(final BlockPlaceEvent event) {
+        // The world already holds the placed block, so take the old state from the event
+        final BlockState replaced = event.getBlockReplacedState();
+        final boolean wasComponent = ChunkAnalyzer.REDSTONE_MATERIALS.contains(replaced.getType());
+        this.trackState(event.getBlockPlaced(), wasComponent,
+            wasComponent && ChunkAnalyzer.isActiveComponent(replaced.getBlockData()), DEFAULT_DELAY_TICKS);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(final BlockBreakEvent event) {
+        this.trackWithAttached(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(final BlockPistonExtendEvent event) {
+        this.trackPiston(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(final BlockPistonRetractEvent event) {
+        this.trackPiston(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(final BlockExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            this.trackWithAttached(block);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(final EntityExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            this.trackWithAttached(block);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(final BlockFromToEvent event) {
+        // Flowing liquids wash away wire, torches, repeaters and comparators
+        this.trackIfComponent(event.getToBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(final EntityChangeBlockEvent event) {
+        this.track(event.getBlock(), DEFAULT_DELAY_TICKS);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBlockRedstone(final BlockRedstoneEvent event) {
+        // Only transitions between powered and unpowered change the active count
+        if ((event.getOldCurrent() > 0) != (event.getNewCurrent() > 0)) {
+            this.trackIfComponent(event.getBlock());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(final ChunkUnloadEvent event) {
+        final Chunk chunk = event.getChunk();
+        this.index.dropChunk(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(final WorldUnloadEvent event) {
+        final String worldName = event.getWorld().getName();
+        this.index.dropWorld(worldName);
+        this.pending.remove(worldName);
+    }
+    
+    /**
+     * Track the blocks moved or destroyed by a piston, their destinations and the piston itself.
+     */
+    private void trackPiston(final Block piston, final List<Block> blocks, final BlockFace direction) {
+        this.track(piston, PISTON_DELAY_TICKS);
+        for (Block block : blocks) {
+            this.track(block, PISTON_DELAY_TICKS);
+            this.track(block.getRelative(direction), PISTON_DELAY_TICKS);
+            this.track(block.getRelative(direction.getOppositeFace()), PISTON_DELAY_TICKS);
+        }
+    }
+    
+    /**
+     * Track a removed block and the neighbouring components that pop off without it.
+     */
+    private void trackWithAttached(final Block block) {
+        this.trackIfComponent(block);
+        for (BlockFace face : NEIGHBOURS) {
+            this.trackIfComponent(block.getRelative(face));
+        }
+    }
+    
+    private void trackIfComponent(final Block block) {
+        if (ChunkAnalyzer.REDSTONE_MATERIALS.contains(block.getType())) {
+            this.track(block, DEFAULT_DELAY_TICKS);
+        }
+    }
+    
+    private void track(final Block block, final int delayTicks) {
+        final boolean component = ChunkAnalyzer.REDSTONE_MATERIALS.contains(block.getType());
+        this.trackState(block, component, component && ChunkAnalyzer.isActiveComponent(block.getBlockData()), delayTicks);
+    }
+    
+    /**
+     * Record the state of a position before a change.
+     * If the position is already pending, its earlier state is kept and only the deadline moves.
+     */
+    private void trackState(final Block block, final boolean wasComponent, final boolean wasActive, final int delayTicks) {
+        if (!this.index.isEnabled()) {
+            return;
+        }
+        
+        final World world = block.getWorld();
+        final LongObjectHashMap<PendingChange> changes = this.pending.computeIfAbsent(world.getName(),
+            name -> new LongObjectHashMap<>());
+        final long key = ChunkKeys.blockKey(block.getX(), block.getY(), block.getZ());
+        final int tick = Bukkit.getCurrentTick();
+        
+        final PendingChange existing = changes.get(key);
+        if (existing != null) {
+            existing.dueTick = Math.max(existing.dueTick, tick + delayTicks);
+        } else {
+            changes.put(key, new PendingChange(world, block.getX(), block.getY(), block.getZ(),
+                wasComponent, wasActive, tick, tick + delayTicks));
+        }
+        
+        this.ensureResolveTask();
+    }
+    
+    private void ensureResolveTask() {
+        if (this.resolveTask != null) {
+            return;
+        }
+        
+        this.resolveTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                resolvePending();
+            }
+        }.runTaskTimer(this.plugin, 1L, 1L);
+    }
+    
+    /**
+     * Resolve all pending positions whose deadline has passed.
+     */
+    private void resolvePending() {
+        final int tick = Bukkit.getCurrentTick();
+        final List<PendingChange> due = new ArrayList<>();
+        
+        for (LongObjectHashMap<PendingChange> changes : this.pending.values()) {
+            changes.forEach((key, change) -> {
+                if (change.dueTick <= tick) {
+                    due.add(change);
+                }
+            });
+            for (PendingChange change : due) {
+                changes.remove(ChunkKeys.blockKey(change.x, change.y, change.z));
+                this.resolve(change);
+            }
+            due.clear();
+        }
+        
+        this.pending.values().removeIf(LongObjectHashMap::isEmpty);
+        if (this.pending.isEmpty() && this.resolveTask != null) {
+            this.resolveTask.cancel();
+            this.resolveTask = null;
+        }
+    }
+    
+    private void resolve(final PendingChange change) {
+        final int chunkX = change.x >> 4;
+        final int chunkZ = change.z >> 4;
+        if (!change.world.isChunkLoaded(chunkX, chunkZ)) {
+            return;
+        }
+        
+        final Block block = change.world.getBlockAt(change.x, change.y, change.z);
+        final Material type = block.getType();
+        final boolean component = ChunkAnalyzer.REDSTONE_MATERIALS.contains(type);
+        final BlockData data = component ? block.getBlockData() : null;
+        final boolean active = component && ChunkAnalyzer.isActiveComponent(data);
+        
+        this.index.applyChange(change.world.getName(), chunkX, chunkZ,
+            (component ? 1 : 0) - (change.wasComponent ? 1 : 0),
+            (active ? 1 : 0) - (change.wasActive ? 1 : 0),
+            change.eventTick);
+    }
+    
+    /**
+     * Stop resolving changes and forget pending positions.
+     */
+    public void shutdown() {
+        if (this.resolveTask != null) {
+            this.resolveTask.cancel();
+            this.resolveTask = null;
+        }
+        this.pending.clear();
+    }
+    
+    /**
+     * State of a block position before a change.
+     */
+    private static final class PendingChange {
+        private final World world;
+        private final int x;
+        private final int y;
+        private final int z;
+        private final boolean wasComponent;
+        private final boolean wasActive;
+        private final int eventTick;
+        private int dueTick;
+        
+        private PendingChange(final World world, final int x, final int y, final int z,
+                              final boolean wasComponent, final boolean wasActive,
+                              final int eventTick, final int dueTick) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.wasComponent = wasComponent;
+            this.wasActive = wasActive;
+            this.eventTick = eventTick;
+            this.dueTick = dueTick;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.tracer.plugin.analysis;
+
+import com.tracer.plugin.TracerPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Decides per 16x16x16 section whether a chunk snapshot can contain any of a set of materials.
+ * 
+ * Empty sections are always skipped. When the server implementation exposes the section
+ * block palettes, sections whose palette has no monitored material are skipped as well.
+ * A section is only reported as skippable when it definitely cannot contain a monitored
+ * material, so walking the remaining sections gives the same result as a full walk.
+ */
+final class SectionFilter {
+    
+    private final Set<Material> materials;
+    private final TracerPlugin plugin;
+    
+    /**
+     * Reflective access to the section palettes, null until resolved or if unavailable
+     */
+    private volatile PaletteAccess paletteAccess;
+    private volatile boolean paletteUnavailable;
+    
+    /**
+     * Cache of palette entries to whether they are a monitored material.
+     * Palette entries are canonical block state instances, so the cache is bounded
+     * by the number of block states in the game.
+     */
+    private final Map<Object, Boolean> stateCache;
+    private final Predicate<Object> monitoredState;
+    
+    // Failed lookups on single sections are only logged once
+    private final AtomicBoolean lookupFailureLogged;
+    
+    SectionFilter(final Set<Material> materials, final TracerPlugin plugin) {
+        this.materials = materials;
+        this.plugin = plugin;
+        this.lookupFailureLogged = new AtomicBoolean();
+        this.stateCache = new ConcurrentHashMap<>();
+        this.monitoredState = this::isMonitoredState;
+    }
+    
+    /**
+     * Check if a section of a snapshot may contain a monitored material.
+     * 
+     * @param snapshot The chunk snapshot
+     * @param sectionIndex The section index, counted from the bottom of the world
+     * @return false if the section definitely contains no monitored material
+     */
+    boolean mayContain(final ChunkSnapshot snapshot, final int sectionIndex) {
+        if (snapshot.isSectionEmpty(sectionIndex)) {
+            return false;
+        }
+        
+        final PaletteAccess access = this.resolvePaletteAccess(snapshot);
+        if (access == null) {
+            return true;
+        }
+        
+        try {
+            final Object[] sections = (Object[]) access.paletteField.get(snapshot);
+            if (sections == null || sectionIndex >= sections.length || sections[sectionIndex] == null) {
+                return true;
+            }
+            
+            return (Boolean) access.maybeHasMethod.invoke(sections[sectionIndex], this.monitoredState);
+        } catch (Exception e) {
+            // The members resolved, so a failing section is walked without giving up the fast path
+            if (this.lookupFailureLogged.compareAndSet(false, true)) {
+                this.plugin.debugLog("Section palette lookup failed, walking the section: " + e);
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Check if a palette entry is a monitored material.
+     * 
+     * @param state The server block state from the palette
+     * @return true if the state is a monitored material
+     */
+    private boolean isMonitoredState(final Object state) {
+        final Boolean cached = this.stateCache.get(state);
+        if (cached != null) {
+            return cached;
+        }
+        
+        try {
+            final BlockData data = (BlockData) this.paletteAccess.fromDataMethod.invoke(null, state);
+            final boolean monitored = this.materials.contains(data.getMaterial());
+            this.stateCache.put(state, monitored);
+            return monitored;
+        } catch (Exception e) {
+            // Treat unknown entries as monitored so the section is walked
+            return true;
+        }
+    }
+    
+    /**
+     * Resolve the reflective palette access on first use.
+     * 
+     * @param snapshot A snapshot from the running server
+     * @return The palette access, or null if unavailable
+     */
+    private PaletteAccess resolvePaletteAccess(final ChunkSnapshot snapshot) {
+        final PaletteAccess resolved = this.paletteAccess;
+        if (resolved != null || this.paletteUnavailable) {
+            return resolved;
+        }
+        
+        synchronized (this) {
+            if (this.paletteAccess != null || this.paletteUnavailable) {
+                return this.paletteAccess;
+            }
+            
+            try {
+                final Field field = snapshot.getClass().getDeclaredField("blockids");
+                field.setAccessible(true);
+                
+                final Object[] sections = (Object[]) field.get(snapshot);
+                Object container = null;
+                for (Object section : sections) {
+                    if (section != null) {
+                        container = section;
+                        break;
+                    }
+                }
+                if (container == null) {
+                    return null; // Try again with the next snapshot
+                }
+                
+                final Method maybeHas = container.getClass().getMethod("maybeHas", Predicate.class);
+                
+                // Locate CraftBlockData#fromData through a block data instance
+                Class<?> blockDataClass = Bukkit.createBlockData(Material.STONE).getClass();
+                while (blockDataClass != null && !blockDataClass.getSimpleName().equals("CraftBlockData")) {
+                    blockDataClass = blockDataClass.getSuperclass();
+                }
+                if (blockDataClass == null) {
+                    throw new NoSuchMethodException("CraftBlockData not found");
+                }
+                Method fromData = null;
+                for (Method method : blockDataClass.getMethods()) {
+                    if (method.getName().equals("fromData") && method.getParameterCount() == 1) {
+                        fromData = method;
+                        break;
+                    }
+                }
+                if (fromData == null) {
+                    throw new NoSuchMethodException("CraftBlockData#fromData not found");
+                }
+                
+                this.paletteAccess = new PaletteAccess(field, maybeHas, fromData);
+                return this.paletteAccess;
+            } catch (Exception e) {
+                this.disablePaletteAccess(e.getClass().getSimpleName() + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+    
+    /**
+     * Fall back to skipping empty sections only.
+     * 
+     * @param reason The reason palette access is unavailable
+     */
+    private synchronized void disablePaletteAccess(final String reason) {
+        this.paletteUnavailable = true;
+        this.paletteAccess = null;
+        this.plugin.debugLog("Section palette access unavailable, only skipping empty sections (" + reason + ")");
+    }
+    
+    /**
+     * Resolved reflective members used to read section palettes.
+     */
+    private static final class PaletteAccess {
+        private final Field paletteField;
+        private final Method maybeHasMethod;
+        private final Method fromDataMethod;
+        
+        private PaletteAccess(final Field paletteField, final Method maybeHasMethod, final Method fromDataMethod) {
+            this.paletteField = paletteField;
+            this.maybeHasMethod = maybeHasMethod;
+            this.fromDataMethod = fromDataMethod;
+        }
+    }
+}
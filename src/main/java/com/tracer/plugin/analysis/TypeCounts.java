@@ -0,0 +1,109 @@
+package com.tracer.plugin.analysis;
+
+import org.bukkit.Material;
+import org.bukkit.entity.EntityType;
+
+import java.util.Map;
+
+/**
+ * Immutable counts of the entity types and tile entity materials found in a chunk.
+ * 
+ * Only the types that occur are kept, as two parallel arrays: the entity types first,
+ * then the materials. A chunk rarely holds more than a few dozen types.
+ * Entity counts are unweighted and include types the lag score does not count, so every
+ * entity can be found again.
+ */
+public final class TypeCounts {
+    
+    public static final TypeCounts EMPTY = new TypeCounts(new Enum<?>[0], new int[0]);
+    
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    
+    private final Enum<?>[] types;
+    private final int[] counts;
+    
+    private TypeCounts(final Enum<?>[] types, final int[] counts) {
+        this.types = types;
+        this.counts = counts;
+    }
+    
+    /**
+     * Create the counts of a chunk.
+     * 
+     * @param entities The entity counts, indexed by {@link EntityType} ordinal
+     * @param blocks The tile entity counts by material
+     * @return The counts, without the types that do not occur
+     */
+    public static TypeCounts of(final int[] entities, final Map<Material, Integer> blocks) {
+        int capacity = blocks.size();
+        for (int count : entities) {
+            if (count > 0) {
+                capacity++;
+            }
+        }
+        if (capacity == 0) {
+            return EMPTY;
+        }
+        
+        final Enum<?>[] types = new Enum<?>[capacity];
+        final int[] counts = new int[capacity];
+        int size = 0;
+        for (int type = 0; type < entities.length; type++) {
+            if (entities[type] > 0) {
+                types[size] = ENTITY_TYPES[type];
+                counts[size++] = entities[type];
+            }
+        }
+        for (Map.Entry<Material, Integer> entry : blocks.entrySet()) {
+            if (entry.getValue() > 0) {
+                types[size] = entry.getKey();
+                counts[size++] = entry.getValue();
+            }
+        }
+        
+        if (size == 0) {
+            return EMPTY;
+        }
+        if (size < capacity) {
+            final Enum<?>[] trimmedTypes = new Enum<?>[size];
+            final int[] trimmedCounts = new int[size];
+            System.arraycopy(types, 0, trimmedTypes, 0, size);
+            System.arraycopy(counts, 0, trimmedCounts, 0, size);
+            return new TypeCounts(trimmedTypes, trimmedCounts);
+        }
+        return new TypeCounts(types, counts);
+    }
+    
+    /**
+     * Get the number of types that occur.
+     * 
+     * @return The number of types
+     */
+    public int size() {
+        return this.types.length;
+    }
+    
+    public boolean isEmpty() {
+        return this.types.length == 0;
+    }
+    
+    /**
+     * Get a type by position.
+     * 
+     * @param index The position, below {@link #size()}
+     * @return The entity type or material
+     */
+    public Enum<?> getType(final int index) {
+        return this.types[index];
+    }
+    
+    /**
+     * Get a count by position.
+     * 
+     * @param index The position, below {@link #size()}
+     * @return The count of the type at the position
+     */
+    public int getCount(final int index) {
+        return this.counts[index];
+    }
+}
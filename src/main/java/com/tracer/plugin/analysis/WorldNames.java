@@ -0,0 +1,59 @@
+package com.tracer.plugin.analysis;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned world names of lag scores.
+ * 
+ * A score keeps the id of its world instead of its name, so the scores of a world share one
+ * string no matter if they were analyzed, read back from disk or loaded from a database.
+ * Ids are never released, a server has only a handful of worlds.
+ */
+final class WorldNames {
+    
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    
+    // Names by id, replaced as a whole when a world is added
+    private static volatile String[] names = new String[0];
+    
+    private WorldNames() {
+    }
+    
+    /**
+     * Get the id of a world name, assigning the next id to a new name.
+     * 
+     * @param name The world name
+     * @return The world id
+     */
+    static int intern(final String name) {
+        final Integer id = IDS.get(name);
+        return id != null ? id : register(name);
+    }
+    
+    /**
+     * Get the name of a world id.
+     * 
+     * @param id The world id
+     * @return The world name
+     */
+    static String name(final int id) {
+        return names[id];
+    }
+    
+    private static synchronized int register(final String name) {
+        final Integer existing = IDS.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        
+        // Publish the name before its id, so a reader holding the id always finds it
+        final int id = names.length;
+        final String[] grown = Arrays.copyOf(names, id + 1);
+        grown[id] = name;
+        names = grown;
+        IDS.put(name, id);
+        return id;
+    }
+}
@@ -0,0 +1,211 @@
+package com.tracer.plugin.commands;
+
+import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.storage.HistoryExport;
+import com.tracer.plugin.storage.HistoryFilter;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+/**
+ * Handles the /tracer export command for exporting the analysis history to a file.
+ */
+public final class ExportCommand extends TracerCommand.SubCommand {
+    
+    private static final int DEFAULT_HOURS = 24;
+    
+    public ExportCommand(final TracerPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public boolean execute(final CommandSender sender, final String[] args) {
+        if (args.length == 0) {
+            this.sendError(sender, "Usage: " + this.getUsage());
+            return false;
+        }
+        
+        switch (args[0].toLowerCase()) {
+            case "status":
+                this.showStatus(sender);
+                return true;
+            case "cancel":
+                this.cancelExport(sender);
+                return true;
+            case "json":
+                return this.startExport(sender, HistoryExport.Format.JSON, args);
+            case "csv":
+                return this.startExport(sender, HistoryExport.Format.CSV, args);
+            default:
+                this.sendError(sender, "Invalid format. Use: json, csv, status or cancel");
+                return false;
+        }
+    }
+    
+    /**
+     * Parse the filter options and start an export.
+     * 
+     * @param sender The command sender
+     * @param format The export format
+     * @param args The command arguments, the first being the format
+     * @return true if the export was started
+     */
+    private boolean startExport(final CommandSender sender, final HistoryExport.Format format, final String[] args) {
+        int hours = DEFAULT_HOURS;
+        boolean gzip = false;
+        String worldName = null;
+        LagLevel minimumLevel = null;
+        HistoryFilter.ChunkBounds bounds = null;
+        
+        try {
+            for (int i = 1; i < args.length; i++) {
+                final String arg = args[i].toLowerCase();
+                if (arg.equals("gzip")) {
+                    gzip = true;
+                } else if (arg.startsWith("world:")) {
+                    // World names are case-sensitive
+                    worldName = args[i].substring("world:".length());
+                } else if (arg.startsWith("level:")) {
+                    minimumLevel = LagLevel.valueOf(arg.substring("level:".length()).toUpperCase());
+                } else if (arg.startsWith("box:")) {
+                    final String[] corners = arg.substring("box:".length()).split(",");
+                    if (corners.length != 4) {
+                        this.sendError(sender, "Invalid box. Use: box:<x1>,<z1>,<x2>,<z2> in chunk coordinates");
+                        return false;
+                    }
+                    bounds = HistoryFilter.ChunkBounds.of(Integer.parseInt(corners[0].trim()), Integer.parseInt(corners[1].trim()),
+                        Integer.parseInt(corners[2].trim()), Integer.parseInt(corners[3].trim()));
+                } else {
+                    hours = Integer.parseInt(arg);
+                    if (hours <= 0) {
+                        this.sendError(sender, "Hours must be positive");
+                        return false;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            this.sendError(sender, "Invalid number: " + e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            this.sendError(sender, "Invalid lag level. Use: low, medium, high or critical");
+            return false;
+        }
+        
+        final HistoryFilter filter = HistoryFilter.since(System.currentTimeMillis() - hours * 60L * 60L * 1000L)
+            .inWorld(worldName)
+            .atLeast(minimumLevel)
+            .within(bounds);
+        
+        final HistoryExport export;
+        try {
+            export = this.plugin.getDataStorage().startExport(format, gzip, filter,
+                running -> this.runSync(() -> this.sendProgress(sender, running)));
+        } catch (IllegalStateException e) {
+            this.sendError(sender, e.getMessage());
+            return false;
+        } catch (IOException e) {
+            this.sendError(sender, "Failed to start export: " + e.getMessage());
+            return false;
+        }
+        
+        this.sendSuccess(sender, "Exporting the last " + hours + " hours of history to " + export.getFile().getFileName());
+        export.getResult().whenComplete((file, error) -> this.runSync(() -> {
+            if (file != null) {
+                this.sendSuccess(sender, "Exported " + export.getExportedRecords() + " records to " + file.getFileName());
+            } else if (error instanceof CancellationException) {
+                this.sendError(sender, "Export cancelled after " + export.getExportedRecords() + " records");
+            } else {
+                this.sendError(sender, "Export failed: " + error.getMessage());
+            }
+        }));
+        return true;
+    }
+    
+    /**
+     * Show the progress of the running export.
+     * 
+     * @param sender The command sender
+     */
+    private void showStatus(final CommandSender sender) {
+        final HistoryExport export = this.plugin.getDataStorage().getActiveExport();
+        if (export == null) {
+            sender.sendMessage(ChatColor.YELLOW + "No export is running");
+            return;
+        }
+        this.sendProgress(sender, export);
+    }
+    
+    /**
+     * Cancel the running export.
+     * 
+     * @param sender The command sender
+     */
+    private void cancelExport(final CommandSender sender) {
+        final HistoryExport export = this.plugin.getDataStorage().getActiveExport();
+        if (export == null) {
+            this.sendError(sender, "No export is running");
+            return;
+        }
+        export.cancel();
+        this.plugin.getLogger().info("Export cancelled by " + sender.getName());
+    }
+    
+    private void sendProgress(final CommandSender sender, final HistoryExport export) {
+        sender.sendMessage(ChatColor.YELLOW + "Export progress: " + ChatColor.WHITE + Math.round(export.getProgress() * 100) + "%"
+            + ChatColor.GRAY + " (" + export.getExportedRecords() + " records)");
+    }
+    
+    /**
+     * Run a task on the main thread, senders must not be messaged from the export thread.
+     */
+    private void runSync(final Runnable task) {
+        if (this.plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(this.plugin, task);
+        }
+    }
+    
+    @Override
+    public List<String> tabComplete(final CommandSender sender, final String[] args) {
+        final List<String> options;
+        if (args.length == 1) {
+            options = Arrays.asList("json", "csv", "status", "cancel");
+        } else if (args[0].equalsIgnoreCase("json") || args[0].equalsIgnoreCase("csv")) {
+            options = new ArrayList<>(Arrays.asList("24", "gzip", "world:", "level:", "box:"));
+            Bukkit.getWorlds().forEach(world -> options.add("world:" + world.getName()));
+            for (LagLevel level : LagLevel.values()) {
+                options.add("level:" + level.name().toLowerCase());
+            }
+        } else {
+            return Collections.emptyList();
+        }
+        
+        final String current = args[args.length - 1].toLowerCase();
+        return options.stream()
+            .filter(option -> option.toLowerCase().startsWith(current))
+            .collect(Collectors.toList());
+    }
+    
+    @Override
+    public boolean hasPermission(final CommandSender sender) {
+        return sender.hasPermission("tracer.export");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Export the analysis history to a file";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/tracer export <json|csv> [hours] [world:<name>] [level:<min>] [box:<x1>,<z1>,<x2>,<z2>] [gzip] | <status|cancel>";
+    }
+}
@@ -0,0 +1,224 @@
+package com.tracer.plugin.commands;
+
+import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.storage.TypeIndex;
+import net.md_5.bungee.api.chat.ClickEvent;
+import net.md_5.bungee.api.chat.ComponentBuilder;
+import net.md_5.bungee.api.chat.HoverEvent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Handles the /tracer find command for finding the chunks with the most of an entity type or block.
+ * Reads the type index of the cached results, so no chunk is scanned again.
+ */
+public final class FindCommand extends TracerCommand.SubCommand {
+    
+    private static final int ITEMS_PER_PAGE = 10;
+    
+    public FindCommand(final TracerPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public boolean execute(final CommandSender sender, final String[] args) {
+        if (args.length == 0) {
+            this.sendError(sender, "Usage: " + this.getUsage());
+            return false;
+        }
+        
+        final TypeIndex index = this.plugin.getDataStorage().getTypeIndex();
+        final Enum<?> type = this.resolveType(index, args[0]);
+        if (type == null) {
+            this.sendError(sender, "Unknown entity type or block: " + args[0]);
+            return false;
+        }
+        
+        // Parse page number
+        int page = 1;
+        if (args.length > 1) {
+            try {
+                page = Math.max(1, Integer.parseInt(args[1]));
+            } catch (NumberFormatException e) {
+                this.sendError(sender, "Invalid page number. Usage: " + this.getUsage());
+                return false;
+            }
+        }
+        
+        final String typeName = type.name().toLowerCase();
+        final int total = index.countChunks(type);
+        if (total == 0) {
+            this.sendMessage(sender, ChatColor.GREEN + "No scanned chunks contain " + typeName + ".");
+            this.sendMessage(sender, ChatColor.GRAY + "  • Run '/tracer scan' or '/tracer scan server' to update data");
+            return true;
+        }
+        
+        // Calculate pagination, reading only the chunks of the requested page
+        final int totalPages = (int) Math.ceil((double) total / ITEMS_PER_PAGE);
+        final int startIndex = (page - 1) * ITEMS_PER_PAGE;
+        final List<TypeIndex.Match> matches = startIndex < total
+            ? index.getPage(type, startIndex, ITEMS_PER_PAGE)
+            : Collections.emptyList();
+        
+        if (matches.isEmpty()) {
+            this.sendError(sender, "Page " + page + " does not exist. Total pages: " + totalPages);
+            return false;
+        }
+        
+        this.sendMessage(sender, ChatColor.GOLD + "=== Chunks with the most " + typeName + " (Page " + page + "/" + totalPages + ") ===");
+        this.sendMessage(sender, ChatColor.GRAY + String.valueOf(index.countTotal(type)) + " " + typeName
+            + " in " + total + " scanned chunks");
+        
+        final Player player = this.getPlayer(sender);
+        for (int i = 0; i < matches.size(); i++) {
+            if (player != null) {
+                this.sendClickableMatch(player, matches.get(i), startIndex + i + 1);
+            } else {
+                final LagScore score = matches.get(i).score();
+                this.sendMessage(sender, ChatColor.YELLOW + String.format("%d. %d in %s [%d, %d]",
+                    startIndex + i + 1, matches.get(i).count(), score.getWorldName(), score.getChunkX(), score.getChunkZ()));
+            }
+        }
+        
+        if (player != null) {
+            this.sendNavigationFooter(player, typeName, page, totalPages);
+        }
+        return true;
+    }
+    
+    /**
+     * Resolve an entity type or material by name. A name that is both, such as
+     * armor_stand, resolves to the one found in scanned chunks, the entity type first.
+     * 
+     * @return The entity type or material, or null if the name is neither
+     */
+    private Enum<?> resolveType(final TypeIndex index, final String input) {
+        String name = input.toUpperCase(Locale.ROOT).replace('-', '_');
+        if (name.startsWith("MINECRAFT:")) {
+            name = name.substring("MINECRAFT:".length());
+        }
+        
+        EntityType entityType = null;
+        try {
+            entityType = EntityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            // Not an entity type
+        }
+        Material material = null;
+        try {
+            material = Material.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            // Not a material
+        }
+        
+        if (entityType != null && material != null && index.countChunks(entityType) == 0 && index.countChunks(material) > 0) {
+            return material;
+        }
+        return entityType != null ? entityType : material;
+    }
+    
+    /**
+     * Send a match with clickable coordinates.
+     */
+    private void sendClickableMatch(final Player player, final TypeIndex.Match match, final int rank) {
+        final LagScore score = match.score();
+        final String coordinates = score.getChunkX() + ", " + score.getChunkZ();
+        final String teleportCommand = "/tracer teleport " + score.getWorldName() + " " +
+            score.getChunkX() + " " + score.getChunkZ();
+        
+        final TextComponent coordComponent = new TextComponent("[" + coordinates + "]");
+        coordComponent.setColor(net.md_5.bungee.api.ChatColor.AQUA);
+        coordComponent.setBold(true);
+        coordComponent.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, teleportCommand));
+        coordComponent.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+            new ComponentBuilder("Click to teleport to chunk " + coordinates + " in " + score.getWorldName())
+                .color(net.md_5.bungee.api.ChatColor.YELLOW).create()));
+        
+        final TextComponent message = new TextComponent(String.format("%d. ", rank));
+        final TextComponent countComponent = new TextComponent(String.valueOf(match.count()));
+        countComponent.setColor(net.md_5.bungee.api.ChatColor.valueOf(score.getLagLevel().getChatColor().name()));
+        countComponent.setBold(true);
+        message.addExtra(countComponent);
+        message.addExtra(String.format(" in %s ", score.getWorldName()));
+        
+        final TextComponent ageComponent = new TextComponent(" (scanned " + score.getAgeSeconds() + "s ago)");
+        ageComponent.setColor(net.md_5.bungee.api.ChatColor.GRAY);
+        
+        final TextComponent fullMessage = new TextComponent("");
+        fullMessage.addExtra(message);
+        fullMessage.addExtra(coordComponent);
+        fullMessage.addExtra(ageComponent);
+        
+        player.spigot().sendMessage(fullMessage);
+    }
+    
+    /**
+     * Send navigation footer.
+     */
+    private void sendNavigationFooter(final Player player, final String typeName, final int currentPage, final int totalPages) {
+        final TextComponent footer = new TextComponent("");
+        
+        // Previous page
+        if (currentPage > 1) {
+            final TextComponent prevButton = new TextComponent("[◀ Previous]");
+            prevButton.setColor(net.md_5.bungee.api.ChatColor.GREEN);
+            prevButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
+                "/tracer find " + typeName + " " + (currentPage - 1)));
+            footer.addExtra(prevButton);
+        }
+        
+        // Page info
+        final TextComponent pageInfo = new TextComponent(" Page " + currentPage + "/" + totalPages + " ");
+        pageInfo.setColor(net.md_5.bungee.api.ChatColor.GRAY);
+        footer.addExtra(pageInfo);
+        
+        // Next page
+        if (currentPage < totalPages) {
+            final TextComponent nextButton = new TextComponent("[Next ▶]");
+            nextButton.setColor(net.md_5.bungee.api.ChatColor.GREEN);
+            nextButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
+                "/tracer find " + typeName + " " + (currentPage + 1)));
+            footer.addExtra(nextButton);
+        }
+        
+        player.spigot().sendMessage(footer);
+    }
+    
+    @Override
+    public List<String> tabComplete(final CommandSender sender, final String[] args) {
+        if (args.length == 1) {
+            // Only the types found in scanned chunks
+            return this.plugin.getDataStorage().getTypeIndex().getIndexedTypes().stream()
+                .map(type -> type.name().toLowerCase())
+                .filter(s -> s.startsWith(args[0].toLowerCase()))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        
+        return Collections.emptyList();
+    }
+    
+    @Override
+    public boolean hasPermission(final CommandSender sender) {
+        return sender.hasPermission("tracer.find");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Find the chunks with the most of an entity type or block";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/tracer find <entity type|block> [page]";
+    }
+}
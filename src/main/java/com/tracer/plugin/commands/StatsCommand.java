@@ -7,6 +7,7 @@ import org.bukkit.command.CommandSender;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Handles the /tracer stats command for displaying scan statistics.
@@ -70,6 +71,32 @@ public final class StatsCommand extends TracerCommand.SubCommand {
         final int cacheSize = this.plugin.getChunkAnalyzer().getCacheSize();
         sender.sendMessage(ChatColor.YELLOW + "Analysis cache size: " + ChatColor.WHITE + cacheSize + " entries");
         
+        final Map<String, Object> cacheStats = this.plugin.getDataStorage().getCacheStats();
+        final long cacheMemory = (Long) cacheStats.get("cache_memory_bytes") / 1024;
+        final long cacheLimit = (Long) cacheStats.get("cache_memory_limit_bytes") / 1024 / 1024;
+        sender.sendMessage(ChatColor.YELLOW + "Analysis cache memory: " + ChatColor.WHITE + cacheMemory + "KB / " + cacheLimit + "MB"
+            + ChatColor.GRAY + String.format(" (%.1f%% hits, %s evictions)",
+                (Double) cacheStats.get("cache_hit_rate") * 100.0, cacheStats.get("cache_evictions")));
+        if (cacheStats.containsKey("cache_snapshot_bytes")) {
+            sender.sendMessage(ChatColor.YELLOW + "Cache snapshot: " + ChatColor.WHITE + (Long) cacheStats.get("cache_snapshot_bytes") / 1024 + "KB"
+                + ChatColor.GRAY + " (+" + (Long) cacheStats.get("cache_delta_bytes") / 1024 + "KB changes, "
+                + cacheStats.get("cache_dirty_entries") + " unsaved)");
+        }
+        if (cacheStats.containsKey("history_queue_depth")) {
+            final boolean behind = (Boolean) cacheStats.get("history_writer_behind");
+            sender.sendMessage(ChatColor.YELLOW + "History write queue: " + (behind ? ChatColor.RED : ChatColor.WHITE)
+                + cacheStats.get("history_queue_depth") + ChatColor.GRAY + " (peak " + cacheStats.get("history_queue_high_water")
+                + ", last commit " + cacheStats.get("history_last_commit_micros") + "µs)");
+        }
+        
+        // Analysis worker statistics
+        final Map<String, Object> workerStats = this.plugin.getChunkAnalyzer().getWorkerStats();
+        sender.sendMessage(ChatColor.YELLOW + "Analysis workers: " + ChatColor.WHITE
+            + workerStats.get("active_workers") + "/" + workerStats.get("worker_threads") + " active");
+        sender.sendMessage(ChatColor.YELLOW + "Analysis queue: " + ChatColor.WHITE
+            + workerStats.get("queue_depth") + "/" + workerStats.get("queue_capacity")
+            + ChatColor.GRAY + " (" + workerStats.get("pending_captures") + " awaiting capture)");
+        
         // Visualization statistics
         final int visualizationPlayers = this.plugin.getVisualizationManager().getVisualizationPlayerCount();
         sender.sendMessage(ChatColor.YELLOW + "Players with visualization: " + ChatColor.WHITE + visualizationPlayers);
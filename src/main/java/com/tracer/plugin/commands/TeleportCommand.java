@@ -4,6 +4,7 @@ import com.tracer.plugin.TracerPlugin;
 import com.tracer.plugin.analysis.ChunkAnalyzer;
 import com.tracer.plugin.analysis.LagLevel;
 import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.storage.ScoreRanking;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.ComponentBuilder;
 import net.md_5.bungee.api.chat.HoverEvent;
@@ -26,6 +27,9 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
     private final ChunkAnalyzer chunkAnalyzer;
     private static final int ITEMS_PER_PAGE = 10;
     
+    // Largest distance in chunks searched for the nearest laggy chunks
+    private static final int NEAREST_SEARCH_RADIUS = 2048;
+    
     public TeleportCommand(final TracerPlugin plugin) {
         super(plugin);
         this.chunkAnalyzer = plugin.getChunkAnalyzer();
@@ -44,6 +48,11 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
             return this.teleportToCoordinates(player, args);
         }
         
+        if (args.length > 0 && args[0].equalsIgnoreCase("nearest")) {
+            this.showNearestLagChunks(player);
+            return true;
+        }
+        
         // Parse page number
         int page = 1;
         if (args.length > 0) {
@@ -110,18 +119,12 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
      * Show high lag chunks with pagination.
      */
     private void showHighLagChunks(final Player player, final int page) {
-        // Get all cached lag scores from DataStorage (includes all scans: player and server-wide)
-        // Filter for chunks with significant lag (MEDIUM or higher) and recent data
-        final long maxAge = this.configManager.getCacheDuration() * 1000L; // Convert to milliseconds
-        final long currentTime = System.currentTimeMillis();
+        // Rank the cached chunks with significant lag (MEDIUM or higher) from all scans, player and server-wide.
+        // Scores older than the cache duration have already expired from the cache.
+        final ScoreRanking ranking = this.plugin.getDataStorage().getScoreRanking();
+        final int total = ranking.count(null, LagLevel.MEDIUM);
         
-        final List<LagScore> highLagChunks = this.plugin.getDataStorage().getAllCachedScores().values().stream()
-            .filter(score -> score.getLagLevel().ordinal() >= LagLevel.MEDIUM.ordinal())
-            .filter(score -> (currentTime - score.getTimestamp()) <= maxAge) // Only show recent scans
-            .sorted((a, b) -> Double.compare(b.getOverallScore(), a.getOverallScore()))
-            .collect(Collectors.toList());
-        
-        if (highLagChunks.isEmpty()) {
+        if (total == 0) {
             this.sendMessage(player, ChatColor.GREEN + "No high-lag chunks found. This could mean:");
             this.sendMessage(player, ChatColor.GRAY + "  • No scans have been performed recently");
             this.sendMessage(player, ChatColor.GRAY + "  • All previously lagging chunks have been fixed");
@@ -129,12 +132,14 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
             return;
         }
         
-        // Calculate pagination
-        final int totalPages = (int) Math.ceil((double) highLagChunks.size() / ITEMS_PER_PAGE);
+        // Calculate pagination, reading only the chunks of the requested page
+        final int totalPages = (int) Math.ceil((double) total / ITEMS_PER_PAGE);
         final int startIndex = (page - 1) * ITEMS_PER_PAGE;
-        final int endIndex = Math.min(startIndex + ITEMS_PER_PAGE, highLagChunks.size());
+        final List<LagScore> pageChunks = startIndex < total
+            ? ranking.getPage(null, LagLevel.MEDIUM, startIndex, ITEMS_PER_PAGE)
+            : Collections.emptyList();
         
-        if (startIndex >= highLagChunks.size()) {
+        if (pageChunks.isEmpty()) {
             this.sendError(player, "Page " + page + " does not exist. Total pages: " + totalPages);
             return;
         }
@@ -144,15 +149,36 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
         this.sendMessage(player, ChatColor.GRAY + "Click on coordinates to teleport!");
         
         // Show chunks for this page
-        for (int i = startIndex; i < endIndex; i++) {
-            final LagScore score = highLagChunks.get(i);
-            this.sendClickableChunkInfo(player, score, i + 1);
+        for (int i = 0; i < pageChunks.size(); i++) {
+            this.sendClickableChunkInfo(player, pageChunks.get(i), startIndex + i + 1);
         }
         
         // Footer with navigation
         this.sendNavigationFooter(player, page, totalPages);
     }
     
+    /**
+     * Show the laggy chunks nearest to the player from the cached results.
+     */
+    private void showNearestLagChunks(final Player player) {
+        final Location location = player.getLocation();
+        final List<LagScore> nearest = this.plugin.getDataStorage().getSpatialIndex().getNearest(
+            player.getWorld().getName(), location.getBlockX() >> 4, location.getBlockZ() >> 4,
+            ITEMS_PER_PAGE, LagLevel.MEDIUM, NEAREST_SEARCH_RADIUS);
+        
+        if (nearest.isEmpty()) {
+            this.sendMessage(player, ChatColor.GREEN + "No high-lag chunks found near you.");
+            this.sendMessage(player, ChatColor.GRAY + "  • Run '/tracer scan' to analyze the chunks around you");
+            return;
+        }
+        
+        this.sendMessage(player, ChatColor.GOLD + "=== Nearest High Lag Chunks ===");
+        this.sendMessage(player, ChatColor.GRAY + "Click on coordinates to teleport!");
+        for (int i = 0; i < nearest.size(); i++) {
+            this.sendClickableChunkInfo(player, nearest.get(i), i + 1);
+        }
+    }
+    
     /**
      * Send clickable chunk information.
      */
@@ -249,6 +275,7 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
             completions.add("1");
             completions.add("2");
             completions.add("3");
+            completions.add("nearest");
             
             // Add world names
             for (World world : Bukkit.getWorlds()) {
@@ -275,6 +302,6 @@ public final class TeleportCommand extends TracerCommand.SubCommand {
     
     @Override
     public String getUsage() {
-        return "/tracer teleport [page] or /tracer teleport <world> <chunkX> <chunkZ>";
+        return "/tracer teleport [page|nearest] or /tracer teleport <world> <chunkX> <chunkZ>";
     }
 }
\ No newline at end of file
@@ -54,7 +54,10 @@ public final class TracerCommand implements CommandExecutor, TabCompleter {
         this.subCommands.put("clear", new ClearCommand(this.plugin));
         this.subCommands.put("debug", new DebugCommand(this.plugin));
         this.subCommands.put("teleport", new TeleportCommand(this.plugin));
+        this.subCommands.put("find", new FindCommand(this.plugin));
         this.subCommands.put("autoscan", new AutoScanCommand(this.plugin));
+        this.subCommands.put("trend", new TrendCommand(this.plugin));
+        this.subCommands.put("export", new ExportCommand(this.plugin));
         this.subCommands.put("help", new HelpCommand(this.plugin, this.subCommands));
     }
     
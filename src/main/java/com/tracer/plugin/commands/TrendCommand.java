@@ -0,0 +1,149 @@
+package com.tracer.plugin.commands;
+
+import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.storage.HistoryFilter;
+import com.tracer.plugin.storage.Rollup;
+import com.tracer.plugin.storage.RollupTier;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Handles the /tracer trend command for showing how the lag of the chunk a player stands in
+ * developed over time. Reads the history rollups, so trends reach back further than the raw history.
+ */
+public final class TrendCommand extends TracerCommand.SubCommand {
+    
+    private static final int DEFAULT_BUCKETS = 12;
+    private static final int MAX_BUCKETS = 60;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MM-dd HH:mm");
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    
+    public TrendCommand(final TracerPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public boolean execute(final CommandSender sender, final String[] args) {
+        final Player player = this.getPlayer(sender);
+        if (player == null) {
+            this.sendError(sender, "This command can only be used by players.");
+            return false;
+        }
+        
+        // Parse resolution
+        RollupTier tier = RollupTier.HOUR;
+        if (args.length > 0) {
+            try {
+                tier = RollupTier.valueOf(args[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                this.sendError(sender, "Unknown resolution: " + args[0] + ". Usage: " + this.getUsage());
+                return false;
+            }
+        }
+        
+        // Parse number of buckets
+        int buckets = DEFAULT_BUCKETS;
+        if (args.length > 1) {
+            try {
+                buckets = Math.max(1, Math.min(MAX_BUCKETS, Integer.parseInt(args[1])));
+            } catch (NumberFormatException e) {
+                this.sendError(sender, "Invalid number of " + tier.name().toLowerCase() + "s. Usage: " + this.getUsage());
+                return false;
+            }
+        }
+        
+        final Chunk chunk = player.getLocation().getChunk();
+        final int chunkX = chunk.getX();
+        final int chunkZ = chunk.getZ();
+        final long now = System.currentTimeMillis();
+        final HistoryFilter filter = HistoryFilter.since(tier.bucketStart(now) - (buckets - 1L) * tier.getBucketMillis())
+            .inWorld(chunk.getWorld().getName())
+            .within(HistoryFilter.ChunkBounds.of(chunkX, chunkZ, chunkX, chunkZ));
+        
+        // Rollups are read from disk off the main thread, the trend is sent back on it
+        final RollupTier selectedTier = tier;
+        final int selectedBuckets = buckets;
+        Bukkit.getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            final TreeMap<Long, Rollup> trend = new TreeMap<>();
+            try {
+                // A bucket that was open at a shutdown is stored in two parts
+                this.plugin.getDataStorage().queryRollups(selectedTier, filter,
+                    rollup -> trend.merge(rollup.bucketStart(), rollup, Rollup::merge));
+            } catch (IOException e) {
+                this.plugin.getLogger().warning("Failed to read the lag trend: " + e.getMessage());
+                Bukkit.getScheduler().runTask(this.plugin, () ->
+                    this.sendError(player, "Failed to read the lag trend, see the console for details."));
+                return;
+            }
+            Bukkit.getScheduler().runTask(this.plugin, () ->
+                this.sendTrend(player, selectedTier, selectedBuckets, chunkX, chunkZ, trend));
+        });
+        return true;
+    }
+    
+    /**
+     * Send one line per bucket, oldest first.
+     */
+    private void sendTrend(final Player player, final RollupTier tier, final int buckets, final int chunkX,
+                           final int chunkZ, final TreeMap<Long, Rollup> trend) {
+        final String unit = tier.name().toLowerCase();
+        this.sendMessage(player, ChatColor.GOLD + "=== Lag trend of chunk [" + chunkX + ", " + chunkZ + "] per " + unit + " ===");
+        if (trend.isEmpty()) {
+            this.sendMessage(player, ChatColor.GREEN + "No analyses of this chunk in the last " + buckets + " " + unit + "s.");
+            this.sendMessage(player, ChatColor.GRAY + "  • Run '/tracer scan' to record its lag");
+            return;
+        }
+        
+        final DateTimeFormatter format = tier == RollupTier.DAY ? DAY_FORMAT : TIME_FORMAT;
+        for (Map.Entry<Long, Rollup> entry : trend.entrySet()) {
+            final Rollup rollup = entry.getValue();
+            final String bucket = format.format(Instant.ofEpochMilli(entry.getKey()).atZone(ZoneId.systemDefault()));
+            this.sendMessage(player, ChatColor.GRAY + bucket + "  "
+                + LagLevel.fromScore(rollup.mean()).getChatColor() + String.format("avg %.1f", rollup.mean())
+                + ChatColor.GRAY + String.format("  p95 %.1f  max %.1f  (%d scans)", rollup.p95(), rollup.max(), rollup.count()));
+        }
+    }
+    
+    @Override
+    public List<String> tabComplete(final CommandSender sender, final String[] args) {
+        if (args.length == 1) {
+            return Arrays.stream(RollupTier.values())
+                .map(tier -> tier.name().toLowerCase())
+                .filter(s -> s.startsWith(args[0].toLowerCase()))
+                .collect(Collectors.toList());
+        }
+        
+        return Collections.emptyList();
+    }
+    
+    @Override
+    public boolean hasPermission(final CommandSender sender) {
+        return sender.hasPermission("tracer.trend");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Show how the lag of your current chunk developed over time";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/tracer trend [minute|hour|day] [count]";
+    }
+}
@@ -34,12 +34,21 @@ public final class ConfigManager {
     @Getter
     private int maxChunksPerTick;
     
+    @Getter
+    private int captureBudgetMicros;
+    
     @Getter
     private boolean asyncScanning;
     
     @Getter
     private int chunkCooldown;
     
+    @Getter
+    private boolean redstoneIndexEnabled;
+    
+    @Getter
+    private int redstoneIndexMaxAge;
+    
     // Threshold values
     @Getter
     private int entityWarningThreshold;
@@ -94,6 +103,9 @@ public final class ConfigManager {
     @Getter
     private int cacheDuration;
     
+    @Getter
+    private boolean cacheRefreshAhead;
+    
     @Getter
     private boolean adaptiveScanning;
     
@@ -103,16 +115,61 @@ public final class ConfigManager {
     @Getter
     private int maxAsyncTasks;
     
+    @Getter
+    private int analysisQueueSize;
+    
+    @Getter
+    private boolean entityTrackingEnabled;
+    
+    @Getter
+    private int entityReconcileChunksPerTick;
+    
     // Storage settings
     @Getter
     private boolean storageEnabled;
     
+    @Getter
+    private String storageType;
+    
+    @Getter
+    private int databasePoolSize;
+    
     @Getter
     private int retentionDays;
     
     @Getter
     private boolean autoCleanup;
     
+    @Getter
+    private long historyCommitInterval;
+    
+    @Getter
+    private int historyCommitBatchSize;
+    
+    @Getter
+    private long cacheJournalInterval;
+    
+    @Getter
+    private boolean changeOnlyHistory;
+    
+    @Getter
+    private double historyScoreDelta;
+    
+    @Getter
+    private long historyMaxRun;
+    
+    @Getter
+    private boolean rollupsEnabled;
+    
+    @Getter
+    private int minuteRollupRetentionDays;
+    
+    @Getter
+    private int hourRollupRetentionDays;
+    
+    @Getter
+    private int dayRollupRetentionDays;
+    
     public ConfigManager(final TracerPlugin plugin) {
         this.plugin = plugin;
         this.loadConfig();
@@ -178,8 +235,11 @@ public final class ConfigManager {
         this.scanInterval = this.config.getInt("scanning.interval", 30);
         this.scanRadius = this.config.getInt("scanning.radius", 5);
         this.maxChunksPerTick = this.config.getInt("scanning.max-chunks-per-tick", 10);
+        this.captureBudgetMicros = this.config.getInt("scanning.capture-budget-micros", 2000);
         this.asyncScanning = this.config.getBoolean("scanning.async-scanning", true);
         this.chunkCooldown = this.config.getInt("scanning.chunk-cooldown", 60);
+        this.redstoneIndexEnabled = this.config.getBoolean("scanning.redstone-index.enabled", true);
+        this.redstoneIndexMaxAge = this.config.getInt("scanning.redstone-index.max-age", 600);
         
         // Threshold settings
         this.entityWarningThreshold = this.config.getInt("thresholds.entities.warning", 50);
@@ -203,14 +263,30 @@ public final class ConfigManager {
         // Performance settings
         this.maxMemoryUsage = this.config.getInt("performance.max-memory-usage", 50);
         this.cacheDuration = this.config.getInt("performance.cache-duration", 300);
+        this.cacheRefreshAhead = this.config.getBoolean("performance.cache-refresh-ahead", true);
         this.adaptiveScanning = this.config.getBoolean("performance.adaptive-scanning", true);
         this.adaptiveTpsThreshold = this.config.getDouble("performance.adaptive-tps-threshold", 17.0);
         this.maxAsyncTasks = this.config.getInt("performance.max-async-tasks", 4);
+        this.analysisQueueSize = this.config.getInt("performance.analysis-queue-size", 256);
+        this.entityTrackingEnabled = this.config.getBoolean("performance.entity-tracking.enabled", true);
+        this.entityReconcileChunksPerTick = this.config.getInt("performance.entity-tracking.reconcile-chunks-per-tick", 8);
         
         // Storage settings
         this.storageEnabled = this.config.getBoolean("storage.enabled", true);
+        this.storageType = this.config.getString("storage.type", "file");
+        this.databasePoolSize = this.config.getInt("storage.database.pool-size", 4);
         this.retentionDays = this.config.getInt("storage.retention-days", 7);
         this.autoCleanup = this.config.getBoolean("storage.auto-cleanup", true);
+        this.historyCommitInterval = this.config.getLong("storage.commit-interval-ms", 1000L);
+        this.historyCommitBatchSize = this.config.getInt("storage.commit-batch-size", 1024);
+        this.cacheJournalInterval = this.config.getLong("storage.cache-journal-interval-ms", 5000L);
+        this.changeOnlyHistory = this.config.getBoolean("storage.change-only.enabled", true);
+        this.historyScoreDelta = this.config.getDouble("storage.change-only.score-delta", 0.5);
+        this.historyMaxRun = this.config.getLong("storage.change-only.max-run-minutes", 10L) * 60L * 1000L;
+        this.rollupsEnabled = this.config.getBoolean("storage.rollups.enabled", true);
+        this.minuteRollupRetentionDays = this.config.getInt("storage.rollups.retention-days.minute", 2);
+        this.hourRollupRetentionDays = this.config.getInt("storage.rollups.retention-days.hour", 90);
+        this.dayRollupRetentionDays = this.config.getInt("storage.rollups.retention-days.day", 730);
     }
     
     /**
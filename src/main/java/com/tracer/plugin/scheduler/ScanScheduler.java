@@ -488,37 +488,8 @@ public final class ScanScheduler {
                 continue;
             }
             
-            // Analyze chunks in batches to avoid overwhelming the server
-            final int batchSize = Math.max(1, Math.min(50, loadedChunks.length / 10));
-            final List<CompletableFuture<List<LagScore>>> batchFutures = new ArrayList<>();
-            
-            for (int i = 0; i < loadedChunks.length; i += batchSize) {
-                final int endIndex = Math.min(i + batchSize, loadedChunks.length);
-                final List<Chunk> chunkBatch = Arrays.asList(loadedChunks).subList(i, endIndex);
-                
-                final CompletableFuture<List<LagScore>> batchFuture = this.chunkAnalyzer.analyzeChunks(chunkBatch);
-                batchFutures.add(batchFuture);
-            }
-            
-            // Combine all batch results for this world
-            final CompletableFuture<List<LagScore>> worldFuture = CompletableFuture.allOf(
-                batchFutures.toArray(new CompletableFuture[0])
-            ).thenApply(v -> {
-                final List<LagScore> worldResults = new ArrayList<>();
-                for (CompletableFuture<List<LagScore>> batchFuture : batchFutures) {
-                    try {
-                        final List<LagScore> batchResults = batchFuture.get();
-                        if (batchResults != null) {
-                            worldResults.addAll(batchResults);
-                        }
-                    } catch (Exception e) {
-                        this.plugin.getLogger().warning("Error processing batch in world " + world.getName() + ": " + e.getMessage());
-                    }
-                }
-                return worldResults;
-            });
-            
-            worldScanFutures.add(worldFuture);
+            // The capture queue spreads the chunks across ticks within its per-tick budget
+            worldScanFutures.add(this.chunkAnalyzer.analyzeChunks(Arrays.asList(loadedChunks)));
         }
         
         // Combine all world results
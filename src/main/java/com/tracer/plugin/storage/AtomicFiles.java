@@ -0,0 +1,57 @@
+package com.tracer.plugin.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Crash-safe file replacement: a file is written under a temporary name, flushed to
+ * disk and then renamed over its target, so a crash leaves either the old or the new
+ * file but never a partly written one.
+ */
+final class AtomicFiles {
+    
+    private AtomicFiles() {
+    }
+    
+    /**
+     * Get the temporary file a target is written to before it replaces the target.
+     * 
+     * @param target The target file
+     * @return The temporary file next to the target
+     */
+    static Path temporary(final Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+    
+    /**
+     * Flush a completely written temporary file to disk and rename it over its target.
+     * 
+     * @param temporary The temporary file
+     * @param target The target file
+     * @throws IOException If flushing or renaming fails
+     */
+    static void replace(final Path temporary, final Path target) throws IOException {
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getParent());
+    }
+    
+    /**
+     * Flush a directory, making renames and deletions in it durable.
+     * 
+     * @param directory The directory
+     */
+    static void syncDirectory(final Path directory) {
+        try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform, the rename is still atomic
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.analysis.TypeCounts;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+import org.bukkit.Material;
+import org.bukkit.entity.EntityType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk snapshot of the score cache, persisted incrementally.
+ * 
+ * The snapshot is a binary base file holding every cached score at the last compaction,
+ * followed by a delta log. A checkpoint appends only the entries that changed since the
+ * previous checkpoint, a removed entry as a tombstone, so saving costs the changes rather
+ * than the whole cache. Once the delta log outgrows the base, {@link #compact(ScoreCache)}
+ * writes a new base from the cache and empties the log.
+ * 
+ * Both files start with a {@value #HEADER_SIZE} byte header and hold length-prefixed records
+ * ending with a CRC32 of their contents. Loading stops at the first torn or corrupt record.
+ * The delta log is the write-ahead journal of the base: every append is flushed to disk,
+ * a new base replaces the old one by an atomic rename, and both headers carry the generation
+ * of the base, so a log left behind by a crash during compaction is recognized and dropped.
+ * 
+ * Record layout: removed (byte), world (UTF), chunk X, chunk Z (ints), then for a stored
+ * score: timestamp (long), entities, tile entities, redstone (ints), score, TPS (doubles),
+ * lag level (byte), details (boolean, UTF) and the type counts: their number (short), then per type
+ * whether it is an entity type (boolean), its name (UTF) and its count (int). Records written before
+ * type counts were kept end after the details and load with no counts.
+ */
+final class CacheSnapshot {
+    
+    private static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x54524343; // "TRCC"
+    private static final short VERSION = 1;
+    private static final short BASE = 0;
+    private static final short DELTA = 1;
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+    private static final long MIN_COMPACTION_BYTES = 1024L * 1024L;
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    
+    private final Path baseFile;
+    private final Path deltaFile;
+    private final Logger logger;
+    private final CRC32 crc;
+    
+    // Reused record encoder
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream record;
+    
+    private long baseBytes;
+    private long deltaBytes;
+    
+    // Generation of the current base, written into the header of its delta log
+    private long generation;
+    
+    // Set when a checkpoint failed, its changes are only recovered by a compaction
+    private boolean compactionRequired;
+    
+    CacheSnapshot(final Path directory, final Logger logger) throws IOException {
+        this.baseFile = directory.resolve("cache.dat");
+        this.deltaFile = directory.resolve("cache-delta.log");
+        this.logger = logger;
+        this.crc = new CRC32();
+        this.recordBytes = new ByteArrayOutputStream(128);
+        this.record = new DataOutputStream(this.recordBytes);
+        
+        Files.createDirectories(directory);
+    }
+    
+    /**
+     * Check if a snapshot was written before.
+     * 
+     * @return true if the base file exists
+     */
+    boolean exists() {
+        return Files.exists(this.baseFile);
+    }
+    
+    /**
+     * Load the base and replay the delta log into plain maps, so the last record of each
+     * chunk wins without building the indexes of a cache.
+     * 
+     * @param scores Receives the loaded scores by world and packed chunk key
+     * @return The number of records read
+     * @throws IOException If reading fails
+     */
+    synchronized int load(final Map<String, LongObjectHashMap<LagScore>> scores) throws IOException {
+        if (!Files.exists(this.baseFile)) {
+            return 0;
+        }
+        
+        this.baseBytes = Files.size(this.baseFile);
+        final long[] base = new long[2];
+        int records = this.read(this.baseFile, BASE, -1L, scores, base);
+        this.generation = base[1];
+        
+        if (Files.exists(this.deltaFile)) {
+            final long[] delta = new long[2];
+            records += this.read(this.deltaFile, DELTA, this.generation, scores, delta);
+            if (this.generation < 0 || delta[1] != this.generation) {
+                // Written against an older base, the crash came between compaction and deleting the log
+                this.logger.warning("Discarded a cache delta log that predates the cache snapshot");
+                Files.delete(this.deltaFile);
+                return records;
+            }
+            this.deltaBytes = delta[0];
+            
+            // Drop a torn tail so later checkpoints append after the last good record
+            if (this.deltaBytes < Files.size(this.deltaFile)) {
+                this.logger.warning("Discarded a torn record at the end of the cache delta log");
+                try (final FileChannel channel = FileChannel.open(this.deltaFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(this.deltaBytes);
+                }
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * Append the entries changed since the last checkpoint to the delta log, compacting
+     * instead if the log has outgrown the base.
+     * 
+     * @param cache The cache
+     * @return The number of bytes written
+     * @throws IOException If writing fails
+     */
+    synchronized long checkpoint(final ScoreCache cache) throws IOException {
+        if (this.compactionRequired || !Files.exists(this.baseFile)
+            || this.deltaBytes > Math.max(MIN_COMPACTION_BYTES, this.baseBytes)) {
+            return this.compact(cache);
+        }
+        
+        final List<ScoreCache.Change> changes = cache.drainChanges();
+        if (changes.isEmpty()) {
+            return 0L;
+        }
+        
+        // The drained changes exist nowhere else, losing them requires a full rewrite
+        this.compactionRequired = true;
+        final boolean created = !Files.exists(this.deltaFile) || this.deltaBytes == 0L;
+        long written = 0L;
+        try (final FileChannel channel = FileChannel.open(this.deltaFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                created ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)) {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            if (created) {
+                this.writeHeader(output, DELTA, this.generation);
+                written += HEADER_SIZE;
+            }
+            for (ScoreCache.Change change : changes) {
+                written += this.writeRecord(output, change.worldName(), change.chunkX(), change.chunkZ(), change.score());
+            }
+            output.flush();
+            
+            // Appends are small, flushing them is what makes the journal durable
+            channel.force(false);
+        }
+        this.deltaBytes += written;
+        this.compactionRequired = false;
+        return written;
+    }
+    
+    /**
+     * Write every cached score to a new base and empty the delta log.
+     * 
+     * @param cache The cache
+     * @return The number of bytes written
+     * @throws IOException If writing fails
+     */
+    synchronized long compact(final ScoreCache cache) throws IOException {
+        // Drain first, changes made while writing stay dirty for the next checkpoint
+        cache.drainChanges();
+        this.compactionRequired = true;
+        
+        final long newGeneration = Math.max(this.generation + 1, System.currentTimeMillis());
+        final Path temporary = AtomicFiles.temporary(this.baseFile);
+        long written = HEADER_SIZE;
+        try (final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            this.writeHeader(output, BASE, newGeneration);
+            for (LagScore score : cache.values()) {
+                written += this.writeRecord(output, score.getWorldName(), score.getChunkX(), score.getChunkZ(), score);
+            }
+        }
+        AtomicFiles.replace(temporary, this.baseFile);
+        
+        // The new base covers the whole log, a log that survives a crash here is stale by its generation
+        this.generation = newGeneration;
+        Files.deleteIfExists(this.deltaFile);
+        this.baseBytes = written;
+        this.deltaBytes = 0L;
+        this.compactionRequired = false;
+        return written;
+    }
+    
+    synchronized long getBaseBytes() {
+        return this.baseBytes;
+    }
+    
+    synchronized long getDeltaBytes() {
+        return this.deltaBytes;
+    }
+    
+    /**
+     * Read the records of a snapshot file into the loaded scores.
+     * 
+     * @param generation The base generation the file must belong to, or -1 for any
+     * @param state Receives the length of the file up to the last good record and its generation
+     */
+    private int read(final Path file, final short kind, final long generation,
+                     final Map<String, LongObjectHashMap<LagScore>> scores, final long[] state) throws IOException {
+        int records = 0;
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            state[1] = this.readHeader(input, kind, file);
+            if (state[1] < 0 || (generation >= 0 && state[1] != generation)) {
+                return 0;
+            }
+            state[0] = HEADER_SIZE;
+            
+            final byte[] buffer = new byte[MAX_RECORD_SIZE];
+            while (true) {
+                final int length;
+                final int checksum;
+                try {
+                    length = input.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    input.readFully(buffer, 0, length);
+                    checksum = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                this.crc.reset();
+                this.crc.update(buffer, 0, length);
+                if ((int) this.crc.getValue() != checksum) {
+                    break;
+                }
+                
+                this.applyRecord(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)), scores);
+                state[0] += length + 8L;
+                records++;
+            }
+        }
+        return records;
+    }
+    
+    private void applyRecord(final DataInputStream input, final Map<String, LongObjectHashMap<LagScore>> scores) throws IOException {
+        final boolean removed = input.readBoolean();
+        final String worldName = input.readUTF();
+        final int chunkX = input.readInt();
+        final int chunkZ = input.readInt();
+        if (removed) {
+            final LongObjectHashMap<LagScore> world = scores.get(worldName);
+            if (world != null) {
+                world.remove(ChunkKeys.pack(chunkX, chunkZ));
+            }
+            return;
+        }
+        
+        final long timestamp = input.readLong();
+        final int entityCount = input.readInt();
+        final int tileEntityCount = input.readInt();
+        final int redstoneCount = input.readInt();
+        final double overallScore = input.readDouble();
+        final double currentTps = input.readDouble();
+        final int level = input.readByte();
+        final String details = input.readBoolean() ? input.readUTF() : null;
+        final TypeCounts typeCounts = input.available() > 0 ? readTypeCounts(input) : TypeCounts.EMPTY;
+        if (level < 0 || level >= LEVELS.length) {
+            return;
+        }
+        
+        scores.computeIfAbsent(worldName, name -> new LongObjectHashMap<>()).put(ChunkKeys.pack(chunkX, chunkZ),
+            LagScore.restore(worldName, chunkX, chunkZ, timestamp, entityCount, tileEntityCount,
+                redstoneCount, overallScore, currentTps, LEVELS[level], details, typeCounts));
+    }
+    
+    /**
+     * Read type counts stored by name, skipping types this server does not know.
+     */
+    private static TypeCounts readTypeCounts(final DataInputStream input) throws IOException {
+        final int[] entities = new int[EntityType.values().length];
+        final Map<Material, Integer> blocks = new HashMap<>();
+        final int size = input.readUnsignedShort();
+        for (int index = 0; index < size; index++) {
+            final boolean entity = input.readBoolean();
+            final String name = input.readUTF();
+            final int count = input.readInt();
+            try {
+                if (entity) {
+                    entities[EntityType.valueOf(name).ordinal()] = count;
+                } else {
+                    blocks.put(Material.valueOf(name), count);
+                }
+            } catch (IllegalArgumentException e) {
+                // Removed in this server version
+            }
+        }
+        return TypeCounts.of(entities, blocks);
+    }
+    
+    /**
+     * Encode one record and write it with its length and checksum.
+     * 
+     * @param score The score, or null to write a tombstone
+     * @return The number of bytes written
+     */
+    private long writeRecord(final DataOutputStream output, final String worldName, final int chunkX, final int chunkZ,
+                             final LagScore score) throws IOException {
+        this.recordBytes.reset();
+        this.record.writeBoolean(score == null);
+        this.record.writeUTF(worldName);
+        this.record.writeInt(chunkX);
+        this.record.writeInt(chunkZ);
+        if (score != null) {
+            this.record.writeLong(score.getTimestamp());
+            this.record.writeInt(score.getEntityCount());
+            this.record.writeInt(score.getTileEntityCount());
+            this.record.writeInt(score.getRedstoneCount());
+            this.record.writeDouble(score.getOverallScore());
+            this.record.writeDouble(score.getCurrentTps());
+            this.record.writeByte(score.getLagLevel().ordinal());
+            
+            // Details are free text, truncate anything that would not fit a record
+            final String details = score.getDetails();
+            this.record.writeBoolean(details != null);
+            if (details != null) {
+                this.record.writeUTF(details.length() > 4096 ? details.substring(0, 4096) : details);
+            }
+            
+            // Types are stored by name, ordinals change between server versions
+            final TypeCounts typeCounts = score.getTypeCounts();
+            this.record.writeShort(typeCounts.size());
+            for (int index = 0; index < typeCounts.size(); index++) {
+                final Enum<?> type = typeCounts.getType(index);
+                this.record.writeBoolean(type instanceof EntityType);
+                this.record.writeUTF(type.name());
+                this.record.writeInt(typeCounts.getCount(index));
+            }
+        }
+        
+        this.crc.reset();
+        this.crc.update(this.recordBytes.toByteArray());
+        output.writeInt(this.recordBytes.size());
+        this.recordBytes.writeTo(output);
+        output.writeInt((int) this.crc.getValue());
+        return this.recordBytes.size() + 8L;
+    }
+    
+    private void writeHeader(final DataOutputStream output, final short kind, final long generation) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeShort(kind);
+        output.writeLong(generation);
+    }
+    
+    /**
+     * Read and check a file header.
+     * 
+     * @return The base generation of the file, or -1 if the header is invalid
+     */
+    private long readHeader(final DataInputStream input, final short kind, final Path file) throws IOException {
+        try {
+            if (input.readInt() == MAGIC && input.readShort() == VERSION && input.readShort() == kind) {
+                return input.readLong();
+            }
+        } catch (EOFException e) {
+            // Fall through to the warning
+        }
+        this.logger.warning("Skipping cache snapshot with an invalid header: " + file.getFileName());
+        return -1L;
+    }
+}
@@ -0,0 +1,230 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Run-length encoder of the analysis history, recording a chunk only when it changes.
+ * 
+ * The first scan of a chunk is recorded and starts a run. Later scans whose counts and lag
+ * level are equal and whose score is within the configured delta of the run's first record
+ * only extend the run in memory. When the chunk changes, the last unchanged scan is recorded
+ * as the end of the run, followed by the changed scan which starts the next run. A run of
+ * any length is stored as at most two records, and the value of a chunk at any point in
+ * time is that of its latest record at or before it.
+ * 
+ * Runs are also closed once they span the maximum run length, so every chunk that is still
+ * scanned has a record in each window of that length and retention never deletes the start
+ * of a run that is still going on.
+ */
+final class ChangeRecorder {
+    
+    private final ReentrantLock lock;
+    private final Map<String, LongObjectHashMap<Run>> runs;
+    
+    private double scoreDelta;
+    private long maxRunMillis;
+    private long suppressedRecords;
+    
+    ChangeRecorder() {
+        this.lock = new ReentrantLock();
+        this.runs = new HashMap<>();
+        this.maxRunMillis = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Set when a scan counts as a change.
+     * 
+     * @param scoreDelta Largest score difference still recorded as unchanged
+     * @param maxRunMillis Longest time a run is extended before it is closed with a record
+     */
+    void configure(final double scoreDelta, final long maxRunMillis) {
+        this.lock.lock();
+        try {
+            this.scoreDelta = Math.max(0.0, scoreDelta);
+            this.maxRunMillis = Math.max(1L, maxRunMillis);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Pass a scan to the sink if it changes its chunk, closing the chunk's run first.
+     * The sink is called with the lock held and must not block.
+     * 
+     * @param score The scan
+     * @param sink Receives the records to store
+     */
+    void record(final LagScore score, final Consumer<LagScore> sink) {
+        final long key = ChunkKeys.pack(score.getChunkX(), score.getChunkZ());
+        this.lock.lock();
+        try {
+            final LongObjectHashMap<Run> chunks = this.runs.computeIfAbsent(score.getWorldName(), world -> new LongObjectHashMap<>());
+            final Run run = chunks.get(key);
+            if (run == null) {
+                chunks.put(key, new Run(score));
+                sink.accept(score);
+                return;
+            }
+            
+            // Scans older than the run are stored as they are, they cannot extend it
+            if (score.getTimestamp() < run.lastSeen) {
+                sink.accept(score);
+                return;
+            }
+            
+            if (this.isChanged(run.first, score)) {
+                if (run.last != null) {
+                    sink.accept(run.last);
+                }
+                run.start(score);
+                sink.accept(score);
+            } else if (score.getTimestamp() - run.first.getTimestamp() >= this.maxRunMillis) {
+                // The scan itself closes the run and starts the next one with its exact values
+                run.start(score);
+                sink.accept(score);
+            } else {
+                run.last = score;
+                run.lastSeen = score.getTimestamp();
+                this.suppressedRecords++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Close the runs of chunks that were not scanned for the maximum run length, recording
+     * their ends and forgetting them.
+     * 
+     * @param now The current time in milliseconds, or {@link Long#MAX_VALUE} to close every run
+     * @param sink Receives the records to store
+     * @return The number of closed runs
+     */
+    int closeIdle(final long now, final Consumer<LagScore> sink) {
+        int closed = 0;
+        this.lock.lock();
+        try {
+            for (LongObjectHashMap<Run> chunks : this.runs.values()) {
+                final List<Long> idle = new ArrayList<>();
+                chunks.forEach((key, run) -> {
+                    if (now == Long.MAX_VALUE || now - run.lastSeen >= this.maxRunMillis) {
+                        idle.add(key);
+                        if (run.last != null) {
+                            sink.accept(run.last);
+                        }
+                    }
+                });
+                for (long key : idle) {
+                    chunks.remove(key);
+                }
+                closed += idle.size();
+            }
+            this.runs.values().removeIf(LongObjectHashMap::isEmpty);
+        } finally {
+            this.lock.unlock();
+        }
+        return closed;
+    }
+    
+    /**
+     * Get the ends of the open runs selected by a filter, which are not stored yet.
+     * 
+     * @param filter The filter
+     * @return The unrecorded run ends
+     */
+    List<LagScore> pending(final HistoryFilter filter) {
+        final List<LagScore> pending = new ArrayList<>();
+        this.lock.lock();
+        try {
+            for (LongObjectHashMap<Run> chunks : this.runs.values()) {
+                chunks.forEach((key, run) -> {
+                    if (run.last != null && filter.matches(run.last)) {
+                        pending.add(run.last);
+                    }
+                });
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return pending;
+    }
+    
+    /**
+     * Forget every open run without recording it.
+     */
+    void clear() {
+        this.lock.lock();
+        try {
+            this.runs.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    int getOpenRuns() {
+        this.lock.lock();
+        try {
+            int count = 0;
+            for (LongObjectHashMap<Run> chunks : this.runs.values()) {
+                count += chunks.size();
+            }
+            return count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the number of scans that extended a run instead of being stored.
+     * 
+     * @return The suppressed record count
+     */
+    long getSuppressedRecords() {
+        this.lock.lock();
+        try {
+            return this.suppressedRecords;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    private boolean isChanged(final LagScore recorded, final LagScore score) {
+        return recorded.getEntityCount() != score.getEntityCount()
+            || recorded.getTileEntityCount() != score.getTileEntityCount()
+            || recorded.getRedstoneCount() != score.getRedstoneCount()
+            || recorded.getLagLevel() != score.getLagLevel()
+            || Math.abs(recorded.getOverallScore() - score.getOverallScore()) > this.scoreDelta;
+    }
+    
+    /**
+     * Unchanged scans of one chunk since its last record.
+     */
+    private static final class Run {
+        
+        // The recorded scan the run started with
+        private LagScore first;
+        
+        // The latest unchanged scan, null until the run was extended
+        private LagScore last;
+        private long lastSeen;
+        
+        private Run(final LagScore first) {
+            this.start(first);
+        }
+        
+        private void start(final LagScore first) {
+            this.first = first;
+            this.last = null;
+            this.lastSeen = first.getTimestamp();
+        }
+    }
+}
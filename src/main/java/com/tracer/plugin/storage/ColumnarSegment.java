@@ -0,0 +1,270 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Sealed history segment stored column by column and read through a read-only memory mapping.
+ * 
+ * Rows are sorted by timestamp. Each column is one contiguous array of primitives, and a
+ * sparse index holds the timestamp of every {@value #INDEX_STRIDE}th row, so a time range
+ * is found by a binary search over the index and a short scan of the timestamp column.
+ * Nothing but the header fields is held on the heap.
+ * 
+ * Layout: header, sparse index (longs), then the columns timestamp (long), world id,
+ * chunk X, chunk Z, entities, tile entities, redstone (ints), score, TPS (doubles) and
+ * lag level (bytes). The header ends with a CRC32 of everything after it.
+ */
+final class ColumnarSegment {
+    
+    static final String SUFFIX = ".col";
+    static final int INDEX_STRIDE = 128;
+    
+    private static final int MAGIC = 0x54524353; // "TRCS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final long segmentStart;
+    private final int rowCount;
+    private final int indexCount;
+    
+    // Column offsets
+    private final int indexOffset;
+    private final int timestampOffset;
+    private final int worldOffset;
+    private final int chunkXOffset;
+    private final int chunkZOffset;
+    private final int entityOffset;
+    private final int tileEntityOffset;
+    private final int redstoneOffset;
+    private final int scoreOffset;
+    private final int tpsOffset;
+    private final int levelOffset;
+    
+    private ColumnarSegment(final Path path, final MappedByteBuffer buffer, final long segmentStart, final int rowCount) {
+        this.path = path;
+        this.buffer = buffer;
+        this.segmentStart = segmentStart;
+        this.rowCount = rowCount;
+        this.indexCount = (rowCount + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        
+        this.indexOffset = HEADER_SIZE;
+        this.timestampOffset = this.indexOffset + 8 * this.indexCount;
+        this.worldOffset = this.timestampOffset + 8 * rowCount;
+        this.chunkXOffset = this.worldOffset + 4 * rowCount;
+        this.chunkZOffset = this.chunkXOffset + 4 * rowCount;
+        this.entityOffset = this.chunkZOffset + 4 * rowCount;
+        this.tileEntityOffset = this.entityOffset + 4 * rowCount;
+        this.redstoneOffset = this.tileEntityOffset + 4 * rowCount;
+        this.scoreOffset = this.redstoneOffset + 4 * rowCount;
+        this.tpsOffset = this.scoreOffset + 8 * rowCount;
+        this.levelOffset = this.tpsOffset + 8 * rowCount;
+    }
+    
+    /**
+     * Write a segment file. The file is meant to be a temporary file that the caller moves
+     * into place with {@link AtomicFiles#replace}, so a crash never leaves a partial segment behind.
+     * 
+     * @param path The file to write
+     * @param segmentStart The start of the segment's time partition
+     * @param rows The rows, sorted by timestamp
+     * @param worldIds The world id of each row
+     * @throws IOException If writing fails
+     */
+    static void write(final Path path, final long segmentStart, final List<LagScore> rows,
+                      final int[] worldIds) throws IOException {
+        final int rowCount = rows.size();
+        final int indexCount = (rowCount + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        final ByteBuffer body = ByteBuffer.allocate(8 * indexCount + rowCount * (8 + 4 * 6 + 8 + 8 + 1));
+        
+        for (int i = 0; i < rowCount; i += INDEX_STRIDE) {
+            body.putLong(rows.get(i).getTimestamp());
+        }
+        for (LagScore row : rows) {
+            body.putLong(row.getTimestamp());
+        }
+        for (int worldId : worldIds) {
+            body.putInt(worldId);
+        }
+        for (LagScore row : rows) {
+            body.putInt(row.getChunkX());
+        }
+        for (LagScore row : rows) {
+            body.putInt(row.getChunkZ());
+        }
+        for (LagScore row : rows) {
+            body.putInt(row.getEntityCount());
+        }
+        for (LagScore row : rows) {
+            body.putInt(row.getTileEntityCount());
+        }
+        for (LagScore row : rows) {
+            body.putInt(row.getRedstoneCount());
+        }
+        for (LagScore row : rows) {
+            body.putDouble(row.getOverallScore());
+        }
+        for (LagScore row : rows) {
+            body.putDouble(row.getCurrentTps());
+        }
+        for (LagScore row : rows) {
+            body.put((byte) row.getLagLevel().ordinal());
+        }
+        body.flip();
+        
+        final CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.limit());
+        
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putLong(segmentStart);
+        header.putInt(rowCount);
+        header.putInt(INDEX_STRIDE);
+        header.putLong(rowCount > 0 ? rows.get(0).getTimestamp() : segmentStart);
+        header.putLong(rowCount > 0 ? rows.get(rowCount - 1).getTimestamp() : segmentStart);
+        header.putInt((int) crc.getValue());
+        header.position(HEADER_SIZE);
+        header.flip();
+        
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+    }
+    
+    /**
+     * Map a segment and verify its header and checksum.
+     * 
+     * @param path The segment file
+     * @return The mapped segment
+     * @throws IOException If the file cannot be read or is corrupt
+     */
+    static ColumnarSegment open(final Path path) throws IOException {
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid history segment size: " + path.getFileName());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION || buffer.getInt(20) != INDEX_STRIDE) {
+            throw new IOException("Invalid history segment header: " + path.getFileName());
+        }
+        
+        final long segmentStart = buffer.getLong(8);
+        final int rowCount = buffer.getInt(16);
+        final ColumnarSegment segment = new ColumnarSegment(path, buffer, segmentStart, rowCount);
+        if (segment.levelOffset + rowCount != buffer.capacity()) {
+            throw new IOException("Truncated history segment: " + path.getFileName());
+        }
+        
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if (buffer.getInt(40) != (int) crc.getValue()) {
+            throw new IOException("History segment failed its checksum: " + path.getFileName());
+        }
+        return segment;
+    }
+    
+    /**
+     * Find the first row at or after a point in time.
+     * 
+     * @param timestamp The timestamp
+     * @return The row, or the row count if every row is earlier
+     */
+    int firstRowAtOrAfter(final long timestamp) {
+        // Last index entry before the timestamp
+        int low = 0;
+        int high = this.indexCount - 1;
+        int block = 0;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (this.buffer.getLong(this.indexOffset + 8 * middle) < timestamp) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        
+        int row = block * INDEX_STRIDE;
+        while (row < this.rowCount && this.timestamp(row) < timestamp) {
+            row++;
+        }
+        return row;
+    }
+    
+    long timestamp(final int row) {
+        return this.buffer.getLong(this.timestampOffset + 8 * row);
+    }
+    
+    int worldId(final int row) {
+        return this.buffer.getInt(this.worldOffset + 4 * row);
+    }
+    
+    int chunkX(final int row) {
+        return this.buffer.getInt(this.chunkXOffset + 4 * row);
+    }
+    
+    int chunkZ(final int row) {
+        return this.buffer.getInt(this.chunkZOffset + 4 * row);
+    }
+    
+    int entityCount(final int row) {
+        return this.buffer.getInt(this.entityOffset + 4 * row);
+    }
+    
+    int tileEntityCount(final int row) {
+        return this.buffer.getInt(this.tileEntityOffset + 4 * row);
+    }
+    
+    int redstoneCount(final int row) {
+        return this.buffer.getInt(this.redstoneOffset + 4 * row);
+    }
+    
+    double score(final int row) {
+        return this.buffer.getDouble(this.scoreOffset + 8 * row);
+    }
+    
+    double tps(final int row) {
+        return this.buffer.getDouble(this.tpsOffset + 8 * row);
+    }
+    
+    int level(final int row) {
+        return this.buffer.get(this.levelOffset + row);
+    }
+    
+    Path getPath() {
+        return this.path;
+    }
+    
+    long getSegmentStart() {
+        return this.segmentStart;
+    }
+    
+    int getRowCount() {
+        return this.rowCount;
+    }
+    
+    long getSize() {
+        return this.buffer.capacity();
+    }
+}
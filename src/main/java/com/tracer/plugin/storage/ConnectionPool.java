@@ -0,0 +1,127 @@
+package com.tracer.plugin.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of JDBC connections to one database.
+ * 
+ * Connections are opened on demand up to the pool size and run the init statements once.
+ * Borrowers beyond the pool size wait for a returned connection.
+ */
+final class ConnectionPool implements AutoCloseable {
+    
+    private static final long BORROW_TIMEOUT_SECONDS = 10L;
+    
+    private final String url;
+    private final String[] initStatements;
+    private final ArrayBlockingQueue<Connection> idle;
+    private final AtomicInteger opened;
+    private final int size;
+    
+    private volatile boolean closed;
+    
+    ConnectionPool(final String url, final int size, final String... initStatements) {
+        this.url = url;
+        this.size = Math.max(1, size);
+        this.initStatements = initStatements;
+        this.idle = new ArrayBlockingQueue<>(this.size);
+        this.opened = new AtomicInteger();
+    }
+    
+    /**
+     * Take a connection, opening one if the pool is not full.
+     * 
+     * @return The connection, to be handed back with {@link #release(Connection)}
+     * @throws SQLException If opening fails or no connection was returned in time
+     */
+    Connection borrow() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        
+        Connection connection = this.idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        
+        if (this.opened.incrementAndGet() <= this.size) {
+            try {
+                return this.open();
+            } catch (SQLException | RuntimeException e) {
+                this.opened.decrementAndGet();
+                throw e;
+            }
+        }
+        this.opened.decrementAndGet();
+        
+        try {
+            connection = this.idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        if (connection == null) {
+            throw new SQLException("No database connection available after " + BORROW_TIMEOUT_SECONDS + "s");
+        }
+        return connection;
+    }
+    
+    /**
+     * Hand a borrowed connection back to the pool.
+     * 
+     * @param connection The connection
+     */
+    void release(final Connection connection) {
+        try {
+            if (this.closed || connection.isClosed() || !connection.getAutoCommit()) {
+                // Never hand out a connection in an unknown state
+                this.discard(connection);
+                return;
+            }
+        } catch (SQLException e) {
+            this.discard(connection);
+            return;
+        }
+        
+        if (!this.idle.offer(connection)) {
+            this.discard(connection);
+        }
+    }
+    
+    @Override
+    public void close() {
+        this.closed = true;
+        Connection connection;
+        while ((connection = this.idle.poll()) != null) {
+            this.discard(connection);
+        }
+    }
+    
+    private Connection open() throws SQLException {
+        final Connection connection = DriverManager.getConnection(this.url);
+        try (final Statement statement = connection.createStatement()) {
+            for (String sql : this.initStatements) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+    
+    private void discard(final Connection connection) {
+        this.opened.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Already unusable
+        }
+    }
+}
@@ -2,9 +2,14 @@ package com.tracer.plugin.storage;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.tracer.plugin.TracerPlugin;
+import com.tracer.plugin.analysis.LagLevel;
 import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.analysis.TypeCounts;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.scheduler.BukkitTask;
@@ -14,33 +19,73 @@ import java.lang.reflect.Type;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 /**
  * Handles data storage and persistence for lag analysis results.
  */
 public final class DataStorage {
     
+    // Rough heap size of a queued history record: queue node plus a score with its lag sources
+    private static final long QUEUED_RECORD_BYTES = 200L;
+    
+    private static final long SHUTDOWN_LOAD_WAIT_SECONDS = 30L;
+    
     private final TracerPlugin plugin;
     private final Gson gson;
     private final Path dataDirectory;
-    private final Path historyFile;
-    private final Path cacheFile;
+    private final Path historyDirectory;
+    private final Path historyDatabaseFile;
+    private final Path rollupDirectory;
+    private final Path legacyHistoryFile;
+    private final Path legacyCacheFile;
     
     // Thread-safe storage
-    private final Map<String, LagScore> analysisCache;
-    private final List<LagScore> analysisHistory;
-    private final ReentrantReadWriteLock lock;
+    private final ScoreCache analysisCache;
+    
+    // Holds back history records of unchanged chunks
+    private final ChangeRecorder changeRecorder;
+    
+    // Incremental snapshot of the cache, null until the cache is loaded or while persistence is disabled
+    private volatile CacheSnapshot cacheSnapshot;
+    
+    // History store selected by storage.type, null until it is open or while persistence is disabled
+    private volatile HistoryStore historyStore;
+    
+    // Minute, hour and day rollups of the history, null while persistence or rollups are disabled
+    private volatile RollupStore rollupStore;
+    
+    // Persisted data is loaded in the background, records stored meanwhile wait here
+    private final CompletableFuture<Void> ready;
+    private final Queue<LagScore> pendingHistory;
+    private volatile boolean historyLoaded;
     
     // Auto-save task
     private BukkitTask autoSaveTask;
     
+    // Cache expiry task
+    private BukkitTask expiryTask;
+    
+    // Cache journal task
+    private BukkitTask journalTask;
+    
+    // Rollup flush task
+    private BukkitTask rollupTask;
+    
+    // Last export started, kept to allow one export at a time
+    private HistoryExport activeExport;
+    
     @Getter
     private boolean persistenceEnabled;
     
@@ -55,16 +100,23 @@ public final class DataStorage {
             .create();
         
         this.dataDirectory = Paths.get(plugin.getDataFolder().getAbsolutePath(), "data");
-        this.historyFile = this.dataDirectory.resolve("analysis_history.json");
-        this.cacheFile = this.dataDirectory.resolve("analysis_cache.json");
+        this.historyDirectory = this.dataDirectory.resolve("history");
+        this.historyDatabaseFile = this.dataDirectory.resolve("history.db");
+        this.rollupDirectory = this.dataDirectory.resolve("rollups");
+        this.legacyHistoryFile = this.dataDirectory.resolve("analysis_history.json");
+        this.legacyCacheFile = this.dataDirectory.resolve("analysis_cache.json");
         
-        this.analysisCache = new ConcurrentHashMap<>();
-        this.analysisHistory = Collections.synchronizedList(new ArrayList<>());
-        this.lock = new ReentrantReadWriteLock();
+        this.analysisCache = new ScoreCache();
+        this.changeRecorder = new ChangeRecorder();
+        this.ready = new CompletableFuture<>();
+        this.pendingHistory = new ConcurrentLinkedQueue<>();
         
         this.loadConfiguration();
         this.initializeStorage();
         this.startAutoSave();
+        this.startCacheExpiry();
+        this.startCacheJournal();
+        this.startRollupFlush();
     }
     
     /**
@@ -73,10 +125,23 @@ public final class DataStorage {
     private void loadConfiguration() {
         this.persistenceEnabled = this.plugin.getConfigManager().getBoolean("data.persistence.enabled", true);
         this.retentionDays = this.plugin.getConfigManager().getInt("data.persistence.retention_days", 7);
+        this.analysisCache.setMaximumWeight(this.plugin.getConfigManager().getMaxMemoryUsage() * 1024L * 1024L);
+        
+        // Hot entries are refreshed once 80% of their lifetime has passed
+        final long expireAfter = this.plugin.getConfigManager().getCacheDuration() * 1000L;
+        final long refreshAfter = this.plugin.getConfigManager().isCacheRefreshAhead() ? expireAfter * 4 / 5 : -1L;
+        this.analysisCache.setExpiry(expireAfter, refreshAfter);
+        this.changeRecorder.configure(this.plugin.getConfigManager().getHistoryScoreDelta(),
+            this.plugin.getConfigManager().getHistoryMaxRun());
+        
+        if (this.historyStore != null) {
+            this.historyStore.configure(this.plugin.getConfigManager().getHistoryCommitInterval(),
+                this.plugin.getConfigManager().getHistoryCommitBatchSize());
+        }
     }
     
     /**
-     * Initialize storage directories and load existing data.
+     * Initialize storage directories and start loading existing data in the background.
      */
     private void initializeStorage() {
         try {
@@ -85,17 +150,49 @@ public final class DataStorage {
                 Files.createDirectories(this.dataDirectory);
                 this.plugin.getLogger().info("Created data directory: " + this.dataDirectory);
             }
-            
-            // Load existing data if persistence is enabled
-            if (this.persistenceEnabled) {
-                this.loadAnalysisCache();
-                this.loadAnalysisHistory();
-                this.cleanupOldData();
-            }
-            
         } catch (IOException e) {
             this.plugin.getLogger().log(Level.SEVERE, "Failed to initialize data storage", e);
         }
+        
+        if (!this.persistenceEnabled) {
+            this.historyLoaded = true;
+            this.ready.complete(null);
+            return;
+        }
+        
+        // Cache and history load side by side off the main thread, so the server starts without waiting
+        final long start = System.currentTimeMillis();
+        final Executor async = task -> Bukkit.getScheduler().runTaskAsynchronously(this.plugin, task);
+        CompletableFuture.allOf(
+            CompletableFuture.runAsync(this::loadAnalysisCache, async),
+            CompletableFuture.runAsync(this::loadAnalysisHistory, async)
+        ).whenComplete((result, error) -> {
+            if (error != null) {
+                this.plugin.getLogger().log(Level.SEVERE, "Failed to load persisted data", error);
+            } else {
+                this.plugin.debugLog("Loaded persisted data in " + (System.currentTimeMillis() - start) + "ms");
+            }
+            this.ready.complete(null);
+        });
+    }
+    
+    /**
+     * Check if the persisted cache and history are loaded. Until then the cache holds
+     * part of the persisted scores and history queries wait.
+     * 
+     * @return true if loading finished
+     */
+    public boolean isReady() {
+        return this.ready.isDone();
+    }
+    
+    /**
+     * Get a future completed once the persisted cache and history are loaded.
+     * 
+     * @return The future, never completed exceptionally
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return this.ready;
     }
     
     /**
@@ -118,6 +215,61 @@ public final class DataStorage {
         this.plugin.debugLog("Started auto-save task with interval: " + saveInterval + " seconds");
     }
     
+    /**
+     * Start the task that advances the cache's expiry wheel once per second.
+     */
+    private void startCacheExpiry() {
+        this.expiryTask = Bukkit.getScheduler().runTaskTimerAsynchronously(
+            this.plugin,
+            () -> this.analysisCache.expire(System.currentTimeMillis()),
+            20L,
+            20L
+        );
+    }
+    
+    /**
+     * Start the task that journals changed cache entries every few seconds.
+     */
+    private void startCacheJournal() {
+        if (!this.persistenceEnabled) {
+            return;
+        }
+        
+        final long interval = Math.max(1L, this.plugin.getConfigManager().getCacheJournalInterval() / 50L);
+        this.journalTask = Bukkit.getScheduler().runTaskTimerAsynchronously(
+            this.plugin,
+            this::journalAnalysisCache,
+            interval,
+            interval
+        );
+    }
+    
+    /**
+     * Start the task that writes the rollup buckets that have ended once per minute.
+     */
+    private void startRollupFlush() {
+        // The rollup store opens in the background, flushing skips it until then
+        if (!this.persistenceEnabled || !this.plugin.getConfigManager().isRollupsEnabled()) {
+            return;
+        }
+        
+        this.rollupTask = Bukkit.getScheduler().runTaskTimerAsynchronously(
+            this.plugin,
+            () -> this.flushRollups(System.currentTimeMillis()),
+            1200L,
+            1200L
+        );
+    }
+    
+    /**
+     * Set the handler that re-analyzes hot chunks before their cached score expires.
+     * 
+     * @param refreshHandler The handler, or null to disable refreshing
+     */
+    public void setRefreshHandler(final ScoreCache.RefreshHandler refreshHandler) {
+        this.analysisCache.setRefreshHandler(refreshHandler);
+    }
+    
     /**
      * Store a lag score in the cache.
      * 
@@ -128,20 +280,21 @@ public final class DataStorage {
             return;
         }
         
-        final String key = this.generateCacheKey(lagScore);
+        // Store in cache
+        this.analysisCache.put(lagScore);
         
-        this.lock.writeLock().lock();
-        try {
-            // Store in cache
-            this.analysisCache.put(key, lagScore);
-            
-            // Add to history if persistence is enabled
-            if (this.persistenceEnabled) {
-                this.analysisHistory.add(lagScore);
+        // Hand to the history writer if persistence is enabled, never waits for disk I/O
+        if (this.persistenceEnabled) {
+            if (this.historyLoaded) {
+                this.storeHistory(lagScore);
+            } else {
+                this.pendingHistory.add(lagScore);
+                
+                // Loading may have finished after the check, the record must not be stranded
+                if (this.historyLoaded) {
+                    this.drainPendingHistory();
+                }
             }
-            
-        } finally {
-            this.lock.writeLock().unlock();
         }
         
         this.plugin.debugLog("Stored lag score for chunk: " + lagScore.getChunkX() + ", " + lagScore.getChunkZ());
@@ -156,14 +309,7 @@ public final class DataStorage {
      * @return The cached lag score, or null if not found
      */
     public LagScore getLagScore(final String world, final int chunkX, final int chunkZ) {
-        final String key = this.generateCacheKey(world, chunkX, chunkZ);
-        
-        this.lock.readLock().lock();
-        try {
-            return this.analysisCache.get(key);
-        } finally {
-            this.lock.readLock().unlock();
-        }
+        return this.analysisCache.get(world, chunkX, chunkZ);
     }
     
     /**
@@ -171,13 +317,35 @@ public final class DataStorage {
      * 
      * @return A copy of all cached lag scores
      */
-    public Map<String, LagScore> getAllCachedScores() {
-        this.lock.readLock().lock();
-        try {
-            return new HashMap<>(this.analysisCache);
-        } finally {
-            this.lock.readLock().unlock();
-        }
+    public List<LagScore> getAllCachedScores() {
+        return this.analysisCache.values();
+    }
+    
+    /**
+     * Get the cached scores ranked from the worst chunk, with views per world and lag level.
+     * 
+     * @return The ranking, safe to read from any thread
+     */
+    public ScoreRanking getScoreRanking() {
+        return this.analysisCache.getRanking();
+    }
+    
+    /**
+     * Get the cached scores indexed by chunk position, for radius, area and nearest chunk queries.
+     * 
+     * @return The spatial index, safe to read from any thread
+     */
+    public SpatialIndex getSpatialIndex() {
+        return this.analysisCache.getSpatialIndex();
+    }
+    
+    /**
+     * Get the cached chunks by the entity types and materials they contain.
+     * 
+     * @return The type index, read without blocking the cache
+     */
+    public TypeIndex getTypeIndex() {
+        return this.analysisCache.getTypeIndex();
     }
     
     /**
@@ -187,47 +355,114 @@ public final class DataStorage {
      * @return List of lag scores from the specified time period
      */
     public List<LagScore> getAnalysisHistory(final int hours) {
-        if (!this.persistenceEnabled) {
-            return Collections.emptyList();
+        final long cutoffTime = System.currentTimeMillis() - (hours * 60 * 60 * 1000L);
+        final List<LagScore> history = new ArrayList<>();
+        try {
+            this.queryHistory(HistoryFilter.since(cutoffTime), history::add);
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to read analysis history", e);
         }
+        return history;
+    }
+    
+    /**
+     * Stream the history records selected by a filter without collecting them. The filter
+     * is evaluated by the history store. Blocks on disk I/O, so never call this from the main thread.
+     * 
+     * @param filter The filter
+     * @param consumer Receives each record
+     * @throws IOException If reading fails
+     */
+    public void queryHistory(final HistoryFilter filter, final Consumer<LagScore> consumer) throws IOException {
+        this.awaitReady();
+        if (!this.persistenceEnabled || this.historyStore == null) {
+            return;
+        }
+        final Consumer<LagScore> target = this.plugin.getConfigManager().isChangeOnlyHistory() && filter.fromMillis() > 0L
+            ? this.withRunStarts(filter, consumer) : consumer;
+        this.historyStore.query(filter, target);
         
-        final long cutoffTime = System.currentTimeMillis() - (hours * 60 * 60 * 1000L);
+        // Ends of runs still being extended are part of the history, they are only not stored yet
+        this.changeRecorder.pending(filter).forEach(target);
+    }
+    
+    /**
+     * With change-only history a chunk that did not change has no record in a window until its
+     * run ends, so its lag at the start of the window is the latest record before it. Precede the
+     * first record of each chunk in the window with that record. Runs are closed after the maximum
+     * run length, so the record is never further back than that.
+     */
+    private Consumer<LagScore> withRunStarts(final HistoryFilter filter, final Consumer<LagScore> consumer) throws IOException {
+        final HistoryFilter before = filter.between(
+            Math.max(0L, filter.fromMillis() - this.plugin.getConfigManager().getHistoryMaxRun()), filter.fromMillis() - 1L);
+        final Map<String, LongObjectHashMap<LagScore>> latest = new HashMap<>();
+        final Consumer<LagScore> keepLatest = score -> {
+            final LongObjectHashMap<LagScore> chunks = latest.computeIfAbsent(score.getWorldName(), name -> new LongObjectHashMap<>());
+            final long key = ChunkKeys.pack(score.getChunkX(), score.getChunkZ());
+            final LagScore previous = chunks.get(key);
+            if (previous == null || previous.getTimestamp() <= score.getTimestamp()) {
+                chunks.put(key, score);
+            }
+        };
+        this.historyStore.query(before, keepLatest);
+        this.changeRecorder.pending(before).forEach(keepLatest);
         
-        this.lock.readLock().lock();
-        try {
-            return this.analysisHistory.stream()
-                .filter(score -> score.getTimestamp() >= cutoffTime)
-                .collect(Collectors.toList());
-        } finally {
-            this.lock.readLock().unlock();
+        return score -> {
+            final LongObjectHashMap<LagScore> chunks = latest.get(score.getWorldName());
+            if (chunks != null) {
+                final LagScore start = chunks.remove(ChunkKeys.pack(score.getChunkX(), score.getChunkZ()));
+                if (start != null) {
+                    consumer.accept(start);
+                }
+            }
+            consumer.accept(score);
+        };
+    }
+    
+    /**
+     * Stream the rollups of a tier selected by a filter, including the buckets that are
+     * still open. Blocks on disk I/O, so never call this from the main thread.
+     * 
+     * @param tier The rollup tier
+     * @param filter The filter, matched against the start of each bucket
+     * @param consumer Receives each rollup
+     * @throws IOException If reading fails
+     */
+    public void queryRollups(final RollupTier tier, final HistoryFilter filter,
+                             final Consumer<Rollup> consumer) throws IOException {
+        this.awaitReady();
+        if (this.rollupStore == null) {
+            return;
         }
+        this.rollupStore.query(tier, filter, consumer);
     }
     
     /**
      * Clear the analysis cache.
      */
     public void clearCache() {
-        this.lock.writeLock().lock();
-        try {
-            final int size = this.analysisCache.size();
-            this.analysisCache.clear();
-            this.plugin.getLogger().info("Cleared analysis cache (" + size + " entries)");
-        } finally {
-            this.lock.writeLock().unlock();
-        }
+        final int size = this.analysisCache.size();
+        this.analysisCache.clear();
+        this.plugin.getLogger().info("Cleared analysis cache (" + size + " entries)");
     }
     
     /**
      * Clear the analysis history.
      */
     public void clearHistory() {
-        this.lock.writeLock().lock();
+        if (!this.historyLoaded || this.historyStore == null) {
+            return;
+        }
+        
         try {
-            final int size = this.analysisHistory.size();
-            this.analysisHistory.clear();
+            this.changeRecorder.clear();
+            final long size = this.historyStore.clear();
+            if (this.rollupStore != null) {
+                this.rollupStore.clear();
+            }
             this.plugin.getLogger().info("Cleared analysis history (" + size + " entries)");
-        } finally {
-            this.lock.writeLock().unlock();
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to delete history records", e);
         }
     }
     
@@ -245,69 +480,125 @@ public final class DataStorage {
      * @return Map containing cache statistics
      */
     public Map<String, Object> getCacheStats() {
-        this.lock.readLock().lock();
-        try {
-            final Map<String, Object> stats = new HashMap<>();
-            stats.put("cache_size", this.analysisCache.size());
-            stats.put("history_size", this.analysisHistory.size());
-            stats.put("persistence_enabled", this.persistenceEnabled);
-            stats.put("retention_days", this.retentionDays);
-            
-            // Calculate memory usage estimate
-            final long estimatedMemory = (this.analysisCache.size() + this.analysisHistory.size()) * 500L; // Rough estimate
-            stats.put("estimated_memory_bytes", estimatedMemory);
-            
-            return stats;
-        } finally {
-            this.lock.readLock().unlock();
+        final Map<String, Object> stats = new HashMap<>();
+        final HistoryStore store = this.historyStore;
+        stats.put("cache_size", this.analysisCache.size());
+        stats.put("cache_dirty_entries", this.analysisCache.getDirtyCount());
+        if (this.cacheSnapshot != null) {
+            stats.put("cache_snapshot_bytes", this.cacheSnapshot.getBaseBytes());
+            stats.put("cache_delta_bytes", this.cacheSnapshot.getDeltaBytes());
         }
+        stats.put("history_size", this.getHistorySize());
+        stats.put("history_disk_bytes", store != null ? store.getDiskSize() : 0L);
+        stats.put("persistence_enabled", this.persistenceEnabled);
+        stats.put("retention_days", this.retentionDays);
+        if (this.rollupStore != null) {
+            stats.put("rollup_open_buckets", this.rollupStore.getOpenBuckets());
+            stats.put("rollup_disk_bytes", this.rollupStore.getDiskSize());
+        }
+        stats.put("history_open_runs", this.changeRecorder.getOpenRuns());
+        stats.put("history_suppressed_records", this.changeRecorder.getSuppressedRecords());
+        
+        final ScoreCache.Stats cacheStats = this.analysisCache.getStats();
+        stats.put("cache_memory_bytes", cacheStats.weightedSize());
+        stats.put("cache_memory_limit_bytes", cacheStats.maximumWeight());
+        stats.put("cache_hits", cacheStats.hitCount());
+        stats.put("cache_misses", cacheStats.missCount());
+        stats.put("cache_evictions", cacheStats.evictionCount());
+        stats.put("cache_expirations", cacheStats.expirationCount());
+        stats.put("cache_refreshes", cacheStats.refreshCount());
+        stats.put("cache_hit_rate", cacheStats.hitRate());
+        
+        // History on the heap is only the records waiting for the writer
+        final int queueDepth = store != null ? store.getQueueDepth() : 0;
+        stats.put("estimated_memory_bytes", cacheStats.weightedSize() + queueDepth * QUEUED_RECORD_BYTES);
+        
+        // Write-behind backpressure
+        if (store != null) {
+            store.addStats(stats);
+        }
+        
+        return stats;
     }
     
     /**
-     * Export analysis data to a file.
+     * Start exporting the history selected by a filter. The export runs asynchronously,
+     * only one export can run at a time.
      * 
-     * @param format The export format ("json" or "csv")
-     * @param hours The number of hours of data to export
-     * @return The path to the exported file
-     * @throws IOException If export fails
+     * @param format The export format
+     * @param gzip Whether to gzip the file
+     * @param filter The filter
+     * @param progressListener Called from the export thread with the export as it progresses, may be null
+     * @return The running export
+     * @throws IOException If the export file cannot be created
+     * @throws IllegalStateException If persistence is disabled or another export is running
      */
-    public Path exportData(final String format, final int hours) throws IOException {
-        final List<LagScore> data = this.getAnalysisHistory(hours);
-        
-        if (data.isEmpty()) {
-            throw new IOException("No data available for export");
+    public synchronized HistoryExport startExport(final HistoryExport.Format format, final boolean gzip,
+                                                  final HistoryFilter filter,
+                                                  final Consumer<HistoryExport> progressListener) throws IOException {
+        if (!this.persistenceEnabled) {
+            throw new IllegalStateException("Data persistence is disabled");
+        }
+        if (!this.isReady() || this.historyStore == null) {
+            throw new IllegalStateException("The history is still loading, try again shortly");
+        }
+        if (this.activeExport != null && !this.activeExport.isDone()) {
+            throw new IllegalStateException("Another export is already running");
         }
         
         final String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-        final String filename = "tracer_export_" + timestamp + "." + format.toLowerCase();
+        final String filename = "tracer_export_" + timestamp + "." + format.getExtension() + (gzip ? ".gz" : "");
         final Path exportFile = this.dataDirectory.resolve("exports").resolve(filename);
         
         // Create exports directory if it doesn't exist
         Files.createDirectories(exportFile.getParent());
         
-        if ("json".equalsIgnoreCase(format)) {
-            this.exportToJson(data, exportFile);
-        } else if ("csv".equalsIgnoreCase(format)) {
-            this.exportToCsv(data, exportFile);
-        } else {
-            throw new IllegalArgumentException("Unsupported export format: " + format);
-        }
-        
-        this.plugin.getLogger().info("Exported " + data.size() + " records to: " + exportFile);
-        return exportFile;
+        final HistoryExport export = new HistoryExport(this::queryHistory, exportFile, format, gzip, filter, progressListener);
+        export.getResult().whenComplete((file, error) -> {
+            if (file != null) {
+                this.plugin.getLogger().info("Exported " + export.getExportedRecords() + " records to: " + file);
+            } else if (!export.isCancelled()) {
+                this.plugin.getLogger().warning("Export failed: " + error.getMessage());
+            }
+        });
+        this.activeExport = export;
+        Bukkit.getScheduler().runTaskAsynchronously(this.plugin, export::run);
+        return export;
+    }
+    
+    /**
+     * Get the running export.
+     * 
+     * @return The export, or null if none is running
+     */
+    public synchronized HistoryExport getActiveExport() {
+        return this.activeExport != null && !this.activeExport.isDone() ? this.activeExport : null;
     }
     
     /**
      * Save all data to disk.
      */
     public void saveAllData() {
+        this.saveAllData(true);
+    }
+    
+    /**
+     * Save all data to disk.
+     * 
+     * @param cleanup Whether to close idle runs and delete history past its retention, which needs an open history store
+     */
+    private void saveAllData(final boolean cleanup) {
         if (!this.persistenceEnabled) {
             return;
         }
         
         try {
+            // History is committed continuously by the history writer
             this.saveAnalysisCache();
-            this.saveAnalysisHistory();
+            if (cleanup && this.historyLoaded) {
+                this.closeIdleRuns(System.currentTimeMillis());
+                this.cleanupOldData();
+            }
             this.plugin.debugLog("Saved all data to disk");
         } catch (IOException e) {
             this.plugin.getLogger().log(Level.WARNING, "Failed to save data", e);
@@ -320,11 +611,20 @@ public final class DataStorage {
     public void reloadConfiguration() {
         this.loadConfiguration();
         
+        // Runs are only extended while change-only history is enabled
+        if (!this.plugin.getConfigManager().isChangeOnlyHistory()) {
+            this.closeIdleRuns(Long.MAX_VALUE);
+        }
+        
         // Restart auto-save if needed
         if (this.autoSaveTask != null) {
             this.autoSaveTask.cancel();
         }
         this.startAutoSave();
+        if (this.journalTask != null) {
+            this.journalTask.cancel();
+        }
+        this.startCacheJournal();
         
         this.plugin.debugLog("Reloaded data storage configuration");
     }
@@ -336,118 +636,359 @@ public final class DataStorage {
         if (this.autoSaveTask != null) {
             this.autoSaveTask.cancel();
         }
+        if (this.expiryTask != null) {
+            this.expiryTask.cancel();
+        }
+        if (this.journalTask != null) {
+            this.journalTask.cancel();
+        }
+        if (this.rollupTask != null) {
+            this.rollupTask.cancel();
+        }
+        if (this.activeExport != null) {
+            this.activeExport.cancel();
+        }
         
-        this.saveAllData();
+        // Loading finishes before anything is closed, a half-loaded cache must not be saved
+        try {
+            this.ready.get(SHUTDOWN_LOAD_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            this.plugin.getLogger().warning("Persisted data is still loading, shutting down without it");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+        }
+        
+        // Ends of open runs go to the writer before it commits its last batch
+        this.closeIdleRuns(Long.MAX_VALUE);
+        if (this.historyStore != null) {
+            this.historyStore.close();
+        }
+        
+        // Open buckets are written as they are, a restart continues them as a second part
+        this.flushRollups(Long.MAX_VALUE);
+        
+        // Fold the cache deltas into the base so the next start reads a single file
+        if (this.persistenceEnabled && this.cacheSnapshot != null) {
+            try {
+                this.cacheSnapshot.compact(this.analysisCache);
+            } catch (IOException e) {
+                this.plugin.getLogger().log(Level.WARNING, "Failed to compact the cache snapshot", e);
+            }
+        }
+        
+        // The history store is closed, old history is cleaned up on the next start
+        this.saveAllData(false);
         this.plugin.getLogger().info("Data storage shutdown complete");
     }
     
     // Private helper methods
     
-    private String generateCacheKey(final LagScore lagScore) {
-        return this.generateCacheKey(lagScore.getWorldName(), lagScore.getChunkX(), lagScore.getChunkZ());
-    }
-    
-    private String generateCacheKey(final String world, final int chunkX, final int chunkZ) {
-        return world + ":" + chunkX + ":" + chunkZ;
+    /**
+     * Load the cache snapshot. Runs off the main thread while the cache is already in use,
+     * so scores stored since startup take precedence over the loaded ones.
+     */
+    private void loadAnalysisCache() {
+        try {
+            // Scores stored while loading reach the snapshot with the first checkpoint
+            this.analysisCache.setTrackChanges(true);
+            final CacheSnapshot snapshot = new CacheSnapshot(this.dataDirectory, this.plugin.getLogger());
+            if (snapshot.exists()) {
+                // Replay base and deltas into plain maps, then restore only the chunks not cached yet
+                final Map<String, LongObjectHashMap<LagScore>> loaded = new HashMap<>();
+                final int records = snapshot.load(loaded);
+                int restored = 0;
+                for (LongObjectHashMap<LagScore> scores : loaded.values()) {
+                    restored += scores.size();
+                    scores.forEach((key, score) -> this.analysisCache.restore(score));
+                }
+                this.plugin.getLogger().info("Loaded " + restored + " cached analysis results (" + records + " snapshot records)");
+            } else {
+                this.migrateLegacyCache(snapshot);
+            }
+            
+            // Saving starts only now, an earlier save would replace the snapshot with part of it
+            this.cacheSnapshot = snapshot;
+        } catch (IOException e) {
+            this.analysisCache.setTrackChanges(false);
+            this.plugin.getLogger().log(Level.WARNING, "Failed to load the analysis cache, it will not be saved", e);
+        }
     }
     
-    private void loadAnalysisCache() throws IOException {
-        if (!Files.exists(this.cacheFile)) {
+    /**
+     * Move the scores of the old JSON cache file into the cache snapshot, once.
+     */
+    private void migrateLegacyCache(final CacheSnapshot snapshot) throws IOException {
+        if (!Files.exists(this.legacyCacheFile)) {
             return;
         }
         
-        try (final Reader reader = Files.newBufferedReader(this.cacheFile)) {
-            final Type type = new TypeToken<Map<String, LagScore>>(){}.getType();
-            final Map<String, LagScore> loadedCache = this.gson.fromJson(reader, type);
+        try (final Reader reader = Files.newBufferedReader(this.legacyCacheFile)) {
+            final Type type = new TypeToken<Map<String, LegacyScore>>(){}.getType();
+            final Map<String, LegacyScore> loadedCache = this.gson.fromJson(reader, type);
             
             if (loadedCache != null) {
-                this.analysisCache.putAll(loadedCache);
-                this.plugin.getLogger().info("Loaded " + loadedCache.size() + " cached analysis results");
+                for (LegacyScore score : loadedCache.values()) {
+                    this.analysisCache.restore(score.toScore());
+                }
+                this.plugin.getLogger().info("Migrated " + loadedCache.size() + " cached analysis results to the cache snapshot");
             }
+        } catch (JsonParseException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to read the old cache file, it was not migrated", e);
+            return;
         }
+        
+        snapshot.compact(this.analysisCache);
+        Files.move(this.legacyCacheFile, this.legacyCacheFile.resolveSibling("analysis_cache.json.migrated"),
+            StandardCopyOption.REPLACE_EXISTING);
     }
     
     private void saveAnalysisCache() throws IOException {
-        this.lock.readLock().lock();
-        try (final Writer writer = Files.newBufferedWriter(this.cacheFile)) {
-            this.gson.toJson(this.analysisCache, writer);
-        } finally {
-            this.lock.readLock().unlock();
+        final CacheSnapshot snapshot = this.cacheSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        
+        // Only the entries changed since the last save are written
+        final long written = snapshot.checkpoint(this.analysisCache);
+        if (written > 0) {
+            this.plugin.debugLog("Wrote " + written + " bytes of cache changes");
         }
     }
     
-    private void loadAnalysisHistory() throws IOException {
-        if (!Files.exists(this.historyFile)) {
-            return;
+    /**
+     * Journal the cache entries changed in the last few seconds, so a crash loses at most
+     * one journal interval of cache changes instead of one auto-save interval.
+     */
+    private void journalAnalysisCache() {
+        try {
+            this.saveAnalysisCache();
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to journal cache changes", e);
         }
+    }
+    
+    /**
+     * Open the history store selected by storage.type, falling back to the file store.
+     */
+    private HistoryStore openHistoryStore() throws IOException {
+        final long commitInterval = this.plugin.getConfigManager().getHistoryCommitInterval();
+        final int batchSize = this.plugin.getConfigManager().getHistoryCommitBatchSize();
         
-        try (final Reader reader = Files.newBufferedReader(this.historyFile)) {
-            final Type type = new TypeToken<List<LagScore>>(){}.getType();
-            final List<LagScore> loadedHistory = this.gson.fromJson(reader, type);
-            
-            if (loadedHistory != null) {
-                this.analysisHistory.addAll(loadedHistory);
-                this.plugin.getLogger().info("Loaded " + loadedHistory.size() + " historical analysis results");
+        if ("database".equalsIgnoreCase(this.plugin.getConfigManager().getStorageType())) {
+            try {
+                return new SqlHistoryStore(this.historyDatabaseFile, this.plugin.getLogger(),
+                    this.plugin.getConfigManager().getDatabasePoolSize(), commitInterval, batchSize);
+            } catch (IOException e) {
+                this.plugin.getLogger().log(Level.WARNING, "Failed to open the history database, using file storage", e);
             }
         }
+        return new FileHistoryStore(this.historyDirectory, this.plugin.getLogger(), commitInterval, batchSize);
     }
     
-    private void saveAnalysisHistory() throws IOException {
-        this.lock.readLock().lock();
-        try (final Writer writer = Files.newBufferedWriter(this.historyFile)) {
-            this.gson.toJson(this.analysisHistory, writer);
+    /**
+     * Open the history and rollup stores. Runs off the main thread, records stored
+     * meanwhile are handed over once the stores are open.
+     */
+    private void loadAnalysisHistory() {
+        try {
+            this.historyStore = this.openHistoryStore();
+            if (this.plugin.getConfigManager().isRollupsEnabled()) {
+                this.rollupStore = new RollupStore(this.rollupDirectory, this.plugin.getLogger());
+            }
+            
+            // History stays on disk, nothing is loaded onto the heap
+            this.migrateLegacyHistory();
+            this.cleanupOldData();
+            this.historyStore.start();
+            this.plugin.getLogger().info("Found " + this.historyStore.getRecordCount() + " historical analysis results");
+        } catch (IOException | RuntimeException e) {
+            this.plugin.getLogger().log(Level.SEVERE, "Failed to open the analysis history", e);
+            
+            // A store that was not started would queue records that are never saved
+            final HistoryStore store = this.historyStore;
+            this.historyStore = null;
+            if (store != null) {
+                store.close();
+            }
         } finally {
-            this.lock.readLock().unlock();
+            this.historyLoaded = true;
+            this.drainPendingHistory();
+        }
+    }
+    
+    private void storeHistory(final LagScore lagScore) {
+        final HistoryStore store = this.historyStore;
+        if (store != null) {
+            if (this.plugin.getConfigManager().isChangeOnlyHistory()) {
+                this.changeRecorder.record(lagScore, store::store);
+            } else {
+                store.store(lagScore);
+            }
+        }
+        final RollupStore rollups = this.rollupStore;
+        if (rollups != null) {
+            rollups.add(lagScore);
         }
     }
     
-    private void cleanupOldData() {
-        if (this.retentionDays <= 0) {
+    /**
+     * Hand the records stored while the history was loading to the history store.
+     */
+    private void drainPendingHistory() {
+        LagScore lagScore;
+        while ((lagScore = this.pendingHistory.poll()) != null) {
+            this.storeHistory(lagScore);
+        }
+    }
+    
+    /**
+     * Wait until the persisted data is loaded. Never call this from the main thread.
+     */
+    private void awaitReady() throws IOException {
+        try {
+            this.ready.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the history to load");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to load the history", e.getCause());
+        }
+    }
+    
+    /**
+     * Get the number of history records, saved or not.
+     * 
+     * @return The history size
+     */
+    private long getHistorySize() {
+        final HistoryStore store = this.historyStore;
+        if (store == null) {
+            return this.pendingHistory.size();
+        }
+        return this.pendingHistory.size() + store.getQueueDepth() + store.getRecordCount();
+    }
+    
+    /**
+     * Move the history of the old JSON file into the history store, once.
+     */
+    private void migrateLegacyHistory() throws IOException {
+        if (!Files.exists(this.legacyHistoryFile)) {
             return;
         }
         
-        final long cutoffTime = System.currentTimeMillis() - (this.retentionDays * 24 * 60 * 60 * 1000L);
+        try (final Reader reader = Files.newBufferedReader(this.legacyHistoryFile)) {
+            final Type type = new TypeToken<List<LegacyScore>>(){}.getType();
+            final List<LegacyScore> legacyRecords = this.gson.fromJson(reader, type);
+            if (legacyRecords != null) {
+                final List<LagScore> legacyHistory = new ArrayList<>(legacyRecords.size());
+                for (LegacyScore score : legacyRecords) {
+                    legacyHistory.add(score.toScore());
+                }
+                this.historyStore.importRecords(legacyHistory);
+                if (this.rollupStore != null) {
+                    legacyHistory.forEach(this.rollupStore::add);
+                }
+                this.plugin.getLogger().info("Migrated " + legacyHistory.size() + " history records to the history store");
+            }
+        } catch (JsonParseException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to read the old history file, it was not migrated", e);
+            return;
+        }
         
-        this.lock.writeLock().lock();
-        try {
-            final int sizeBefore = this.analysisHistory.size();
-            this.analysisHistory.removeIf(score -> score.getTimestamp() < cutoffTime);
-            final int sizeAfter = this.analysisHistory.size();
-            
-            if (sizeBefore > sizeAfter) {
-                this.plugin.getLogger().info("Cleaned up " + (sizeBefore - sizeAfter) + " old analysis records");
+        Files.move(this.legacyHistoryFile, this.legacyHistoryFile.resolveSibling("analysis_history.json.migrated"),
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private void cleanupOldData() throws IOException {
+        final long now = System.currentTimeMillis();
+        
+        if (this.historyStore != null && this.retentionDays > 0) {
+            final long deleted = this.historyStore.deleteBefore(now - (this.retentionDays * 24 * 60 * 60 * 1000L));
+            if (deleted > 0) {
+                this.plugin.getLogger().info("Cleaned up " + deleted + " old history records");
             }
-        } finally {
-            this.lock.writeLock().unlock();
+        }
+        
+        // Each rollup tier has its own retention window
+        if (this.rollupStore != null) {
+            for (RollupTier tier : RollupTier.values()) {
+                final int days = switch (tier) {
+                    case MINUTE -> this.plugin.getConfigManager().getMinuteRollupRetentionDays();
+                    case HOUR -> this.plugin.getConfigManager().getHourRollupRetentionDays();
+                    case DAY -> this.plugin.getConfigManager().getDayRollupRetentionDays();
+                };
+                if (days <= 0) {
+                    continue;
+                }
+                final long deleted = this.rollupStore.deleteBefore(tier, now - (days * 24 * 60 * 60 * 1000L));
+                if (deleted > 0) {
+                    this.plugin.debugLog("Cleaned up " + deleted + " old " + tier.name().toLowerCase(Locale.ROOT) + " rollups");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Record the ends of the runs of chunks that are no longer scanned.
+     * 
+     * @param now The current time in milliseconds, or {@link Long#MAX_VALUE} to close every run
+     */
+    private void closeIdleRuns(final long now) {
+        final HistoryStore store = this.historyStore;
+        if (store == null) {
+            return;
+        }
+        
+        final int closed = this.changeRecorder.closeIdle(now, store::store);
+        if (closed > 0) {
+            this.plugin.debugLog("Closed " + closed + " unchanged history runs");
         }
     }
     
-    private void exportToJson(final List<LagScore> data, final Path file) throws IOException {
-        try (final Writer writer = Files.newBufferedWriter(file)) {
-            this.gson.toJson(data, writer);
+    private void flushRollups(final long now) {
+        if (this.rollupStore == null) {
+            return;
+        }
+        
+        try {
+            final int written = this.rollupStore.flush(now);
+            if (written > 0) {
+                this.plugin.debugLog("Wrote " + written + " history rollups");
+            }
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to write history rollups", e);
         }
     }
     
-    private void exportToCsv(final List<LagScore> data, final Path file) throws IOException {
-        try (final PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
-            // Write CSV header
-            writer.println("timestamp,world,chunk_x,chunk_z,entities,tile_entities,redstone,lag_score,lag_level,tps");
-            
-            // Write data rows
-            for (final LagScore score : data) {
-                writer.printf("%d,%s,%d,%d,%d,%d,%d,%.2f,%s,%.2f%n",
-                    score.getTimestamp(),
-                    score.getWorldName(),
-                    score.getChunkX(),
-                    score.getChunkZ(),
-                    score.getEntityCount(),
-                    score.getTileEntityCount(),
-                    score.getRedstoneCount(),
-                    score.getOverallScore(),
-                    score.getLagLevel().name(),
-                    score.getCurrentTps()
-                );
+    /**
+     * A score as the old JSON cache and history files stored it, with the world by name
+     * and the lag level by enum name.
+     */
+    private static final class LegacyScore {
+        private String worldName;
+        private int chunkX;
+        private int chunkZ;
+        private long timestamp;
+        private int entityCount;
+        private int tileEntityCount;
+        private int redstoneCount;
+        private double overallScore;
+        private double currentTps;
+        private String lagLevel;
+        private String details;
+        
+        private LagScore toScore() {
+            LagLevel level;
+            try {
+                level = LagLevel.valueOf(this.lagLevel);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                level = LagLevel.fromScore(this.overallScore);
             }
+            return LagScore.restore(this.worldName, this.chunkX, this.chunkZ, this.timestamp, this.entityCount,
+                this.tileEntityCount, this.redstoneCount, this.overallScore, this.currentTps, level,
+                this.details, TypeCounts.EMPTY);
         }
     }
-}
\ No newline at end of file
+}
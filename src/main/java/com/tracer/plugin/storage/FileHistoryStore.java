@@ -0,0 +1,111 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * History store for {@code storage.type: file}, backed by a {@link HistoryLog}.
+ * 
+ * Time ranges are answered through the segment indexes, the world filter is applied
+ * while the records are read.
+ */
+final class FileHistoryStore implements HistoryStore {
+    
+    private final HistoryLog log;
+    private final HistoryWriter writer;
+    
+    // Hour that was last sealed, only touched by the writer thread
+    private long lastSealedSegment;
+    
+    FileHistoryStore(final Path directory, final Logger logger, final long commitIntervalMillis,
+                     final int batchSize) throws IOException {
+        this.log = new HistoryLog(directory, logger);
+        this.writer = new HistoryWriter(this::write, logger, commitIntervalMillis, batchSize);
+    }
+    
+    @Override
+    public void start() {
+        this.writer.start();
+    }
+    
+    @Override
+    public void importRecords(final Collection<LagScore> scores) throws IOException {
+        this.log.append(scores);
+    }
+    
+    @Override
+    public void store(final LagScore score) {
+        this.writer.enqueue(score);
+    }
+    
+    @Override
+    public void query(final HistoryFilter filter, final Consumer<LagScore> consumer) throws IOException {
+        final Consumer<LagScore> filtered = score -> {
+            if (filter.matches(score)) {
+                consumer.accept(score);
+            }
+        };
+        this.writer.read(() -> this.log.snapshot(filter.fromMillis(), filter.toMillis()), filtered);
+    }
+    
+    @Override
+    public long deleteBefore(final long cutoffMillis) throws IOException {
+        return this.log.deleteBefore(cutoffMillis);
+    }
+    
+    @Override
+    public long clear() throws IOException {
+        return this.writer.clear(this.log::clear);
+    }
+    
+    @Override
+    public long getRecordCount() {
+        return this.log.getRecordCount();
+    }
+    
+    @Override
+    public int getQueueDepth() {
+        return this.writer.getQueueDepth();
+    }
+    
+    @Override
+    public long getDiskSize() {
+        return this.log.getDiskSize();
+    }
+    
+    @Override
+    public void configure(final long commitIntervalMillis, final int batchSize) {
+        this.writer.configure(commitIntervalMillis, batchSize);
+    }
+    
+    @Override
+    public void addStats(final Map<String, Object> stats) {
+        stats.put("history_store", "file");
+        this.writer.addStats(stats);
+    }
+    
+    @Override
+    public void close() {
+        this.writer.shutdown();
+    }
+    
+    private void write(final List<LagScore> batch, final long now) throws IOException {
+        if (!batch.isEmpty()) {
+            this.log.append(batch);
+        }
+        
+        // Seal once per hour after it has passed, the first commit seals what passed while stopped
+        final long segment = HistoryLog.segmentStart(now);
+        if (segment != this.lastSealedSegment) {
+            this.log.seal(now);
+            this.lastSealedSegment = segment;
+        }
+    }
+}
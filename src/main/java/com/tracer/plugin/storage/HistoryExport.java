@@ -0,0 +1,342 @@
+package com.tracer.plugin.storage;
+
+import com.google.gson.stream.JsonWriter;
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One export of the analysis history to a JSON or CSV file.
+ * 
+ * Records are streamed from the history straight into the output, optionally gzip
+ * compressed, so an export holds one record at a time no matter how much history it covers.
+ * The file is written under a temporary name and only moved into place once it is complete.
+ * Exports run off the main thread, report their progress and can be cancelled at any record.
+ */
+public final class HistoryExport {
+    
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Source source;
+    private final Path file;
+    private final Format format;
+    private final boolean gzip;
+    private final HistoryFilter filter;
+    private final Consumer<HistoryExport> progressListener;
+    private final CompletableFuture<Path> result;
+    
+    private volatile boolean cancelled;
+    private volatile long exportedRecords;
+    private volatile double progress;
+    
+    HistoryExport(final Source source, final Path file, final Format format, final boolean gzip,
+                  final HistoryFilter filter, final Consumer<HistoryExport> progressListener) {
+        this.source = source;
+        this.file = file;
+        this.format = format;
+        this.gzip = gzip;
+        this.filter = filter;
+        this.progressListener = progressListener;
+        this.result = new CompletableFuture<>();
+    }
+    
+    /**
+     * Stop the export at the next record. The partial file is deleted.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+    
+    public boolean isDone() {
+        return this.result.isDone();
+    }
+    
+    /**
+     * Get how far the export got through its time range.
+     * 
+     * @return The progress, between 0 and 1
+     */
+    public double getProgress() {
+        return this.progress;
+    }
+    
+    public long getExportedRecords() {
+        return this.exportedRecords;
+    }
+    
+    public Path getFile() {
+        return this.file;
+    }
+    
+    /**
+     * Get the result of the export.
+     * 
+     * @return Completes with the exported file, or exceptionally if the export failed,
+     *         was cancelled or found no records
+     */
+    public CompletableFuture<Path> getResult() {
+        return this.result;
+    }
+    
+    /**
+     * Run the export on the calling thread, which must not be the main thread.
+     */
+    void run() {
+        final Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try {
+            this.export(temporary);
+            if (this.exportedRecords == 0) {
+                Files.deleteIfExists(temporary);
+                this.result.completeExceptionally(new IOException("No data available for export"));
+                return;
+            }
+            Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+            this.progress = 1.0;
+            this.result.complete(this.file);
+        } catch (CancellationException e) {
+            this.deleteQuietly(temporary);
+            this.result.cancel(false);
+        } catch (IOException e) {
+            this.deleteQuietly(temporary);
+            this.result.completeExceptionally(e);
+        } catch (UncheckedIOException e) {
+            this.deleteQuietly(temporary);
+            this.result.completeExceptionally(e.getCause());
+        }
+    }
+    
+    private void export(final Path temporary) throws IOException {
+        OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE);
+        if (this.gzip) {
+            output = new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+        
+        final long to = Math.min(this.filter.toMillis(), System.currentTimeMillis());
+        final long[] first = {Long.MIN_VALUE};
+        final long[] lastReport = {System.currentTimeMillis()};
+        
+        try (final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+             final RowWriter rows = this.format == Format.JSON ? new JsonRows(writer) : new CsvRows(writer)) {
+            this.source.query(this.filter, score -> {
+                if (this.cancelled) {
+                    throw new CancellationException();
+                }
+                try {
+                    rows.write(score);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.exportedRecords++;
+                
+                // Committed records arrive in timestamp order, so the timestamp measures progress
+                if (first[0] == Long.MIN_VALUE) {
+                    first[0] = score.getTimestamp();
+                }
+                if (to > first[0]) {
+                    this.progress = Math.min(1.0, Math.max(0.0, (double) (score.getTimestamp() - first[0]) / (to - first[0])));
+                }
+                
+                final long now = System.currentTimeMillis();
+                if (this.progressListener != null && now - lastReport[0] >= PROGRESS_INTERVAL_MILLIS) {
+                    lastReport[0] = now;
+                    this.progressListener.accept(this);
+                }
+            });
+            if (this.cancelled) {
+                throw new CancellationException();
+            }
+        }
+    }
+    
+    /**
+     * Where an export reads the history records from.
+     */
+    @FunctionalInterface
+    interface Source {
+        
+        /**
+         * Stream the records selected by a filter.
+         * 
+         * @param filter The filter
+         * @param consumer Receives each record
+         * @throws IOException If reading fails
+         */
+        void query(HistoryFilter filter, Consumer<LagScore> consumer) throws IOException;
+    }
+    
+    private void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Left for the next export to overwrite
+        }
+    }
+    
+    /**
+     * Output format of an export.
+     */
+    public enum Format {
+        JSON("json"),
+        CSV("csv");
+        
+        private final String extension;
+        
+        Format(final String extension) {
+            this.extension = extension;
+        }
+        
+        public String getExtension() {
+            return this.extension;
+        }
+    }
+    
+    /**
+     * Encoder of exported records. Closing it completes the document.
+     */
+    private interface RowWriter extends Closeable {
+        void write(LagScore score) throws IOException;
+    }
+    
+    /**
+     * Writes a JSON array of score objects with the field names of {@link LagScore}.
+     */
+    private static final class JsonRows implements RowWriter {
+        
+        private final JsonWriter json;
+        
+        private JsonRows(final Writer writer) throws IOException {
+            this.json = new JsonWriter(writer);
+            this.json.beginArray();
+        }
+        
+        @Override
+        public void write(final LagScore score) throws IOException {
+            this.json.beginObject();
+            this.json.name("worldName").value(score.getWorldName());
+            this.json.name("chunkX").value(score.getChunkX());
+            this.json.name("chunkZ").value(score.getChunkZ());
+            this.json.name("timestamp").value(score.getTimestamp());
+            this.json.name("entityCount").value(score.getEntityCount());
+            this.json.name("tileEntityCount").value(score.getTileEntityCount());
+            this.json.name("redstoneCount").value(score.getRedstoneCount());
+            this.json.name("overallScore").value(score.getOverallScore());
+            this.json.name("currentTps").value(score.getCurrentTps());
+            this.json.name("lagLevel").value(score.getLagLevel().name());
+            this.json.name("lagSources").beginArray();
+            for (String source : score.getLagSources()) {
+                this.json.value(source);
+            }
+            this.json.endArray();
+            this.json.endObject();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            this.json.endArray();
+            this.json.close();
+        }
+    }
+    
+    /**
+     * Writes CSV rows through one reused buffer instead of formatting each value.
+     */
+    private static final class CsvRows implements RowWriter {
+        
+        private static final String HEADER = "timestamp,world,chunk_x,chunk_z,entities,tile_entities,redstone,lag_score,lag_level,tps\n";
+        
+        private final Writer writer;
+        private final StringBuilder line;
+        
+        private CsvRows(final Writer writer) throws IOException {
+            this.writer = writer;
+            this.line = new StringBuilder(128);
+            writer.write(HEADER);
+        }
+        
+        @Override
+        public void write(final LagScore score) throws IOException {
+            final StringBuilder line = this.line;
+            line.setLength(0);
+            line.append(score.getTimestamp()).append(',');
+            appendText(line, score.getWorldName());
+            line.append(',').append(score.getChunkX());
+            line.append(',').append(score.getChunkZ());
+            line.append(',').append(score.getEntityCount());
+            line.append(',').append(score.getTileEntityCount());
+            line.append(',').append(score.getRedstoneCount());
+            line.append(',');
+            appendHundredths(line, score.getOverallScore());
+            line.append(',').append(score.getLagLevel().name());
+            line.append(',');
+            appendHundredths(line, score.getCurrentTps());
+            line.append('\n');
+            this.writer.append(line);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            this.writer.flush();
+        }
+        
+        /**
+         * Append a value rounded to two decimals.
+         */
+        private static void appendHundredths(final StringBuilder line, final double value) {
+            long hundredths = Math.round(value * 100.0);
+            if (hundredths < 0) {
+                line.append('-');
+                hundredths = -hundredths;
+            }
+            line.append(hundredths / 100).append('.');
+            final long fraction = hundredths % 100;
+            if (fraction < 10) {
+                line.append('0');
+            }
+            line.append(fraction);
+        }
+        
+        /**
+         * Append a text field, quoted if it contains a separator, quote or line break.
+         */
+        private static void appendText(final StringBuilder line, final String text) {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                final char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                line.append(text);
+                return;
+            }
+            
+            line.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+    }
+}
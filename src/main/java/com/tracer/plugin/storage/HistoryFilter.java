@@ -0,0 +1,121 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+
+/**
+ * Selection of history records, pushed down into the history store where it can be.
+ * 
+ * @param fromMillis The earliest timestamp, inclusive
+ * @param toMillis The latest timestamp, inclusive
+ * @param worldName The world to select, or null for all worlds
+ * @param minimumLevel The lowest lag level to select, or null for all levels
+ * @param bounds The chunk area to select, or null for all chunks
+ */
+public record HistoryFilter(long fromMillis, long toMillis, String worldName,
+                            LagLevel minimumLevel, ChunkBounds bounds) {
+    
+    /**
+     * Select every record since a point in time.
+     * 
+     * @param fromMillis The earliest timestamp
+     * @return The filter
+     */
+    public static HistoryFilter since(final long fromMillis) {
+        return new HistoryFilter(fromMillis, Long.MAX_VALUE, null, null, null);
+    }
+    
+    /**
+     * Narrow the filter to a time range.
+     * 
+     * @param fromMillis The earliest timestamp, inclusive
+     * @param toMillis The latest timestamp, inclusive
+     * @return The narrowed filter
+     */
+    public HistoryFilter between(final long fromMillis, final long toMillis) {
+        return new HistoryFilter(fromMillis, toMillis, this.worldName, this.minimumLevel, this.bounds);
+    }
+    
+    /**
+     * Narrow the filter to one world.
+     * 
+     * @param worldName The world name
+     * @return The narrowed filter
+     */
+    public HistoryFilter inWorld(final String worldName) {
+        return new HistoryFilter(this.fromMillis, this.toMillis, worldName, this.minimumLevel, this.bounds);
+    }
+    
+    /**
+     * Narrow the filter to records at or above a lag level.
+     * 
+     * @param minimumLevel The lowest lag level
+     * @return The narrowed filter
+     */
+    public HistoryFilter atLeast(final LagLevel minimumLevel) {
+        return new HistoryFilter(this.fromMillis, this.toMillis, this.worldName, minimumLevel, this.bounds);
+    }
+    
+    /**
+     * Narrow the filter to a chunk area.
+     * 
+     * @param bounds The chunk area
+     * @return The narrowed filter
+     */
+    public HistoryFilter within(final ChunkBounds bounds) {
+        return new HistoryFilter(this.fromMillis, this.toMillis, this.worldName, this.minimumLevel, bounds);
+    }
+    
+    /**
+     * Check a record against the filter.
+     * 
+     * @param score The record
+     * @return true if the record is selected
+     */
+    public boolean matches(final LagScore score) {
+        return score.getTimestamp() >= this.fromMillis && score.getTimestamp() <= this.toMillis
+            && (this.minimumLevel == null || score.getLagLevel().ordinal() >= this.minimumLevel.ordinal())
+            && this.matchesChunk(score.getWorldName(), score.getChunkX(), score.getChunkZ());
+    }
+    
+    /**
+     * Check a chunk against the world and area of the filter.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return true if the chunk is selected
+     */
+    public boolean matchesChunk(final String worldName, final int chunkX, final int chunkZ) {
+        return (this.worldName == null || this.worldName.equals(worldName))
+            && (this.bounds == null || this.bounds.contains(chunkX, chunkZ));
+    }
+    
+    /**
+     * Rectangle of chunks, inclusive on all sides.
+     * 
+     * @param minX The lowest chunk X coordinate
+     * @param minZ The lowest chunk Z coordinate
+     * @param maxX The highest chunk X coordinate
+     * @param maxZ The highest chunk Z coordinate
+     */
+    public record ChunkBounds(int minX, int minZ, int maxX, int maxZ) {
+        
+        /**
+         * Create the rectangle spanned by two corners in any order.
+         * 
+         * @param x1 The X coordinate of one corner
+         * @param z1 The Z coordinate of one corner
+         * @param x2 The X coordinate of the other corner
+         * @param z2 The Z coordinate of the other corner
+         * @return The rectangle
+         */
+        public static ChunkBounds of(final int x1, final int z1, final int x2, final int z2) {
+            return new ChunkBounds(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
+        }
+        
+        public boolean contains(final int chunkX, final int chunkZ) {
+            return chunkX >= this.minX && chunkX <= this.maxX && chunkZ >= this.minZ && chunkZ <= this.maxZ;
+        }
+    }
+}
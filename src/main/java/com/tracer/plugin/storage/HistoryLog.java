@@ -0,0 +1,781 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk store of the analysis history.
+ * 
+ * New records are appended to a row log with one segment file per hour of analysis time.
+ * Records have a fixed width of {@value #RECORD_SIZE} bytes and end with a CRC32 of their
+ * contents, so saving only writes the records added since the last save. Once an hour has
+ * passed, {@link #seal(long)} rewrites its log segment as a memory-mapped
+ * {@link ColumnarSegment} that answers time-range queries without loading the history onto
+ * the heap. Retention deletes whole segments. World names are stored once in a dictionary
+ * file and referenced by id.
+ * 
+ * The records of the log segments created since the log was opened are also kept in memory,
+ * in one bucket per minute of analysis time, so queries on the recent history read only the
+ * buckets of their time range instead of reading and checking the whole log segment. The
+ * buckets of a segment are dropped whole once it is sealed or deleted, or once the buckets
+ * outgrow {@value #MAX_BUFFERED_BYTES} bytes, after which the segment is read from disk again.
+ * 
+ * Record layout: timestamp (long), world id, chunk X, chunk Z, entities, tile entities,
+ * redstone (ints), score, TPS (doubles), lag level (byte), 3 bytes padding, CRC32 (int).
+ */
+public final class HistoryLog {
+    
+    static final int RECORD_SIZE = 56;
+    static final long SEGMENT_SPAN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final long BUCKET_SPAN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKED_SIZE = RECORD_SIZE - 4;
+    private static final int MAGIC = 0x54524C47; // "TRLG"
+    private static final short VERSION = 1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SEALING_SUFFIX = ".log.sealing";
+    private static final int READ_BATCH_RECORDS = 1024;
+    private static final long MAX_BUFFERED_BYTES = 32L * 1024L * 1024L;
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    
+    private final Path directory;
+    private final Logger logger;
+    
+    // World dictionary, ids are line numbers of the dictionary file
+    private final WorldDictionary worlds;
+    
+    // Sealed segments by start time, mapped for the lifetime of the log
+    private final TreeMap<Long, ColumnarSegment> sealedSegments;
+    
+    // Totals over all segments, updated with every change so they can be read without the lock
+    private final AtomicLong recordCount;
+    private final AtomicLong diskSize;
+    
+    // Records of the buffered log segments by minute, and the segments that are buffered in full
+    private final TreeMap<Long, MinuteBucket> buckets;
+    private final TreeSet<Long> bufferedSegments;
+    private long bufferedBytes;
+    
+    private final CRC32 crc;
+    
+    public HistoryLog(final Path directory, final Logger logger) throws IOException {
+        this.directory = directory;
+        this.logger = logger;
+        this.sealedSegments = new TreeMap<>();
+        this.recordCount = new AtomicLong();
+        this.diskSize = new AtomicLong();
+        this.buckets = new TreeMap<>();
+        this.bufferedSegments = new TreeSet<>();
+        this.crc = new CRC32();
+        
+        Files.createDirectories(directory);
+        this.worlds = new WorldDictionary(directory.resolve("worlds.dat"));
+        this.recoverInterruptedSeals();
+        this.recoverLogSegments();
+        this.openSealedSegments();
+        this.countSegments();
+    }
+    
+    /**
+     * Append scores to the log. Each score goes to the log segment of its timestamp.
+     * The append is all or nothing: if writing fails, every segment it touched is cut
+     * back to its previous size, so retrying the same scores never stores them twice.
+     * 
+     * @param scores The scores to append
+     * @throws IOException If writing fails
+     */
+    public synchronized void append(final Collection<LagScore> scores) throws IOException {
+        if (scores.isEmpty()) {
+            return;
+        }
+        
+        // Group by segment, history is mostly in time order so this is usually one or two groups
+        final Map<Long, List<LagScore>> bySegment = new TreeMap<>();
+        for (LagScore score : scores) {
+            bySegment.computeIfAbsent(segmentStart(score.getTimestamp()), start -> new ArrayList<>()).add(score);
+        }
+        
+        // Size of each touched segment before the append
+        final Map<Path, Long> previousSizes = new HashMap<>();
+        long appendedBytes = 0;
+        try {
+            for (Map.Entry<Long, List<LagScore>> entry : bySegment.entrySet()) {
+                final List<LagScore> segmentScores = entry.getValue();
+                final ByteBuffer buffer = ByteBuffer.allocate(segmentScores.size() * RECORD_SIZE);
+                for (LagScore score : segmentScores) {
+                    this.writeRecord(buffer, score);
+                }
+                buffer.flip();
+                
+                final Path segment = this.logPath(entry.getKey());
+                boolean created = false;
+                try (final FileChannel channel = FileChannel.open(segment,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    previousSizes.put(segment, channel.size());
+                    if (channel.size() == 0) {
+                        channel.write(this.header(entry.getKey()));
+                        appendedBytes += HEADER_SIZE;
+                        created = true;
+                    }
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                    appendedBytes += buffer.capacity();
+                }
+                
+                // Segments written from their first record on are buffered in full
+                if (created) {
+                    this.bufferedSegments.add(entry.getKey());
+                }
+                if (this.bufferedSegments.contains(entry.getKey())) {
+                    this.buffer(buffer.array(), segmentScores);
+                }
+            }
+        } catch (IOException e) {
+            this.rollBack(previousSizes, e);
+            
+            // The buckets may hold records that were rolled back, or miss a part that could not be
+            for (Long segmentStart : bySegment.keySet()) {
+                this.dropBuffered(segmentStart);
+            }
+            throw e;
+        }
+        this.recordCount.addAndGet(scores.size());
+        this.diskSize.addAndGet(appendedBytes);
+        
+        // Fall back to reading the oldest segments from disk rather than holding too much history
+        while (this.bufferedBytes > MAX_BUFFERED_BYTES && !this.bufferedSegments.isEmpty()) {
+            this.dropBuffered(this.bufferedSegments.first());
+        }
+    }
+    
+    /**
+     * Cut segments back to their size before a failed append, so no part of it stays behind.
+     * A torn record would misalign every record appended after it.
+     * 
+     * @param previousSizes The size of each touched segment before the append
+     * @param cause The failure, receives the failures of the rollback as suppressed exceptions
+     */
+    private void rollBack(final Map<Path, Long> previousSizes, final IOException cause) {
+        for (Map.Entry<Path, Long> entry : previousSizes.entrySet()) {
+            try {
+                if (entry.getValue() == 0L) {
+                    Files.deleteIfExists(entry.getKey());
+                    continue;
+                }
+                try (final FileChannel channel = FileChannel.open(entry.getKey(), StandardOpenOption.WRITE)) {
+                    channel.truncate(entry.getValue());
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+                this.logger.warning("Failed to roll back a partial append to " + entry.getKey().getFileName());
+            }
+        }
+    }
+    
+    /**
+     * Rewrite the log segments of every hour that has passed as sealed columnar segments.
+     * Records that arrive late for a sealed hour are merged into its sealed segment.
+     * 
+     * @param now The current time in milliseconds
+     * @return The number of sealed segments
+     * @throws IOException If reading or writing fails
+     */
+    public synchronized int seal(final long now) throws IOException {
+        int sealed = 0;
+        for (Map.Entry<Long, Path> entry : this.listFiles(LOG_SUFFIX).entrySet()) {
+            final long segmentStart = entry.getKey();
+            if (segmentStart + SEGMENT_SPAN_MILLIS > now) {
+                break;
+            }
+            
+            final List<LagScore> rows = new ArrayList<>();
+            final ColumnarSegment existing = this.sealedSegments.get(segmentStart);
+            if (existing != null) {
+                this.readSealedSegment(existing, Long.MIN_VALUE, Long.MAX_VALUE, rows::add);
+            }
+            final List<ByteBuffer> buffered = this.pinBuffered(segmentStart, Long.MIN_VALUE, Long.MAX_VALUE);
+            if (buffered != null) {
+                this.readBuffered(buffered, Long.MIN_VALUE, Long.MAX_VALUE, rows::add);
+            } else {
+                try (final FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                    this.readLogSegment(entry.getValue(), channel, channel.size(), this.crc,
+                        Long.MIN_VALUE, Long.MAX_VALUE, rows::add);
+                }
+            }
+            rows.sort(Comparator.comparingLong(LagScore::getTimestamp));
+            
+            final int[] rowWorldIds = new int[rows.size()];
+            for (int i = 0; i < rowWorldIds.length; i++) {
+                rowWorldIds[i] = this.worlds.id(rows.get(i).getWorldName());
+            }
+            
+            final long logSize = Files.size(entry.getValue());
+            final Path sealedPath = this.sealedPath(segmentStart);
+            final Path temporary = AtomicFiles.temporary(sealedPath);
+            final Path sealing = this.directory.resolve(SEGMENT_PREFIX + segmentStart + SEALING_SUFFIX);
+            ColumnarSegment.write(temporary, segmentStart, rows, rowWorldIds);
+            
+            // The renamed log journals the seal, so a crash can neither lose nor merge it twice
+            Files.move(entry.getValue(), sealing, StandardCopyOption.ATOMIC_MOVE);
+            AtomicFiles.replace(temporary, sealedPath);
+            final ColumnarSegment segment = ColumnarSegment.open(sealedPath);
+            this.sealedSegments.put(segmentStart, segment);
+            this.dropBuffered(segmentStart);
+            Files.delete(sealing);
+            sealed++;
+            
+            // Records that failed their checksum are not carried over
+            this.recordCount.addAndGet(rows.size() - (existing != null ? existing.getRowCount() : 0) - logRecords(logSize));
+            this.diskSize.addAndGet(segment.getSize() - (existing != null ? existing.getSize() : 0) - logSize);
+        }
+        return sealed;
+    }
+    
+    /**
+     * Pin the segments of a time range as they are now, so their records can be read without
+     * holding the log. Sealed segments stay mapped, log segments stay open and buffered log
+     * segments keep their minute buckets even if they are sealed or deleted in the meantime,
+     * and records appended later are not read.
+     * 
+     * @param fromMillis The earliest timestamp to read
+     * @param toMillis The latest timestamp to read
+     * @return The pinned segments, which must be closed
+     * @throws IOException If a log segment cannot be opened
+     */
+    public synchronized Snapshot snapshot(final long fromMillis, final long toMillis) throws IOException {
+        final Snapshot snapshot = new Snapshot(fromMillis, toMillis);
+        if (toMillis < fromMillis) {
+            return snapshot;
+        }
+        
+        final TreeMap<Long, Path> logSegments = this.listFiles(LOG_SUFFIX);
+        final TreeSet<Long> starts = new TreeSet<>(this.sealedSegments.keySet());
+        starts.addAll(logSegments.keySet());
+        
+        try {
+            for (long segmentStart : starts.subSet(segmentStart(fromMillis), true, toMillis, true)) {
+                final Path log = logSegments.get(segmentStart);
+                final List<ByteBuffer> buffered = log != null ? this.pinBuffered(segmentStart, fromMillis, toMillis) : null;
+                final FileChannel channel = log != null && buffered == null ? FileChannel.open(log, StandardOpenOption.READ) : null;
+                snapshot.segments.add(new PinnedSegment(this.sealedSegments.get(segmentStart), log, channel,
+                    channel != null ? channel.size() : 0L, buffered));
+            }
+        } catch (IOException e) {
+            snapshot.close();
+            throw e;
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Delete every segment that only holds records older than the cutoff.
+     * 
+     * @param cutoffMillis The retention cutoff
+     * @return The number of deleted records
+     * @throws IOException If deleting fails
+     */
+    public synchronized long deleteBefore(final long cutoffMillis) throws IOException {
+        long deleted = 0;
+        
+        final Iterator<Map.Entry<Long, ColumnarSegment>> sealedIterator = this.sealedSegments.entrySet().iterator();
+        while (sealedIterator.hasNext()) {
+            final Map.Entry<Long, ColumnarSegment> entry = sealedIterator.next();
+            if (entry.getKey() + SEGMENT_SPAN_MILLIS > cutoffMillis) {
+                break;
+            }
+            sealedIterator.remove();
+            Files.deleteIfExists(entry.getValue().getPath());
+            this.recordCount.addAndGet(-entry.getValue().getRowCount());
+            this.diskSize.addAndGet(-entry.getValue().getSize());
+            deleted += entry.getValue().getRowCount();
+        }
+        
+        for (Map.Entry<Long, Path> entry : this.listFiles(LOG_SUFFIX).entrySet()) {
+            if (entry.getKey() + SEGMENT_SPAN_MILLIS > cutoffMillis) {
+                break;
+            }
+            final long logSize = Files.size(entry.getValue());
+            Files.deleteIfExists(entry.getValue());
+            this.dropBuffered(entry.getKey());
+            this.recordCount.addAndGet(-logRecords(logSize));
+            this.diskSize.addAndGet(-logSize);
+            deleted += logRecords(logSize);
+        }
+        return deleted;
+    }
+    
+    /**
+     * Delete all segments.
+     * 
+     * @return The number of deleted records
+     * @throws IOException If deleting fails
+     */
+    public synchronized long clear() throws IOException {
+        return this.deleteBefore(Long.MAX_VALUE - SEGMENT_SPAN_MILLIS);
+    }
+    
+    /**
+     * Get the number of stored records. Never waits for appends, seals or deletions.
+     * 
+     * @return The record count
+     */
+    public long getRecordCount() {
+        return this.recordCount.get();
+    }
+    
+    /**
+     * Get the total size of all segments. Never waits for appends, seals or deletions.
+     * 
+     * @return The size in bytes
+     */
+    public long getDiskSize() {
+        return this.diskSize.get();
+    }
+    
+    static long segmentStart(final long timestamp) {
+        return Math.floorDiv(timestamp, SEGMENT_SPAN_MILLIS) * SEGMENT_SPAN_MILLIS;
+    }
+    
+    private static long logRecords(final long logSize) {
+        return Math.max(0L, (logSize - HEADER_SIZE) / RECORD_SIZE);
+    }
+    
+    /**
+     * Count the records and bytes of the segments found when the log is opened.
+     */
+    private void countSegments() throws IOException {
+        long count = 0;
+        long size = 0;
+        for (ColumnarSegment segment : this.sealedSegments.values()) {
+            count += segment.getRowCount();
+            size += segment.getSize();
+        }
+        for (Path segment : this.listFiles(LOG_SUFFIX).values()) {
+            final long logSize = Files.size(segment);
+            count += logRecords(logSize);
+            size += logSize;
+        }
+        this.recordCount.set(count);
+        this.diskSize.set(size);
+    }
+    
+    private Path logPath(final long segmentStart) {
+        return this.directory.resolve(SEGMENT_PREFIX + segmentStart + LOG_SUFFIX);
+    }
+    
+    private Path sealedPath(final long segmentStart) {
+        return this.directory.resolve(SEGMENT_PREFIX + segmentStart + ColumnarSegment.SUFFIX);
+    }
+    
+    /**
+     * List the segment files with a suffix by start time.
+     */
+    private TreeMap<Long, Path> listFiles(final String suffix) throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + suffix)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length())), path);
+                } catch (NumberFormatException e) {
+                    this.logger.warning("Ignoring unexpected history file: " + name);
+                }
+            }
+        }
+        return segments;
+    }
+    
+    /**
+     * Finish or undo the seals a crash cut short. A seal writes the sealed segment to a
+     * temporary file, renames the log segment to mark the seal as started, moves the sealed
+     * segment into place and only then deletes the renamed log.
+     */
+    private void recoverInterruptedSeals() throws IOException {
+        for (Map.Entry<Long, Path> entry : this.listFiles(SEALING_SUFFIX).entrySet()) {
+            final Path temporary = AtomicFiles.temporary(this.sealedPath(entry.getKey()));
+            if (Files.exists(temporary)) {
+                // The sealed segment was not replaced, the log still holds the only copy of its records
+                Files.move(entry.getValue(), this.logPath(entry.getKey()), StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(temporary);
+                this.logger.warning("Rolled back an interrupted seal of " + entry.getValue().getFileName());
+            } else {
+                Files.delete(entry.getValue());
+            }
+        }
+        
+        // Seals that crashed before the log was renamed only left their temporary file
+        for (Path temporary : this.listFiles(ColumnarSegment.SUFFIX + ".tmp").values()) {
+            Files.delete(temporary);
+        }
+    }
+    
+    /**
+     * Cut torn records off the end of log segments left by a crash, so appends stay aligned.
+     */
+    private void recoverLogSegments() throws IOException {
+        for (Path segment : this.listFiles(LOG_SUFFIX).values()) {
+            final long size = Files.size(segment);
+            if (size < HEADER_SIZE) {
+                Files.delete(segment);
+                continue;
+            }
+            
+            final long torn = (size - HEADER_SIZE) % RECORD_SIZE;
+            if (torn != 0) {
+                try (final FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(size - torn);
+                }
+                this.logger.warning("Truncated torn record at the end of " + segment.getFileName());
+            }
+        }
+    }
+    
+    /**
+     * Map the sealed segments, skipping any that fail verification.
+     */
+    private void openSealedSegments() throws IOException {
+        // Opening verifies the checksum of the whole segment, so segments are opened in parallel
+        final Map<Long, ColumnarSegment> opened = new ConcurrentHashMap<>();
+        this.listFiles(ColumnarSegment.SUFFIX).entrySet().parallelStream().forEach(entry -> {
+            try {
+                opened.put(entry.getKey(), ColumnarSegment.open(entry.getValue()));
+            } catch (IOException e) {
+                this.logger.warning("Skipping unreadable history segment: " + e.getMessage());
+            }
+        });
+        this.sealedSegments.putAll(opened);
+    }
+    
+    /**
+     * Pin the minute buckets of a buffered log segment that overlap a time range. Buckets only
+     * ever append to their records or replace them with a grown copy, so the pinned records
+     * can be read without holding the log.
+     * 
+     * @return The records of the overlapping buckets, or null if the segment is not buffered
+     */
+    private List<ByteBuffer> pinBuffered(final long segmentStart, final long fromMillis, final long toMillis) {
+        if (!this.bufferedSegments.contains(segmentStart)) {
+            return null;
+        }
+        
+        final List<ByteBuffer> pinned = new ArrayList<>();
+        final long from = Math.max(fromMillis, segmentStart);
+        final long to = Math.min(toMillis, segmentStart + SEGMENT_SPAN_MILLIS - 1);
+        if (to >= from) {
+            for (MinuteBucket bucket : this.buckets.subMap(bucketStart(from), true, to, true).values()) {
+                pinned.add(ByteBuffer.wrap(bucket.records, 0, bucket.size));
+            }
+        }
+        return pinned;
+    }
+    
+    /**
+     * Read the records of pinned minute buckets in a time range.
+     */
+    private int readBuffered(final List<ByteBuffer> buffered, final long fromMillis, final long toMillis,
+                             final Consumer<LagScore> consumer) {
+        int count = 0;
+        for (ByteBuffer records : buffered) {
+            while (records.hasRemaining()) {
+                final LagScore score = this.readRecord(records);
+                if (score != null && score.getTimestamp() >= fromMillis && score.getTimestamp() <= toMillis) {
+                    consumer.accept(score);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Copy appended records into the buckets of their minutes.
+     * 
+     * @param records The encoded records, in the order of the scores
+     * @param scores The appended scores
+     */
+    private void buffer(final byte[] records, final List<LagScore> scores) {
+        for (int i = 0; i < scores.size(); i++) {
+            this.buckets.computeIfAbsent(bucketStart(scores.get(i).getTimestamp()), start -> new MinuteBucket())
+                .add(records, i * RECORD_SIZE);
+        }
+        this.bufferedBytes += (long) scores.size() * RECORD_SIZE;
+    }
+    
+    /**
+     * Drop the minute buckets of a log segment, its records are read from disk from now on.
+     */
+    private void dropBuffered(final long segmentStart) {
+        if (!this.bufferedSegments.remove(segmentStart)) {
+            return;
+        }
+        
+        final Map<Long, MinuteBucket> segmentBuckets = this.buckets.subMap(segmentStart, segmentStart + SEGMENT_SPAN_MILLIS);
+        for (MinuteBucket bucket : segmentBuckets.values()) {
+            this.bufferedBytes -= bucket.size;
+        }
+        segmentBuckets.clear();
+    }
+    
+    private static long bucketStart(final long timestamp) {
+        return Math.floorDiv(timestamp, BUCKET_SPAN_MILLIS) * BUCKET_SPAN_MILLIS;
+    }
+    
+    private int readSealedSegment(final ColumnarSegment segment, final long fromMillis, final long toMillis,
+                                  final Consumer<LagScore> consumer) {
+        int count = 0;
+        final int rows = segment.getRowCount();
+        for (int row = segment.firstRowAtOrAfter(fromMillis); row < rows; row++) {
+            final long timestamp = segment.timestamp(row);
+            if (timestamp > toMillis) {
+                break;
+            }
+            
+            final String worldName = this.worlds.name(segment.worldId(row));
+            final int level = segment.level(row);
+            if (worldName == null || level < 0 || level >= LEVELS.length) {
+                continue;
+            }
+            consumer.accept(LagScore.restore(worldName, segment.chunkX(row), segment.chunkZ(row),
+                timestamp, segment.entityCount(row), segment.tileEntityCount(row), segment.redstoneCount(row),
+                segment.score(row), segment.tps(row), LEVELS[level]));
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Read the records of an open log segment up to a size, records appended beyond it are skipped.
+     * The checksum is passed in, so segments can be read without holding the log.
+     */
+    private int readLogSegment(final Path segment, final FileChannel channel, final long size, final CRC32 crc,
+                               final long fromMillis, final long toMillis, final Consumer<LagScore> consumer) throws IOException {
+        if (!this.checkHeader(channel, segment)) {
+            return 0;
+        }
+        
+        int count = 0;
+        int corrupt = 0;
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH_RECORDS * RECORD_SIZE);
+        long remaining = (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // Fill the batch
+            }
+            buffer.flip();
+            if (buffer.remaining() < RECORD_SIZE) {
+                // Truncated while reading
+                break;
+            }
+            remaining -= buffer.remaining();
+            
+            while (buffer.remaining() >= RECORD_SIZE) {
+                final int offset = buffer.position();
+                if (!this.checkRecord(crc, buffer, offset)) {
+                    corrupt++;
+                    buffer.position(offset + RECORD_SIZE);
+                    continue;
+                }
+                
+                final LagScore score = this.readRecord(buffer);
+                if (score != null && score.getTimestamp() >= fromMillis && score.getTimestamp() <= toMillis) {
+                    consumer.accept(score);
+                    count++;
+                }
+            }
+        }
+        
+        if (corrupt > 0) {
+            this.logger.warning("Skipped " + corrupt + " corrupt records in " + segment.getFileName());
+        }
+        return count;
+    }
+    
+    private ByteBuffer header(final long segmentStart) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) RECORD_SIZE);
+        header.putLong(segmentStart);
+        header.flip();
+        return header;
+    }
+    
+    private boolean checkHeader(final FileChannel channel, final Path segment) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) > 0) {
+            // Read the full header
+        }
+        header.flip();
+        
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+            || header.getShort() != VERSION || header.getShort() != RECORD_SIZE) {
+            this.logger.warning("Skipping history segment with an invalid header: " + segment.getFileName());
+            return false;
+        }
+        return true;
+    }
+    
+    private void writeRecord(final ByteBuffer buffer, final LagScore score) throws IOException {
+        final int offset = buffer.position();
+        buffer.putLong(score.getTimestamp());
+        buffer.putInt(this.worlds.id(score.getWorldName()));
+        buffer.putInt(score.getChunkX());
+        buffer.putInt(score.getChunkZ());
+        buffer.putInt(score.getEntityCount());
+        buffer.putInt(score.getTileEntityCount());
+        buffer.putInt(score.getRedstoneCount());
+        buffer.putDouble(score.getOverallScore());
+        buffer.putDouble(score.getCurrentTps());
+        buffer.put((byte) score.getLagLevel().ordinal());
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+        
+        this.crc.reset();
+        this.crc.update(buffer.array(), offset, CHECKED_SIZE);
+        buffer.putInt((int) this.crc.getValue());
+    }
+    
+    private boolean checkRecord(final CRC32 crc, final ByteBuffer buffer, final int offset) {
+        crc.reset();
+        crc.update(buffer.array(), offset, CHECKED_SIZE);
+        return buffer.getInt(offset + CHECKED_SIZE) == (int) crc.getValue();
+    }
+    
+    /**
+     * Read the record at the buffer position and advance past it.
+     * 
+     * @return The restored score, or null if it references an unknown world or level
+     */
+    private LagScore readRecord(final ByteBuffer buffer) {
+        final long timestamp = buffer.getLong();
+        final int worldId = buffer.getInt();
+        final int chunkX = buffer.getInt();
+        final int chunkZ = buffer.getInt();
+        final int entities = buffer.getInt();
+        final int tileEntities = buffer.getInt();
+        final int redstone = buffer.getInt();
+        final double score = buffer.getDouble();
+        final double tps = buffer.getDouble();
+        final int level = buffer.get();
+        buffer.position(buffer.position() + 3 + 4);
+        
+        final String worldName = this.worlds.name(worldId);
+        if (worldName == null || level < 0 || level >= LEVELS.length) {
+            return null;
+        }
+        return LagScore.restore(worldName, chunkX, chunkZ, timestamp,
+            entities, tileEntities, redstone, score, tps, LEVELS[level]);
+    }
+    
+    /**
+     * A segment pinned by a snapshot, sealed, still in the row log or both.
+     * 
+     * @param sealed The sealed segment, or null
+     * @param log The log segment file, or null
+     * @param channel The open log segment, or null if there is none or it is buffered
+     * @param size The size of the log segment when it was pinned
+     * @param buffered The pinned minute buckets of a buffered log segment, or null
+     */
+    private record PinnedSegment(ColumnarSegment sealed, Path log, FileChannel channel, long size,
+                                 List<ByteBuffer> buffered) {
+    }
+    
+    /**
+     * Segments of a time range pinned by {@link #snapshot(long, long)}.
+     * 
+     * Reading takes no lock, so appends, seals and retention go on meanwhile. Sealed segments
+     * are searched through their timestamp index, records in the row log that fail their
+     * checksum are skipped.
+     */
+    public final class Snapshot implements HistoryWriter.CommittedRead {
+        
+        private final long fromMillis;
+        private final long toMillis;
+        private final List<PinnedSegment> segments;
+        private final CRC32 readCrc;
+        
+        private Snapshot(final long fromMillis, final long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.segments = new ArrayList<>();
+            this.readCrc = new CRC32();
+        }
+        
+        /**
+         * Read the pinned records, oldest segment first.
+         * 
+         * @param consumer Receives each restored score
+         * @throws IOException If reading fails
+         */
+        @Override
+        public void read(final Consumer<LagScore> consumer) throws IOException {
+            for (PinnedSegment segment : this.segments) {
+                if (segment.sealed() != null) {
+                    HistoryLog.this.readSealedSegment(segment.sealed(), this.fromMillis, this.toMillis, consumer);
+                }
+                if (segment.buffered() != null) {
+                    HistoryLog.this.readBuffered(segment.buffered(), this.fromMillis, this.toMillis, consumer);
+                } else if (segment.channel() != null) {
+                    HistoryLog.this.readLogSegment(segment.log(), segment.channel(), segment.size(), this.readCrc,
+                        this.fromMillis, this.toMillis, consumer);
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            for (PinnedSegment segment : this.segments) {
+                if (segment.channel() != null) {
+                    segment.channel().close();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Encoded records of one minute, in the layout of the log.
+     */
+    private static final class MinuteBucket {
+        private byte[] records = new byte[16 * RECORD_SIZE];
+        private int size;
+        
+        private void add(final byte[] source, final int offset) {
+            if (this.size == this.records.length) {
+                this.records = Arrays.copyOf(this.records, this.records.length * 2);
+            }
+            System.arraycopy(source, offset, this.records, this.size, RECORD_SIZE);
+            this.size += RECORD_SIZE;
+        }
+    }
+}
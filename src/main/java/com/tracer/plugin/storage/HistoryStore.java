@@ -0,0 +1,105 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Persistent store of the analysis history, selected by {@code storage.type}.
+ * 
+ * New records go through a {@link HistoryWriter}, so {@link #store(LagScore)} never waits
+ * for disk I/O. Reads see committed and not yet committed records alike. All other calls
+ * may block on I/O and must not be made from the main thread.
+ */
+interface HistoryStore {
+    
+    /**
+     * Start committing stored records.
+     */
+    void start();
+    
+    /**
+     * Import records synchronously, before {@link #start()}.
+     * 
+     * @param scores The records
+     * @throws IOException If writing fails
+     */
+    void importRecords(Collection<LagScore> scores) throws IOException;
+    
+    /**
+     * Queue a record for the next commit. Never blocks.
+     * 
+     * @param score The record
+     */
+    void store(LagScore score);
+    
+    /**
+     * Stream the records selected by a filter, committed records in timestamp order first.
+     * 
+     * @param filter The filter
+     * @param consumer Receives each record
+     * @throws IOException If reading fails
+     */
+    void query(HistoryFilter filter, Consumer<LagScore> consumer) throws IOException;
+    
+    /**
+     * Delete the committed records older than the cutoff.
+     * 
+     * @param cutoffMillis The retention cutoff
+     * @return The number of deleted records
+     * @throws IOException If deleting fails
+     */
+    long deleteBefore(long cutoffMillis) throws IOException;
+    
+    /**
+     * Delete all records, committed or not.
+     * 
+     * @return The number of deleted records
+     * @throws IOException If deleting fails
+     */
+    long clear() throws IOException;
+    
+    /**
+     * Get the number of committed records.
+     * 
+     * @return The record count
+     */
+    long getRecordCount();
+    
+    /**
+     * Get the number of records waiting to be committed.
+     * 
+     * @return The queue depth
+     */
+    int getQueueDepth();
+    
+    /**
+     * Get the size of the store on disk.
+     * 
+     * @return The size in bytes
+     */
+    long getDiskSize();
+    
+    /**
+     * Set the group commit triggers.
+     * 
+     * @param commitIntervalMillis Longest time a record waits before it is committed
+     * @param batchSize Number of waiting records that triggers an early commit
+     */
+    void configure(long commitIntervalMillis, int batchSize);
+    
+    /**
+     * Add the store's metrics to a statistics map.
+     * 
+     * @param stats The statistics
+     */
+    void addStats(Map<String, Object> stats);
+    
+    /**
+     * Commit the remaining records and release the store's resources.
+     */
+    void close();
+}
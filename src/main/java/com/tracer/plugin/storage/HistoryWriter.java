@@ -0,0 +1,358 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind pipeline that moves history records into a {@link HistoryStore}.
+ * 
+ * Producers add records to a lock-free queue and never wait for disk I/O. A single writer
+ * thread drains the queue and hands it to the store's {@link Sink} as one group commit,
+ * either once the commit interval has passed or as soon as a full batch is waiting.
+ * 
+ * Readers that need every record, committed or not, go through {@link #read}, which holds
+ * the commit lock only while the store pins its committed records and the pending records
+ * are copied, so no record is seen twice or missed while it moves into the store.
+ */
+final class HistoryWriter {
+    
+    private static final long JOIN_TIMEOUT_MILLIS = 5000L;
+    private static final long BEHIND_WARNING_INTERVAL_MILLIS = 60_000L;
+    
+    /**
+     * The writer counts as behind once this many full batches are waiting.
+     */
+    private static final int BEHIND_BATCHES = 8;
+    
+    /**
+     * A failed commit keeps at most this many batches for the retry, the oldest records beyond it are dropped.
+     */
+    private static final int MAX_UNCOMMITTED_BATCHES = 64;
+    
+    private final Sink sink;
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<LagScore> queue;
+    private final AtomicInteger queueDepth;
+    private final ReentrantLock commitLock;
+    private final Thread thread;
+    
+    private volatile boolean running;
+    private volatile long commitIntervalMillis;
+    private volatile int batchSize;
+    
+    // Batch that failed to commit, retried with the next commit, guarded by the commit lock
+    private List<LagScore> uncommitted;
+    private volatile int uncommittedCount;
+    
+    // Statistics
+    private final AtomicInteger highWaterMark;
+    private final AtomicLong committedRecords;
+    private final AtomicLong commits;
+    private final AtomicLong droppedRecords;
+    private volatile long lastCommitMicros;
+    private volatile long lastBehindWarning;
+    
+    HistoryWriter(final Sink sink, final Logger logger, final long commitIntervalMillis, final int batchSize) {
+        this.sink = sink;
+        this.logger = logger;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queueDepth = new AtomicInteger();
+        this.commitLock = new ReentrantLock();
+        this.uncommitted = new ArrayList<>();
+        this.highWaterMark = new AtomicInteger();
+        this.committedRecords = new AtomicLong();
+        this.commits = new AtomicLong();
+        this.droppedRecords = new AtomicLong();
+        this.configure(commitIntervalMillis, batchSize);
+        
+        this.thread = new Thread(this::run, "Tracer-History-Writer");
+        this.thread.setDaemon(true);
+        this.thread.setUncaughtExceptionHandler((t, e) ->
+            logger.log(Level.SEVERE, "History writer stopped unexpectedly", e));
+    }
+    
+    /**
+     * Set the group commit triggers.
+     * 
+     * @param commitIntervalMillis Longest time a record waits before it is committed
+     * @param batchSize Number of waiting records that triggers an early commit
+     */
+    void configure(final long commitIntervalMillis, final int batchSize) {
+        this.commitIntervalMillis = Math.max(10L, commitIntervalMillis);
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    /**
+     * Start the writer thread.
+     */
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+    
+    /**
+     * Queue a record for the next commit. Never blocks.
+     * 
+     * @param score The record
+     */
+    void enqueue(final LagScore score) {
+        this.queue.offer(score);
+        final int queued = this.queueDepth.incrementAndGet();
+        final int depth = queued + this.uncommittedCount;
+        this.highWaterMark.accumulateAndGet(depth, Math::max);
+        
+        if (queued == this.batchSize) {
+            // A full batch is waiting, commit it without waiting for the interval
+            LockSupport.unpark(this.thread);
+        } else if (depth >= this.batchSize * BEHIND_BATCHES) {
+            this.warnBehind(depth);
+        }
+    }
+    
+    /**
+     * Visit the committed records and then every record that was not committed yet, as of
+     * one point in time. The store pins its committed records under the commit lock and they
+     * are read after it is released, so a long read never stalls the writer. Records committed
+     * meanwhile lie beyond the pinned view and are visited from the copy of the pending records.
+     * 
+     * @param pin Pins the committed records of the store
+     * @param consumer Receives each record
+     * @throws IOException If the query fails
+     */
+    void read(final StoreTask<? extends CommittedRead> pin, final Consumer<LagScore> consumer) throws IOException {
+        final CommittedRead committed;
+        final List<LagScore> pending;
+        this.commitLock.lock();
+        try {
+            committed = pin.run();
+            pending = new ArrayList<>(this.uncommitted);
+            pending.addAll(this.queue);
+        } finally {
+            this.commitLock.unlock();
+        }
+        
+        try (committed) {
+            committed.read(consumer);
+        }
+        pending.forEach(consumer);
+    }
+    
+    /**
+     * Discard all records that are not committed yet and delete the committed ones.
+     * 
+     * @param committedClear Deletes the committed records and returns how many there were
+     * @return The number of deleted records
+     * @throws IOException If deleting fails
+     */
+    long clear(final StoreTask<Long> committedClear) throws IOException {
+        this.commitLock.lock();
+        try {
+            long cleared = this.uncommitted.size();
+            this.uncommitted = new ArrayList<>();
+            this.uncommittedCount = 0;
+            while (this.queue.poll() != null) {
+                this.queueDepth.decrementAndGet();
+                cleared++;
+            }
+            return cleared + committedClear.run();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+    
+    /**
+     * Stop the writer thread after it committed everything that was queued.
+     */
+    void shutdown() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(JOIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (this.thread.isAlive()) {
+            this.logger.warning("History writer did not finish in time, " + this.getQueueDepth() + " records were not saved.");
+        }
+    }
+    
+    /**
+     * Get the number of records waiting to be committed, including a batch kept for retry.
+     * 
+     * @return The queue depth
+     */
+    int getQueueDepth() {
+        return this.queueDepth.get() + this.uncommittedCount;
+    }
+    
+    /**
+     * Check if records arrive faster than the writer commits them.
+     * 
+     * @return true if more than {@value #BEHIND_BATCHES} batches are waiting
+     */
+    boolean isBehind() {
+        return this.getQueueDepth() >= this.batchSize * BEHIND_BATCHES;
+    }
+    
+    int getHighWaterMark() {
+        return this.highWaterMark.get();
+    }
+    
+    long getCommittedRecords() {
+        return this.committedRecords.get();
+    }
+    
+    long getCommits() {
+        return this.commits.get();
+    }
+    
+    long getDroppedRecords() {
+        return this.droppedRecords.get();
+    }
+    
+    long getLastCommitMicros() {
+        return this.lastCommitMicros;
+    }
+    
+    /**
+     * Add the backpressure metrics to a statistics map.
+     * 
+     * @param stats The statistics
+     */
+    void addStats(final Map<String, Object> stats) {
+        stats.put("history_queue_depth", this.getQueueDepth());
+        stats.put("history_queue_high_water", this.getHighWaterMark());
+        stats.put("history_commits", this.getCommits());
+        stats.put("history_committed_records", this.getCommittedRecords());
+        stats.put("history_dropped_records", this.getDroppedRecords());
+        stats.put("history_last_commit_micros", this.getLastCommitMicros());
+        stats.put("history_writer_behind", this.isBehind());
+    }
+    
+    private void run() {
+        while (this.running) {
+            if (this.queueDepth.get() < this.batchSize) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(this.commitIntervalMillis));
+            }
+            this.commit();
+        }
+        
+        // Commit what was queued before shutdown
+        this.commit();
+    }
+    
+    private void commit() {
+        this.commitLock.lock();
+        try {
+            final List<LagScore> batch = this.uncommitted;
+            LagScore score;
+            while ((score = this.queue.poll()) != null) {
+                batch.add(score);
+                this.queueDepth.decrementAndGet();
+            }
+            this.uncommittedCount = batch.size();
+            
+            // The sink is called on every commit so it can run periodic work, even without records
+            final long started = System.nanoTime();
+            try {
+                this.sink.write(batch, System.currentTimeMillis());
+                this.uncommitted = new ArrayList<>();
+                this.uncommittedCount = 0;
+            } catch (IOException e) {
+                // Keep the batch, it is retried with the next commit
+                this.logger.log(Level.WARNING, "Failed to commit " + batch.size() + " history records", e);
+                
+                // Bound the retried batch so a lasting failure cannot fill the heap
+                final int overflow = batch.size() - this.batchSize * MAX_UNCOMMITTED_BATCHES;
+                if (overflow > 0) {
+                    batch.subList(0, overflow).clear();
+                    this.droppedRecords.addAndGet(overflow);
+                    this.uncommittedCount = batch.size();
+                    this.logger.warning("Dropped the " + overflow + " oldest history records that could not be saved.");
+                }
+                return;
+            }
+            
+            if (!batch.isEmpty()) {
+                this.commits.incrementAndGet();
+                this.committedRecords.addAndGet(batch.size());
+                this.lastCommitMicros = (System.nanoTime() - started) / 1000L;
+            }
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+    
+    private void warnBehind(final int depth) {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastBehindWarning >= BEHIND_WARNING_INTERVAL_MILLIS) {
+            this.lastBehindWarning = now;
+            this.logger.warning("History writer is falling behind, " + depth + " records are waiting to be saved.");
+        }
+    }
+    
+    /**
+     * Destination of the group commits, only ever called from the writer thread.
+     */
+    @FunctionalInterface
+    interface Sink {
+        
+        /**
+         * Durably store a batch of records.
+         * 
+         * @param batch The records, possibly none
+         * @param now The current time in milliseconds
+         * @throws IOException If storing fails, the batch is then retried with the next commit
+         */
+        void write(List<LagScore> batch, long now) throws IOException;
+    }
+    
+    /**
+     * Operation on the committed records of a store.
+     * 
+     * @param <V> The result type
+     */
+    @FunctionalInterface
+    interface StoreTask<V> {
+        V run() throws IOException;
+    }
+    
+    /**
+     * Committed records of a store as they were when pinned, read without the commit lock.
+     */
+    @FunctionalInterface
+    interface CommittedRead extends Closeable {
+        
+        /**
+         * Read the pinned records.
+         * 
+         * @param consumer Receives each record
+         * @throws IOException If reading fails
+         */
+        void read(Consumer<LagScore> consumer) throws IOException;
+        
+        /**
+         * Release what the pin holds on to.
+         * 
+         * @throws IOException If releasing fails
+         */
+        @Override
+        default void close() throws IOException {
+        }
+    }
+}
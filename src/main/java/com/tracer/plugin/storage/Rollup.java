@@ -0,0 +1,36 @@
+package com.tracer.plugin.storage;
+
+/**
+ * Aggregate of the overall scores one chunk produced during one rollup bucket.
+ * 
+ * A bucket that was still open at a shutdown is stored in two parts, readers that need
+ * exactly one rollup per bucket combine them with {@link #merge(Rollup)}.
+ * 
+ * @param tier The rollup tier
+ * @param worldName The world name
+ * @param chunkX The chunk X coordinate
+ * @param chunkZ The chunk Z coordinate
+ * @param bucketStart The start of the bucket
+ * @param count The number of analyses
+ * @param min The lowest score
+ * @param max The highest score
+ * @param mean The mean score
+ * @param p95 The 95th percentile score
+ */
+public record Rollup(RollupTier tier, String worldName, int chunkX, int chunkZ, long bucketStart,
+                     int count, double min, double max, double mean, double p95) {
+    
+    /**
+     * Combine two parts of the same bucket. The percentile of the combined bucket cannot be
+     * derived from the parts, the higher of the two is kept as an upper estimate.
+     * 
+     * @param other The other part
+     * @return The combined rollup
+     */
+    public Rollup merge(final Rollup other) {
+        final int total = this.count + other.count;
+        return new Rollup(this.tier, this.worldName, this.chunkX, this.chunkZ, this.bucketStart, total,
+            Math.min(this.min, other.min), Math.max(this.max, other.max),
+            (this.mean * this.count + other.mean * other.count) / total, Math.max(this.p95, other.p95));
+    }
+}
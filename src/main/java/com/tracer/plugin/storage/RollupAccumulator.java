@@ -0,0 +1,105 @@
+package com.tracer.plugin.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open rollup bucket of one chunk, updated as records arrive.
+ * 
+ * The first {@value #EXACT_SAMPLES} scores are kept as they are, so the percentile of a
+ * sparse bucket is exact. Beyond that the scores move into a log-scale histogram with
+ * bins {@value #GROWTH}x wide, which bounds the memory of a busy bucket and keeps the
+ * percentile within half a bin of the exact value.
+ * 
+ * Not thread-safe, the owner must guard all calls.
+ */
+final class RollupAccumulator {
+    
+    private static final int EXACT_SAMPLES = 32;
+    private static final double GROWTH = 1.08;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    private static final int BINS = 192;
+    
+    private final long bucketStart;
+    private int count;
+    private double min;
+    private double max;
+    private double sum;
+    
+    // Exact samples until they overflow, then the histogram
+    private double[] samples;
+    private int[] histogram;
+    
+    RollupAccumulator(final long bucketStart) {
+        this.bucketStart = bucketStart;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+        this.samples = new double[4];
+    }
+    
+    void add(final double score) {
+        this.count++;
+        this.min = Math.min(this.min, score);
+        this.max = Math.max(this.max, score);
+        this.sum += score;
+        
+        if (this.histogram != null) {
+            this.histogram[bin(score)]++;
+        } else if (this.count <= EXACT_SAMPLES) {
+            if (this.count > this.samples.length) {
+                this.samples = Arrays.copyOf(this.samples, EXACT_SAMPLES);
+            }
+            this.samples[this.count - 1] = score;
+        } else {
+            this.histogram = new int[BINS];
+            for (double sample : this.samples) {
+                this.histogram[bin(sample)]++;
+            }
+            this.histogram[bin(score)]++;
+            this.samples = null;
+        }
+    }
+    
+    long getBucketStart() {
+        return this.bucketStart;
+    }
+    
+    /**
+     * Get a percentile by nearest rank.
+     * 
+     * @param quantile The quantile, between 0 and 1
+     * @return The percentile
+     */
+    double percentile(final double quantile) {
+        final int rank = Math.max(1, (int) Math.ceil(quantile * this.count));
+        if (this.histogram == null) {
+            final double[] sorted = Arrays.copyOf(this.samples, this.count);
+            Arrays.sort(sorted);
+            return sorted[rank - 1];
+        }
+        
+        int seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += this.histogram[bin];
+            if (seen >= rank) {
+                // Geometric middle of the bin, within half a bin width of the true value
+                return Math.max(this.min, Math.min(this.max, Math.exp((bin - 0.5) * LOG_GROWTH) - 1.0));
+            }
+        }
+        return this.max;
+    }
+    
+    Rollup toRollup(final RollupTier tier, final String worldName, final int chunkX, final int chunkZ) {
+        return new Rollup(tier, worldName, chunkX, chunkZ, this.bucketStart, this.count,
+            this.min, this.max, this.sum / this.count, this.percentile(0.95));
+    }
+    
+    /**
+     * Get the histogram bin of a score, bin b holds ln(1 + score) up to b * ln(growth).
+     */
+    private static int bin(final double score) {
+        if (score <= 0.0) {
+            return 0;
+        }
+        return Math.min(BINS - 1, (int) Math.ceil(Math.log1p(score) / LOG_GROWTH));
+    }
+}
@@ -0,0 +1,458 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Per-chunk rollups of the analysis history at minute, hour and day resolution.
+ * 
+ * Every record updates the open bucket of its chunk in each tier as it arrives. Buckets
+ * are closed once their time has passed and appended to the tier's files, one file per
+ * {@link RollupTier#getSegmentMillis() segment}, so retention deletes whole files and
+ * each tier keeps its own window. Only the open buckets are held on the heap.
+ * 
+ * Record layout: bucket start (long), world id, chunk X, chunk Z, count (ints), min, max,
+ * mean, p95 (doubles), 4 bytes padding, CRC32 (int).
+ */
+final class RollupStore {
+    
+    static final int RECORD_SIZE = 64;
+    
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKED_SIZE = RECORD_SIZE - 4;
+    private static final int MAGIC = 0x54525255; // "TRRU"
+    private static final short VERSION = 1;
+    private static final String SEGMENT_PREFIX = "rollup-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int READ_BATCH_RECORDS = 1024;
+    private static final RollupTier[] TIERS = RollupTier.values();
+    
+    private final Path directory;
+    private final Logger logger;
+    
+    // Open buckets by tier, world and packed chunk key, and closed buckets not yet written
+    private final ReentrantLock lock;
+    private final List<Map<String, LongObjectHashMap<RollupAccumulator>>> open;
+    private List<Rollup> closed;
+    
+    // File state, guarded by the store's monitor
+    private final WorldDictionary worlds;
+    private final CRC32 crc;
+    
+    RollupStore(final Path directory, final Logger logger) throws IOException {
+        this.directory = directory;
+        this.logger = logger;
+        this.lock = new ReentrantLock();
+        this.open = new ArrayList<>();
+        this.closed = new ArrayList<>();
+        this.crc = new CRC32();
+        
+        for (RollupTier tier : TIERS) {
+            this.open.add(new HashMap<>());
+            Files.createDirectories(this.tierDirectory(tier));
+        }
+        this.worlds = new WorldDictionary(directory.resolve("worlds.dat"));
+        this.recoverSegments();
+    }
+    
+    /**
+     * Add a record to the open bucket of its chunk in every tier. Never does I/O.
+     * 
+     * @param score The record
+     */
+    void add(final LagScore score) {
+        final long key = ChunkKeys.pack(score.getChunkX(), score.getChunkZ());
+        this.lock.lock();
+        try {
+            for (RollupTier tier : TIERS) {
+                final long bucketStart = tier.bucketStart(score.getTimestamp());
+                final LongObjectHashMap<RollupAccumulator> chunks =
+                    this.open.get(tier.ordinal()).computeIfAbsent(score.getWorldName(), world -> new LongObjectHashMap<>());
+                
+                RollupAccumulator accumulator = chunks.get(key);
+                if (accumulator != null && accumulator.getBucketStart() != bucketStart) {
+                    if (bucketStart < accumulator.getBucketStart()) {
+                        // Late record for a bucket that was closed already, stored as its own part
+                        final RollupAccumulator late = new RollupAccumulator(bucketStart);
+                        late.add(score.getOverallScore());
+                        this.closed.add(late.toRollup(tier, score.getWorldName(), score.getChunkX(), score.getChunkZ()));
+                        continue;
+                    }
+                    this.closed.add(accumulator.toRollup(tier, score.getWorldName(), score.getChunkX(), score.getChunkZ()));
+                    accumulator = null;
+                }
+                if (accumulator == null) {
+                    accumulator = new RollupAccumulator(bucketStart);
+                    chunks.put(key, accumulator);
+                }
+                accumulator.add(score.getOverallScore());
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Close every bucket that ended before a point in time and write the closed buckets.
+     * 
+     * @param now The current time in milliseconds, or {@link Long#MAX_VALUE} to close all buckets
+     * @return The number of written rollups
+     * @throws IOException If writing fails
+     */
+    synchronized int flush(final long now) throws IOException {
+        final List<Rollup> batch;
+        this.lock.lock();
+        try {
+            for (RollupTier tier : TIERS) {
+                for (Map.Entry<String, LongObjectHashMap<RollupAccumulator>> world : this.open.get(tier.ordinal()).entrySet()) {
+                    final List<Long> ended = new ArrayList<>();
+                    world.getValue().forEach((key, accumulator) -> {
+                        if (now == Long.MAX_VALUE || accumulator.getBucketStart() + tier.getBucketMillis() <= now) {
+                            ended.add(key);
+                            this.closed.add(accumulator.toRollup(tier, world.getKey(),
+                                ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key)));
+                        }
+                    });
+                    for (long key : ended) {
+                        world.getValue().remove(key);
+                    }
+                }
+                this.open.get(tier.ordinal()).values().removeIf(LongObjectHashMap::isEmpty);
+            }
+            batch = this.closed;
+            this.closed = new ArrayList<>();
+        } finally {
+            this.lock.unlock();
+        }
+        
+        try {
+            this.append(batch);
+        } catch (IOException e) {
+            // Keep the batch for the next flush
+            this.lock.lock();
+            try {
+                batch.addAll(this.closed);
+                this.closed = batch;
+            } finally {
+                this.lock.unlock();
+            }
+            throw e;
+        }
+        return batch.size();
+    }
+    
+    /**
+     * Stream the rollups of a tier selected by a filter, stored rollups first and then the
+     * buckets that are still open. A bucket's start must be within the filter's time range.
+     * 
+     * @param tier The tier
+     * @param filter The filter
+     * @param consumer Receives each rollup
+     * @throws IOException If reading fails
+     */
+    synchronized void query(final RollupTier tier, final HistoryFilter filter,
+                            final Consumer<Rollup> consumer) throws IOException {
+        if (filter.toMillis() < filter.fromMillis()) {
+            return;
+        }
+        
+        final Consumer<Rollup> filtered = rollup -> {
+            if (rollup.bucketStart() >= filter.fromMillis() && rollup.bucketStart() <= filter.toMillis()
+                && filter.matchesChunk(rollup.worldName(), rollup.chunkX(), rollup.chunkZ())) {
+                consumer.accept(rollup);
+            }
+        };
+        
+        final TreeMap<Long, Path> segments = this.listSegments(tier);
+        for (Path segment : segments.subMap(tier.segmentStart(filter.fromMillis()), true, filter.toMillis(), true).values()) {
+            this.readSegment(tier, segment, filtered);
+        }
+        
+        final List<Rollup> pending = new ArrayList<>();
+        this.lock.lock();
+        try {
+            this.closed.stream().filter(rollup -> rollup.tier() == tier).forEach(pending::add);
+            for (Map.Entry<String, LongObjectHashMap<RollupAccumulator>> world : this.open.get(tier.ordinal()).entrySet()) {
+                world.getValue().forEach((key, accumulator) -> pending.add(accumulator.toRollup(tier,
+                    world.getKey(), ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key))));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        pending.forEach(filtered);
+    }
+    
+    /**
+     * Delete every file of a tier that only holds buckets older than the cutoff.
+     * 
+     * @param tier The tier
+     * @param cutoffMillis The retention cutoff
+     * @return The number of deleted rollups
+     * @throws IOException If deleting fails
+     */
+    synchronized long deleteBefore(final RollupTier tier, final long cutoffMillis) throws IOException {
+        long deleted = 0;
+        for (Map.Entry<Long, Path> entry : this.listSegments(tier).entrySet()) {
+            if (entry.getKey() + tier.getSegmentMillis() > cutoffMillis) {
+                break;
+            }
+            deleted += Math.max(0L, (Files.size(entry.getValue()) - HEADER_SIZE) / RECORD_SIZE);
+            Files.delete(entry.getValue());
+        }
+        return deleted;
+    }
+    
+    /**
+     * Delete all rollups, open or stored.
+     * 
+     * @throws IOException If deleting fails
+     */
+    synchronized void clear() throws IOException {
+        this.lock.lock();
+        try {
+            this.open.forEach(Map::clear);
+            this.closed = new ArrayList<>();
+        } finally {
+            this.lock.unlock();
+        }
+        for (RollupTier tier : TIERS) {
+            this.deleteBefore(tier, Long.MAX_VALUE - tier.getSegmentMillis());
+        }
+    }
+    
+    /**
+     * Get the number of open buckets across all tiers.
+     * 
+     * @return The number of open buckets
+     */
+    int getOpenBuckets() {
+        this.lock.lock();
+        try {
+            int count = 0;
+            for (Map<String, LongObjectHashMap<RollupAccumulator>> tier : this.open) {
+                for (LongObjectHashMap<RollupAccumulator> chunks : tier.values()) {
+                    count += chunks.size();
+                }
+            }
+            return count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the total size of all rollup files.
+     * 
+     * @return The size in bytes
+     */
+    synchronized long getDiskSize() {
+        long size = 0;
+        try {
+            for (RollupTier tier : TIERS) {
+                for (Path segment : this.listSegments(tier).values()) {
+                    size += Files.size(segment);
+                }
+            }
+        } catch (IOException e) {
+            // Segment deleted while listing
+        }
+        return size;
+    }
+    
+    private void append(final List<Rollup> rollups) throws IOException {
+        if (rollups.isEmpty()) {
+            return;
+        }
+        
+        // Group by tier and segment, written in one call per file
+        final Map<Path, List<Rollup>> bySegment = new TreeMap<>();
+        for (Rollup rollup : rollups) {
+            bySegment.computeIfAbsent(this.segmentPath(rollup.tier(), rollup.tier().segmentStart(rollup.bucketStart())),
+                path -> new ArrayList<>()).add(rollup);
+        }
+        
+        for (Map.Entry<Path, List<Rollup>> entry : bySegment.entrySet()) {
+            final List<Rollup> segmentRollups = entry.getValue();
+            final ByteBuffer buffer = ByteBuffer.allocate(segmentRollups.size() * RECORD_SIZE);
+            for (Rollup rollup : segmentRollups) {
+                this.writeRecord(buffer, rollup);
+            }
+            buffer.flip();
+            
+            try (final FileChannel channel = FileChannel.open(entry.getKey(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                if (channel.size() == 0) {
+                    final Rollup first = segmentRollups.get(0);
+                    channel.write(this.header(first.tier().segmentStart(first.bucketStart())));
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        }
+    }
+    
+    private void readSegment(final RollupTier tier, final Path segment, final Consumer<Rollup> consumer) throws IOException {
+        int corrupt = 0;
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH_RECORDS * RECORD_SIZE);
+        
+        try (final FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Read the full header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+                || header.getShort() != VERSION || header.getShort() != RECORD_SIZE) {
+                this.logger.warning("Skipping rollup file with an invalid header: " + segment.getFileName());
+                return;
+            }
+            
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    final int offset = buffer.position();
+                    this.crc.reset();
+                    this.crc.update(buffer.array(), offset, CHECKED_SIZE);
+                    if (buffer.getInt(offset + CHECKED_SIZE) != (int) this.crc.getValue()) {
+                        corrupt++;
+                        buffer.position(offset + RECORD_SIZE);
+                        continue;
+                    }
+                    
+                    final Rollup rollup = this.readRecord(tier, buffer);
+                    if (rollup != null) {
+                        consumer.accept(rollup);
+                    }
+                }
+                
+                if (buffer.hasRemaining() && channel.position() >= channel.size()) {
+                    // Torn record at the end of the file
+                    break;
+                }
+                buffer.compact();
+            }
+        }
+        
+        if (corrupt > 0) {
+            this.logger.warning("Skipped " + corrupt + " corrupt rollups in " + segment.getFileName());
+        }
+    }
+    
+    private ByteBuffer header(final long segmentStart) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) RECORD_SIZE);
+        header.putLong(segmentStart);
+        header.flip();
+        return header;
+    }
+    
+    private void writeRecord(final ByteBuffer buffer, final Rollup rollup) throws IOException {
+        final int offset = buffer.position();
+        buffer.putLong(rollup.bucketStart());
+        buffer.putInt(this.worlds.id(rollup.worldName()));
+        buffer.putInt(rollup.chunkX());
+        buffer.putInt(rollup.chunkZ());
+        buffer.putInt(rollup.count());
+        buffer.putDouble(rollup.min());
+        buffer.putDouble(rollup.max());
+        buffer.putDouble(rollup.mean());
+        buffer.putDouble(rollup.p95());
+        buffer.putInt(0);
+        
+        this.crc.reset();
+        this.crc.update(buffer.array(), offset, CHECKED_SIZE);
+        buffer.putInt((int) this.crc.getValue());
+    }
+    
+    /**
+     * Read the record at the buffer position and advance past it.
+     * 
+     * @return The rollup, or null if it references an unknown world
+     */
+    private Rollup readRecord(final RollupTier tier, final ByteBuffer buffer) {
+        final long bucketStart = buffer.getLong();
+        final String worldName = this.worlds.name(buffer.getInt());
+        final int chunkX = buffer.getInt();
+        final int chunkZ = buffer.getInt();
+        final int count = buffer.getInt();
+        final double min = buffer.getDouble();
+        final double max = buffer.getDouble();
+        final double mean = buffer.getDouble();
+        final double p95 = buffer.getDouble();
+        buffer.position(buffer.position() + 4 + 4);
+        
+        if (worldName == null) {
+            return null;
+        }
+        return new Rollup(tier, worldName, chunkX, chunkZ, bucketStart, count, min, max, mean, p95);
+    }
+    
+    /**
+     * Cut torn records off the end of every file, left behind by a crash during a flush.
+     */
+    private void recoverSegments() throws IOException {
+        for (RollupTier tier : TIERS) {
+            for (Path segment : this.listSegments(tier).values()) {
+                final long size = Files.size(segment);
+                final long valid = size < HEADER_SIZE ? 0 : size - (size - HEADER_SIZE) % RECORD_SIZE;
+                if (valid != size) {
+                    try (final FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                        channel.truncate(valid);
+                    }
+                    this.logger.warning("Truncated torn rollup at the end of " + segment.getFileName());
+                }
+            }
+        }
+    }
+    
+    private Path tierDirectory(final RollupTier tier) {
+        return this.directory.resolve(tier.name().toLowerCase(Locale.ROOT));
+    }
+    
+    private Path segmentPath(final RollupTier tier, final long segmentStart) {
+        return this.tierDirectory(tier).resolve(SEGMENT_PREFIX + segmentStart + SEGMENT_SUFFIX);
+    }
+    
+    /**
+     * List the files of a tier by segment start.
+     */
+    private TreeMap<Long, Path> listSegments(final RollupTier tier) throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(this.tierDirectory(tier),
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    this.logger.warning("Ignoring unexpected rollup file: " + name);
+                }
+            }
+        }
+        return segments;
+    }
+}
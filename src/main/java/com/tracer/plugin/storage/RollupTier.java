@@ -0,0 +1,60 @@
+package com.tracer.plugin.storage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of a history rollup. Each tier is computed from the raw records and kept
+ * for its own retention window.
+ */
+public enum RollupTier {
+    
+    /**
+     * One rollup per chunk and minute, stored in one file per hour.
+     */
+    MINUTE(TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1)),
+    
+    /**
+     * One rollup per chunk and hour, stored in one file per day.
+     */
+    HOUR(TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1)),
+    
+    /**
+     * One rollup per chunk and day, stored in one file per 30 days.
+     */
+    DAY(TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(30));
+    
+    private final long bucketMillis;
+    private final long segmentMillis;
+    
+    RollupTier(final long bucketMillis, final long segmentMillis) {
+        this.bucketMillis = bucketMillis;
+        this.segmentMillis = segmentMillis;
+    }
+    
+    /**
+     * Get the time span aggregated by one rollup.
+     * 
+     * @return The span in milliseconds
+     */
+    public long getBucketMillis() {
+        return this.bucketMillis;
+    }
+    
+    /**
+     * Get the start of the rollup bucket that holds a point in time.
+     * 
+     * @param timestamp The timestamp
+     * @return The bucket start
+     */
+    public long bucketStart(final long timestamp) {
+        return Math.floorDiv(timestamp, this.bucketMillis) * this.bucketMillis;
+    }
+    
+    long getSegmentMillis() {
+        return this.segmentMillis;
+    }
+    
+    long segmentStart(final long timestamp) {
+        return Math.floorDiv(timestamp, this.segmentMillis) * this.segmentMillis;
+    }
+}
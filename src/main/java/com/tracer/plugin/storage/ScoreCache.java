@@ -0,0 +1,779 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.util.ChunkKeys;
+import com.tracer.plugin.util.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Memory-bounded cache of the latest lag score per chunk.
+ * 
+ * Scores are held in one primitive long-keyed map per world, with the chunk coordinates
+ * packed into the key, so lookups and stores build no string keys and store no key objects.
+ * 
+ * Every entry is weighed by its estimated heap footprint, and once the total weight exceeds
+ * the maximum the cache evicts using a segmented LRU: new entries enter a probation segment
+ * and are promoted to a protected segment when read again, so a server-wide scan that touches
+ * every chunk once cannot flush the chunks that are looked at repeatedly. Since every read
+ * reorders the segments, the cache is guarded by a single lock.
+ * 
+ * Entries expire a fixed time after their score was taken. Expiry is driven by a timing
+ * wheel advanced from {@link #expire(long)}, so expired entries are freed without scanning
+ * the cache. Protected entries that are still being read close to their expiry can be
+ * handed to a {@link RefreshHandler} so a new score is ready before the old one expires.
+ * 
+ * While change tracking is on, every chunk whose entry was stored or removed since the last
+ * {@link #drainChanges()} is tracked as dirty, so the cache can be persisted incrementally.
+ * 
+ * The cached scores are also kept in a {@link ScoreRanking} and a {@link SpatialIndex}, which
+ * are read without the lock.
+ */
+public final class ScoreCache {
+    
+    /**
+     * Share of the maximum weight reserved for the protected segment.
+     */
+    private static final double PROTECTED_RATIO = 0.8;
+    
+    private static final byte PROBATION = 0;
+    private static final byte PROTECTED = 1;
+    
+    private final Map<String, LongObjectHashMap<Node>> worlds;
+    private final ReentrantLock lock;
+    
+    // Chunks changed since the last drain, the values are unused
+    private final Map<String, LongObjectHashMap<Boolean>> dirty;
+    private int dirtyCount;
+    private boolean trackChanges;
+    
+    // Worst chunks first, updated with every entry
+    private final ScoreRanking ranking;
+    
+    // Chunks by position, updated with every entry
+    private final SpatialIndex spatialIndex;
+    
+    // Chunks by the entity types and materials they contain, updated with every entry
+    private final TypeIndex typeIndex;
+    
+    // Segment lists, most recently used at the head
+    private final Segment probation;
+    private final Segment protectedSegment;
+    
+    private long maximumWeight;
+    private long weightedSize;
+    
+    // Expiry, negative durations disable expiry and refresh
+    private final TimerWheel<Node> expiryWheel;
+    private long expireAfterMillis;
+    private long refreshAfterMillis;
+    private RefreshHandler refreshHandler;
+    
+    // Statistics
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+    private long refreshCount;
+    
+    public ScoreCache() {
+        this(Long.MAX_VALUE);
+    }
+    
+    public ScoreCache(final long maximumWeight) {
+        this.worlds = new HashMap<>();
+        this.lock = new ReentrantLock();
+        this.dirty = new HashMap<>();
+        this.ranking = new ScoreRanking();
+        this.spatialIndex = new SpatialIndex();
+        this.typeIndex = new TypeIndex();
+        this.probation = new Segment();
+        this.protectedSegment = new Segment();
+        this.maximumWeight = Math.max(0L, maximumWeight);
+        this.expiryWheel = new TimerWheel<>(System.currentTimeMillis());
+        this.expireAfterMillis = -1L;
+        this.refreshAfterMillis = -1L;
+    }
+    
+    /**
+     * Get the cached score of a chunk and record the access.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The cached score, or null if not cached or expired
+     */
+    public LagScore get(final String worldName, final int chunkX, final int chunkZ) {
+        final long now = System.currentTimeMillis();
+        final LagScore score;
+        final RefreshHandler refresh;
+        
+        this.lock.lock();
+        try {
+            final LongObjectHashMap<Node> map = this.worlds.get(worldName);
+            final Node node = map != null ? map.get(ChunkKeys.pack(chunkX, chunkZ)) : null;
+            if (node == null) {
+                this.missCount++;
+                return null;
+            }
+            
+            if (this.expireAfterMillis >= 0 && node.expiresAt <= now) {
+                // Expired but not swept yet
+                this.unlink(node);
+                this.expirationCount++;
+                this.missCount++;
+                return null;
+            }
+            
+            this.hitCount++;
+            this.onAccess(node);
+            score = node.score;
+            
+            // Refresh entries that are read again close to their expiry, once per score
+            if (this.refreshHandler != null && this.refreshAfterMillis >= 0 && !node.refreshRequested
+                && node.segment == PROTECTED && now - score.getTimestamp() >= this.refreshAfterMillis) {
+                node.refreshRequested = true;
+                this.refreshCount++;
+                refresh = this.refreshHandler;
+            } else {
+                refresh = null;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        
+        if (refresh != null) {
+            refresh.refresh(worldName, chunkX, chunkZ);
+        }
+        return score;
+    }
+    
+    /**
+     * Cache a score, replacing the previous score of its chunk, and evict
+     * entries until the cache fits its maximum weight again.
+     * 
+     * @param score The score to cache
+     * @return The replaced score, or null if the chunk was not cached
+     */
+    public LagScore put(final LagScore score) {
+        final long key = ChunkKeys.pack(score.getChunkX(), score.getChunkZ());
+        final long weight = weigh(score);
+        
+        this.lock.lock();
+        try {
+            final LongObjectHashMap<Node> map = this.worlds.computeIfAbsent(score.getWorldName(), name -> new LongObjectHashMap<>());
+            final Node existing = map.get(key);
+            final LagScore previous;
+            
+            if (existing != null) {
+                previous = existing.score;
+                this.ranking.remove(previous);
+                this.spatialIndex.remove(previous);
+                this.typeIndex.remove(previous);
+                existing.score = score;
+                this.weightedSize += weight - existing.weight;
+                this.segmentOf(existing).weight += weight - existing.weight;
+                existing.weight = weight;
+                existing.refreshRequested = false;
+                this.scheduleExpiry(existing);
+                this.onAccess(existing);
+            } else {
+                previous = null;
+                final Node node = new Node(score.getWorldName(), key, score, weight);
+                map.put(key, node);
+                this.weightedSize += weight;
+                this.probation.addFirst(node);
+                this.scheduleExpiry(node);
+            }
+            this.ranking.add(score);
+            this.spatialIndex.add(score);
+            this.typeIndex.add(score);
+            this.markDirty(score.getWorldName(), key);
+            
+            this.evict();
+            return previous;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Cache a score read back from disk, unless its chunk was cached in the meantime.
+     * Unlike {@link #put(LagScore)} the entry is not marked dirty, it is already persisted.
+     * 
+     * @param score The score to cache
+     * @return true if the score was cached
+     */
+    public boolean restore(final LagScore score) {
+        final long key = ChunkKeys.pack(score.getChunkX(), score.getChunkZ());
+        final long weight = weigh(score);
+        
+        this.lock.lock();
+        try {
+            final LongObjectHashMap<Node> map = this.worlds.computeIfAbsent(score.getWorldName(), name -> new LongObjectHashMap<>());
+            if (map.containsKey(key)) {
+                return false;
+            }
+            
+            final Node node = new Node(score.getWorldName(), key, score, weight);
+            map.put(key, node);
+            this.weightedSize += weight;
+            this.probation.addFirst(node);
+            this.scheduleExpiry(node);
+            this.ranking.add(score);
+            this.spatialIndex.add(score);
+            this.typeIndex.add(score);
+            
+            this.evict();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Remove the cached score of a chunk.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The removed score, or null if not cached
+     */
+    public LagScore remove(final String worldName, final int chunkX, final int chunkZ) {
+        this.lock.lock();
+        try {
+            final LongObjectHashMap<Node> map = this.worlds.get(worldName);
+            if (map == null) {
+                return null;
+            }
+            
+            final Node node = map.get(ChunkKeys.pack(chunkX, chunkZ));
+            if (node == null) {
+                return null;
+            }
+            
+            this.unlink(node);
+            return node.score;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Visit every cached score without recording accesses. The consumer runs
+     * under the cache lock, so it must be short and must not modify the cache.
+     * 
+     * @param consumer The consumer receiving each score
+     */
+    public void forEach(final Consumer<LagScore> consumer) {
+        this.lock.lock();
+        try {
+            for (LongObjectHashMap<Node> map : this.worlds.values()) {
+                map.forEach((key, node) -> consumer.accept(node.score));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get a snapshot of all cached scores.
+     * 
+     * @return A new list of all cached scores
+     */
+    public List<LagScore> values() {
+        this.lock.lock();
+        try {
+            final List<LagScore> values = new ArrayList<>(this.sizeLocked());
+            for (LongObjectHashMap<Node> map : this.worlds.values()) {
+                map.forEach((key, node) -> values.add(node.score));
+            }
+            return values;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the ranking of the cached scores, which can be read without blocking the cache.
+     * 
+     * @return The ranking
+     */
+    public ScoreRanking getRanking() {
+        return this.ranking;
+    }
+    
+    /**
+     * Get the spatial index of the cached scores, which can be read without blocking the cache.
+     * 
+     * @return The spatial index
+     */
+    public SpatialIndex getSpatialIndex() {
+        return this.spatialIndex;
+    }
+    
+    /**
+     * Get the index of the cached scores by entity type and material, which can be read without blocking the cache.
+     * 
+     * @return The type index
+     */
+    public TypeIndex getTypeIndex() {
+        return this.typeIndex;
+    }
+    
+    /**
+     * Get the number of cached scores.
+     * 
+     * @return The cache size
+     */
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.sizeLocked();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Remove all cached scores. Statistics are kept.
+     */
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.worlds.forEach((worldName, map) -> map.forEach((key, node) -> this.markDirty(worldName, key)));
+            this.worlds.clear();
+            this.probation.clear();
+            this.protectedSegment.clear();
+            this.expiryWheel.clear();
+            this.ranking.clear();
+            this.spatialIndex.clear();
+            this.typeIndex.clear();
+            this.weightedSize = 0L;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Take the chunks changed since the last drain with their current scores, and
+     * mark them clean. A chunk that was removed is returned with a null score.
+     * 
+     * @return The changes, in no particular order
+     */
+    public List<Change> drainChanges() {
+        this.lock.lock();
+        try {
+            final List<Change> changes = new ArrayList<>(this.dirtyCount);
+            this.dirty.forEach((worldName, keys) -> {
+                final LongObjectHashMap<Node> map = this.worlds.get(worldName);
+                keys.forEach((key, marker) -> {
+                    final Node node = map != null ? map.get(key) : null;
+                    changes.add(new Change(worldName, ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key),
+                        node != null ? node.score : null));
+                });
+            });
+            this.dirty.clear();
+            this.dirtyCount = 0;
+            return changes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Turn change tracking on or off. It is off until a snapshot is attached, a cache that
+     * is never persisted would otherwise keep every chunk it ever stored as dirty.
+     * 
+     * @param trackChanges true to track changed chunks
+     */
+    public void setTrackChanges(final boolean trackChanges) {
+        this.lock.lock();
+        try {
+            this.trackChanges = trackChanges;
+            if (!trackChanges) {
+                this.dirty.clear();
+                this.dirtyCount = 0;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the number of chunks changed since the last drain.
+     * 
+     * @return The dirty count
+     */
+    public int getDirtyCount() {
+        this.lock.lock();
+        try {
+            return this.dirtyCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Set the maximum total weight, evicting immediately if the cache is above it.
+     * 
+     * @param maximumWeight The maximum weight in bytes
+     */
+    public void setMaximumWeight(final long maximumWeight) {
+        this.lock.lock();
+        try {
+            this.maximumWeight = Math.max(0L, maximumWeight);
+            this.evict();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Set how long entries live and when hot entries are refreshed, rescheduling
+     * every cached entry.
+     * 
+     * @param expireAfterMillis Time after a score was taken until it expires, or a negative value to never expire
+     * @param refreshAfterMillis Time after a score was taken from which a read requests a refresh,
+     *                           or a negative value to never refresh
+     */
+    public void setExpiry(final long expireAfterMillis, final long refreshAfterMillis) {
+        this.lock.lock();
+        try {
+            this.expireAfterMillis = expireAfterMillis;
+            this.refreshAfterMillis = refreshAfterMillis;
+            for (LongObjectHashMap<Node> map : this.worlds.values()) {
+                map.forEach((key, node) -> this.scheduleExpiry(node));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Set the handler that refreshes hot entries before they expire.
+     * The handler is called outside the cache lock on the reading thread.
+     * 
+     * @param refreshHandler The handler, or null to disable refreshing
+     */
+    public void setRefreshHandler(final RefreshHandler refreshHandler) {
+        this.lock.lock();
+        try {
+            this.refreshHandler = refreshHandler;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Remove all entries that expired by the given time. Only touches the
+     * entries that are due, not the whole cache.
+     * 
+     * @param now The current time in milliseconds
+     * @return The number of removed entries
+     */
+    public int expire(final long now) {
+        this.lock.lock();
+        try {
+            final int expired = this.expiryWheel.advance(now, this::unlink);
+            this.expirationCount += expired;
+            return expired;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the maximum total weight.
+     * 
+     * @return The maximum weight in bytes
+     */
+    public long getMaximumWeight() {
+        this.lock.lock();
+        try {
+            return this.maximumWeight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the estimated heap footprint of all cached entries.
+     * 
+     * @return The total weight in bytes
+     */
+    public long getWeightedSize() {
+        this.lock.lock();
+        try {
+            return this.weightedSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Get a snapshot of the cache statistics.
+     * 
+     * @return The statistics
+     */
+    public Stats getStats() {
+        this.lock.lock();
+        try {
+            return new Stats(this.hitCount, this.missCount, this.evictionCount, this.expirationCount,
+                this.refreshCount, this.weightedSize, this.maximumWeight);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Estimate the heap footprint of a cached score, assuming compressed references:
+     * the score object, its type counts and details string, the cache node and the node's
+     * slot in the world map. Lag sources are built on demand and the world name is shared
+     * between all scores, neither is counted.
+     * 
+     * @param score The score
+     * @return The estimated footprint in bytes
+     */
+    static long weigh(final LagScore score) {
+        // Node: header, six references, key, expiry, weight and flags, plus a map slot (key and reference at ~60% load)
+        long weight = 64L + 20L;
+        
+        // LagScore: header, three longs/doubles, six ints, a byte and two references
+        weight += 72L;
+        
+        // Type counts: header, two arrays and their index entries, the types themselves are shared
+        final int types = score.getTypeCounts().size();
+        if (types > 0) {
+            weight += 24L + 2L * align(16L + 4L * types) + types * 48L;
+        }
+        
+        return weight + weighString(score.getDetails());
+    }
+    
+    private static long weighString(final String value) {
+        if (value == null) {
+            return 0L;
+        }
+        // String object plus its latin-1 byte array
+        return 24L + align(16L + value.length());
+    }
+    
+    private static long align(final long size) {
+        return (size + 7L) & ~7L;
+    }
+    
+    private int sizeLocked() {
+        int size = 0;
+        for (LongObjectHashMap<Node> map : this.worlds.values()) {
+            size += map.size();
+        }
+        return size;
+    }
+    
+    private void scheduleExpiry(final Node node) {
+        if (this.expireAfterMillis < 0) {
+            this.expiryWheel.deschedule(node);
+            return;
+        }
+        node.expiresAt = node.score.getTimestamp() + this.expireAfterMillis;
+        this.expiryWheel.schedule(node);
+    }
+    
+    private Segment segmentOf(final Node node) {
+        return node.segment == PROTECTED ? this.protectedSegment : this.probation;
+    }
+    
+    /**
+     * Move an accessed entry to the head of the protected segment, demoting the
+     * least recently used protected entries to probation if it overflows.
+     */
+    private void onAccess(final Node node) {
+        if (node.segment == PROTECTED) {
+            this.protectedSegment.moveToFirst(node);
+            return;
+        }
+        
+        this.probation.remove(node);
+        node.segment = PROTECTED;
+        this.protectedSegment.addFirst(node);
+        
+        final long protectedMaximum = (long) (this.maximumWeight * PROTECTED_RATIO);
+        while (this.protectedSegment.weight > protectedMaximum && this.protectedSegment.tail != node) {
+            final Node demoted = this.protectedSegment.tail;
+            this.protectedSegment.remove(demoted);
+            demoted.segment = PROBATION;
+            this.probation.addFirst(demoted);
+        }
+    }
+    
+    /**
+     * Evict least recently used entries, probation first, until the cache fits.
+     */
+    private void evict() {
+        while (this.weightedSize > this.maximumWeight) {
+            final Node victim = this.probation.tail != null ? this.probation.tail : this.protectedSegment.tail;
+            if (victim == null) {
+                return;
+            }
+            this.unlink(victim);
+            this.evictionCount++;
+        }
+    }
+    
+    private void unlink(final Node node) {
+        this.segmentOf(node).remove(node);
+        this.expiryWheel.deschedule(node);
+        this.ranking.remove(node.score);
+        this.spatialIndex.remove(node.score);
+        this.typeIndex.remove(node.score);
+        this.weightedSize -= node.weight;
+        
+        final LongObjectHashMap<Node> map = this.worlds.get(node.worldName);
+        if (map != null) {
+            map.remove(node.key);
+            if (map.isEmpty()) {
+                this.worlds.remove(node.worldName);
+            }
+        }
+        this.markDirty(node.worldName, node.key);
+    }
+    
+    private void markDirty(final String worldName, final long key) {
+        if (!this.trackChanges) {
+            return;
+        }
+        if (this.dirty.computeIfAbsent(worldName, name -> new LongObjectHashMap<>()).put(key, Boolean.TRUE) == null) {
+            this.dirtyCount++;
+        }
+    }
+    
+    /**
+     * Cache statistics.
+     * 
+     * @param hitCount Lookups that found a score
+     * @param missCount Lookups that found nothing
+     * @param evictionCount Entries evicted to stay within the maximum weight
+     * @param expirationCount Entries removed because they expired
+     * @param refreshCount Refreshes requested for hot entries
+     * @param weightedSize Estimated footprint of the cached entries in bytes
+     * @param maximumWeight Maximum footprint in bytes
+     */
+    public record Stats(long hitCount, long missCount, long evictionCount, long expirationCount,
+                        long refreshCount, long weightedSize, long maximumWeight) {
+        
+        /**
+         * Get the share of lookups that found a score.
+         * 
+         * @return The hit rate between 0 and 1
+         */
+        public double hitRate() {
+            final long requests = this.hitCount + this.missCount;
+            return requests == 0 ? 0.0 : (double) this.hitCount / requests;
+        }
+    }
+    
+    /**
+     * Chunk whose entry changed since the last drain.
+     * 
+     * @param worldName The world name
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param score The current score, or null if the entry was removed
+     */
+    public record Change(String worldName, int chunkX, int chunkZ, LagScore score) {
+    }
+    
+    /**
+     * Requests a new score for a chunk whose cached score is about to expire.
+     */
+    @FunctionalInterface
+    public interface RefreshHandler {
+        
+        /**
+         * Request a new score.
+         * 
+         * @param worldName The world name
+         * @param chunkX The chunk X coordinate
+         * @param chunkZ The chunk Z coordinate
+         */
+        void refresh(String worldName, int chunkX, int chunkZ);
+    }
+    
+    /**
+     * A cached score linked into one of the segments and scheduled in the expiry wheel.
+     */
+    private static final class Node extends TimerWheel.Timer {
+        private final String worldName;
+        private final long key;
+        private LagScore score;
+        private long weight;
+        private byte segment;
+        private boolean refreshRequested;
+        private Node prev;
+        private Node next;
+        
+        private Node(final String worldName, final long key, final LagScore score, final long weight) {
+            this.worldName = worldName;
+            this.key = key;
+            this.score = score;
+            this.weight = weight;
+            this.segment = PROBATION;
+        }
+    }
+    
+    /**
+     * Doubly linked LRU list with its total weight.
+     */
+    private static final class Segment {
+        private Node head;
+        private Node tail;
+        private long weight;
+        
+        private void addFirst(final Node node) {
+            node.prev = null;
+            node.next = this.head;
+            if (this.head != null) {
+                this.head.prev = node;
+            } else {
+                this.tail = node;
+            }
+            this.head = node;
+            this.weight += node.weight;
+        }
+        
+        private void remove(final Node node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                this.head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                this.tail = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            this.weight -= node.weight;
+        }
+        
+        private void moveToFirst(final Node node) {
+            if (this.head != node) {
+                this.remove(node);
+                this.addFirst(node);
+            }
+        }
+        
+        private void clear() {
+            this.head = null;
+            this.tail = null;
+            this.weight = 0L;
+        }
+    }
+}
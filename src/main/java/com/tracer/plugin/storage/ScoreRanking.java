@@ -0,0 +1,160 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Cached scores ordered from the worst to the best chunk, for paging through the worst chunks
+ * without copying and sorting the cache.
+ * 
+ * Scores are kept in concurrent skip lists, one for all worlds and one per world, ordered by
+ * lag level and then by score. The chunks at or above a level are therefore the head of the
+ * ranking, and reading a page of them walks the ranking up to the end of the page, with no
+ * copy and no sort. The number of chunks per level is counted alongside, so page counts need
+ * no walk at all.
+ * 
+ * The ranking is updated by the cache while it holds its lock, reads take no lock and see
+ * a weakly consistent view of concurrent updates.
+ */
+public final class ScoreRanking {
+    
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    
+    // Worst first: highest level, highest score, then by chunk so distinct chunks never compare equal
+    private static final Comparator<LagScore> ORDER = Comparator
+        .comparing(LagScore::getLagLevel, Comparator.reverseOrder())
+        .thenComparing(Comparator.comparingDouble(LagScore::getOverallScore).reversed())
+        .thenComparing(LagScore::getWorldName)
+        .thenComparingInt(LagScore::getChunkX)
+        .thenComparingInt(LagScore::getChunkZ);
+    
+    private final View all;
+    private final Map<String, View> worlds;
+    
+    ScoreRanking() {
+        this.all = new View();
+        this.worlds = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Get a page of the worst cached chunks.
+     * 
+     * @param worldName The world to rank, or null for all worlds
+     * @param minimumLevel The lowest lag level to include
+     * @param offset The number of chunks to skip
+     * @param limit The maximum number of chunks to return
+     * @return The chunks of the page, worst first
+     */
+    public List<LagScore> getPage(final String worldName, final LagLevel minimumLevel, final int offset, final int limit) {
+        final View view = worldName != null ? this.worlds.get(worldName) : this.all;
+        if (view == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        
+        final List<LagScore> page = new ArrayList<>(Math.min(limit, 64));
+        final Iterator<LagScore> iterator = view.atLeast(minimumLevel).iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+    
+    /**
+     * Count the cached chunks at or above a lag level.
+     * 
+     * @param worldName The world to count, or null for all worlds
+     * @param minimumLevel The lowest lag level to include
+     * @return The number of chunks
+     */
+    public int count(final String worldName, final LagLevel minimumLevel) {
+        final View view = worldName != null ? this.worlds.get(worldName) : this.all;
+        if (view == null) {
+            return 0;
+        }
+        
+        int count = 0;
+        for (int level = minimumLevel.ordinal(); level < LEVELS.length; level++) {
+            count += view.levelCounts.get(level);
+        }
+        return count;
+    }
+    
+    void add(final LagScore score) {
+        this.all.add(score);
+        this.worlds.computeIfAbsent(score.getWorldName(), world -> new View()).add(score);
+    }
+    
+    void remove(final LagScore score) {
+        this.all.remove(score);
+        final View world = this.worlds.get(score.getWorldName());
+        if (world != null) {
+            world.remove(score);
+        }
+    }
+    
+    void clear() {
+        this.all.clear();
+        this.worlds.clear();
+    }
+    
+    /**
+     * The ranked scores of all worlds or of one world.
+     */
+    private static final class View {
+        
+        private final ConcurrentSkipListSet<LagScore> scores;
+        private final AtomicIntegerArray levelCounts;
+        
+        private View() {
+            this.scores = new ConcurrentSkipListSet<>(ORDER);
+            this.levelCounts = new AtomicIntegerArray(LEVELS.length);
+        }
+        
+        private void add(final LagScore score) {
+            if (this.scores.add(score)) {
+                this.levelCounts.incrementAndGet(score.getLagLevel().ordinal());
+            }
+        }
+        
+        private void remove(final LagScore score) {
+            if (this.scores.remove(score)) {
+                this.levelCounts.decrementAndGet(score.getLagLevel().ordinal());
+            }
+        }
+        
+        private void clear() {
+            this.scores.clear();
+            for (int level = 0; level < LEVELS.length; level++) {
+                this.levelCounts.set(level, 0);
+            }
+        }
+        
+        /**
+         * Get the scores at or above a level, the head of the ranking up to the first score below it.
+         */
+        private NavigableSet<LagScore> atLeast(final LagLevel minimumLevel) {
+            if (minimumLevel.ordinal() == 0) {
+                return this.scores;
+            }
+            
+            // Ranked after every score of the minimum level and before every score of the level below
+            final LagScore bound = LagScore.restore("", Integer.MIN_VALUE, Integer.MIN_VALUE, 0L, 0, 0, 0,
+                Double.POSITIVE_INFINITY, 0.0, LEVELS[minimumLevel.ordinal() - 1]);
+            return this.scores.headSet(bound, false);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.util.ChunkKeys;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Cached scores organized by chunk position, for finding the results around a point
+ * without walking the cache or analyzing the chunks again.
+ * 
+ * Every world keeps one concurrent skip list per lag level, keyed by the Morton code of the
+ * chunk. A rectangle of chunks is read by seeking to the code of its lowest corner and walking
+ * the codes up to its highest corner; whenever the walk leaves the rectangle, it jumps ahead to
+ * the next code inside it, so only chunks in or next to the rectangle are visited. Keeping the
+ * levels apart means a search for hot chunks never visits the many chunks without lag.
+ * 
+ * The index is updated by the cache while it holds its lock, reads take no lock and see
+ * a weakly consistent view of concurrent updates.
+ */
+public final class SpatialIndex {
+    
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    private static final int INITIAL_SEARCH_RADIUS = 8;
+    
+    // Morton codes are ordered as unsigned values
+    private static final Comparator<Long> CODE_ORDER = Long::compareUnsigned;
+    
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    
+    private final Map<String, List<ConcurrentSkipListMap<Long, LagScore>>> worlds;
+    
+    SpatialIndex() {
+        this.worlds = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Visit the cached chunks of a world inside a rectangle, in Morton order.
+     * 
+     * @param worldName The world name
+     * @param bounds The rectangle of chunks
+     * @param minimumLevel The lowest lag level to include
+     * @param consumer Receives each score
+     */
+    public void forEachInBox(final String worldName, final HistoryFilter.ChunkBounds bounds,
+                             final LagLevel minimumLevel, final Consumer<LagScore> consumer) {
+        final List<ConcurrentSkipListMap<Long, LagScore>> levels = this.worlds.get(worldName);
+        if (levels == null) {
+            return;
+        }
+        
+        final long minCode = ChunkKeys.morton(bounds.minX(), bounds.minZ());
+        final long maxCode = ChunkKeys.morton(bounds.maxX(), bounds.maxZ());
+        for (int level = minimumLevel.ordinal(); level < LEVELS.length; level++) {
+            final ConcurrentSkipListMap<Long, LagScore> scores = levels.get(level);
+            long code = minCode;
+            while (true) {
+                final Map.Entry<Long, LagScore> entry = scores.ceilingEntry(code);
+                if (entry == null || Long.compareUnsigned(entry.getKey(), maxCode) > 0) {
+                    break;
+                }
+                
+                final long found = entry.getKey();
+                if (bounds.contains(ChunkKeys.mortonX(found), ChunkKeys.mortonZ(found))) {
+                    consumer.accept(entry.getValue());
+                    if (found == maxCode) {
+                        break;
+                    }
+                    code = found + 1;
+                } else {
+                    code = nextInBox(found, minCode, maxCode);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the cached chunks of a world within a radius of a chunk.
+     * 
+     * @param worldName The world name
+     * @param chunkX The X coordinate of the center chunk
+     * @param chunkZ The Z coordinate of the center chunk
+     * @param radius The radius in chunks
+     * @param minimumLevel The lowest lag level to include
+     * @return The scores, in no particular order
+     */
+    public List<LagScore> getWithinRadius(final String worldName, final int chunkX, final int chunkZ,
+                                          final int radius, final LagLevel minimumLevel) {
+        final List<LagScore> found = new ArrayList<>();
+        final long radiusSquared = (long) radius * radius;
+        this.forEachInBox(worldName, box(chunkX, chunkZ, radius), minimumLevel, score -> {
+            if (distanceSquared(score, chunkX, chunkZ) <= radiusSquared) {
+                found.add(score);
+            }
+        });
+        return found;
+    }
+    
+    /**
+     * Get the cached chunks of a world nearest to a chunk.
+     * 
+     * The search looks at a square around the chunk and doubles its size until it holds
+     * enough chunks, then widens it once more to the distance of the farthest candidate,
+     * as a chunk in a corner of the square can be farther than one just outside of it.
+     * 
+     * @param worldName The world name
+     * @param chunkX The X coordinate of the center chunk
+     * @param chunkZ The Z coordinate of the center chunk
+     * @param count The maximum number of chunks to return
+     * @param minimumLevel The lowest lag level to include
+     * @param maxRadius The largest distance to search in chunks
+     * @return The scores, nearest first
+     */
+    public List<LagScore> getNearest(final String worldName, final int chunkX, final int chunkZ, final int count,
+                                     final LagLevel minimumLevel, final int maxRadius) {
+        final List<LagScore> candidates = new ArrayList<>();
+        if (count <= 0 || maxRadius < 0 || !this.worlds.containsKey(worldName)) {
+            return candidates;
+        }
+        
+        int radius = Math.min(INITIAL_SEARCH_RADIUS, maxRadius);
+        while (true) {
+            candidates.clear();
+            this.forEachInBox(worldName, box(chunkX, chunkZ, radius), minimumLevel, candidates::add);
+            if (candidates.size() >= count || radius >= maxRadius) {
+                break;
+            }
+            radius = (int) Math.min((long) radius * 2, maxRadius);
+        }
+        
+        final Comparator<LagScore> byDistance = Comparator.comparingLong(score -> distanceSquared(score, chunkX, chunkZ));
+        candidates.sort(byDistance);
+        if (candidates.size() >= count) {
+            // Chunks in the corners of the square are farther away than the radius, widen it to the farthest one kept
+            final long farthest = distanceSquared(candidates.get(count - 1), chunkX, chunkZ);
+            final int exactRadius = (int) Math.min(Math.ceil(Math.sqrt(farthest)), maxRadius);
+            if (exactRadius > radius) {
+                candidates.clear();
+                this.forEachInBox(worldName, box(chunkX, chunkZ, exactRadius), minimumLevel, candidates::add);
+                candidates.sort(byDistance);
+            }
+        }
+        
+        final long maxRadiusSquared = (long) maxRadius * maxRadius;
+        candidates.removeIf(score -> distanceSquared(score, chunkX, chunkZ) > maxRadiusSquared);
+        return candidates.size() > count ? new ArrayList<>(candidates.subList(0, count)) : candidates;
+    }
+    
+    void add(final LagScore score) {
+        this.worlds.computeIfAbsent(score.getWorldName(), world -> {
+            final List<ConcurrentSkipListMap<Long, LagScore>> levels = new ArrayList<>(LEVELS.length);
+            for (int level = 0; level < LEVELS.length; level++) {
+                levels.add(new ConcurrentSkipListMap<>(CODE_ORDER));
+            }
+            return levels;
+        }).get(score.getLagLevel().ordinal()).put(ChunkKeys.morton(score.getChunkX(), score.getChunkZ()), score);
+    }
+    
+    void remove(final LagScore score) {
+        final List<ConcurrentSkipListMap<Long, LagScore>> levels = this.worlds.get(score.getWorldName());
+        if (levels != null) {
+            levels.get(score.getLagLevel().ordinal()).remove(ChunkKeys.morton(score.getChunkX(), score.getChunkZ()), score);
+        }
+    }
+    
+    void clear() {
+        this.worlds.clear();
+    }
+    
+    private static HistoryFilter.ChunkBounds box(final int chunkX, final int chunkZ, final int radius) {
+        return new HistoryFilter.ChunkBounds(saturate((long) chunkX - radius), saturate((long) chunkZ - radius),
+            saturate((long) chunkX + radius), saturate((long) chunkZ + radius));
+    }
+    
+    private static int saturate(final long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+    
+    private static long distanceSquared(final LagScore score, final int chunkX, final int chunkZ) {
+        final long dx = (long) score.getChunkX() - chunkX;
+        final long dz = (long) score.getChunkZ() - chunkZ;
+        return dx * dx + dz * dz;
+    }
+    
+    /**
+     * Get the smallest Morton code inside a rectangle that is larger than a code outside of it
+     * (the BIGMIN of Tropf and Herzog). The rectangle is given by the codes of its corners.
+     * 
+     * @param code A code between the corners but outside the rectangle
+     * @param minCode The code of the lowest corner
+     * @param maxCode The code of the highest corner
+     * @return The next code inside the rectangle
+     */
+    private static long nextInBox(final long code, final long minCode, final long maxCode) {
+        long low = minCode;
+        long high = maxCode;
+        long next = maxCode;
+        for (int bit = 63; bit >= 0; bit--) {
+            final long mask = 1L << bit;
+            // The lower bits of the same coordinate as this bit
+            final long lower = (EVEN_BITS << (bit & 1)) & (mask - 1);
+            final boolean codeBit = (code & mask) != 0;
+            final boolean minBit = (low & mask) != 0;
+            final boolean maxBit = (high & mask) != 0;
+            
+            if (!codeBit && !minBit && maxBit) {
+                // The upper half of the range starts at this bit, remember it and continue in the lower half
+                next = (low | mask) & ~lower;
+                high = (high & ~mask) | lower;
+            } else if (!codeBit && minBit && maxBit) {
+                return low;
+            } else if (codeBit && !minBit && !maxBit) {
+                return next;
+            } else if (codeBit && !minBit && maxBit) {
+                low = (low | mask) & ~lower;
+            }
+        }
+        return next;
+    }
+}
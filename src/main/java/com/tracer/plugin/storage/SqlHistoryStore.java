@@ -0,0 +1,298 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagLevel;
+import com.tracer.plugin.analysis.LagScore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * History store for {@code storage.type: database}, backed by an embedded SQLite file.
+ * 
+ * Group commits are written as one transaction of batched prepared inserts. The table is
+ * indexed by timestamp and by world and chunk, so time ranges, world filters and retention
+ * are answered by the database instead of by scanning records on the heap. Queries stream
+ * their rows to the caller. SQLite runs in WAL mode so readers never block the writer.
+ */
+final class SqlHistoryStore implements HistoryStore {
+    
+    private static final String DRIVER = "org.sqlite.JDBC";
+    private static final int FETCH_SIZE = 512;
+    private static final LagLevel[] LEVELS = LagLevel.values();
+    
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS lag_history ("
+        + "timestamp INTEGER NOT NULL, world TEXT NOT NULL, chunk_x INTEGER NOT NULL, chunk_z INTEGER NOT NULL, "
+        + "entity_count INTEGER NOT NULL, tile_entity_count INTEGER NOT NULL, redstone_count INTEGER NOT NULL, "
+        + "overall_score REAL NOT NULL, current_tps REAL NOT NULL, lag_level INTEGER NOT NULL)";
+    private static final String CREATE_TIME_INDEX =
+        "CREATE INDEX IF NOT EXISTS lag_history_time ON lag_history (timestamp)";
+    private static final String CREATE_CHUNK_INDEX =
+        "CREATE INDEX IF NOT EXISTS lag_history_chunk ON lag_history (world, chunk_x, chunk_z, timestamp)";
+    private static final String INSERT = "INSERT INTO lag_history (timestamp, world, chunk_x, chunk_z, "
+        + "entity_count, tile_entity_count, redstone_count, overall_score, current_tps, lag_level) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT = "SELECT timestamp, world, chunk_x, chunk_z, entity_count, "
+        + "tile_entity_count, redstone_count, overall_score, current_tps, lag_level FROM lag_history "
+        + "WHERE timestamp >= ? AND timestamp <= ?";
+    
+    private final Path file;
+    private final ConnectionPool pool;
+    private final HistoryWriter writer;
+    private final AtomicLong recordCount;
+    
+    SqlHistoryStore(final Path file, final Logger logger, final int poolSize, final long commitIntervalMillis,
+                    final int batchSize) throws IOException {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("SQLite JDBC driver is not available", e);
+        }
+        
+        this.file = file;
+        this.pool = new ConnectionPool("jdbc:sqlite:" + file.toAbsolutePath(), poolSize,
+            "PRAGMA journal_mode=WAL", "PRAGMA synchronous=NORMAL", "PRAGMA busy_timeout=5000");
+        this.recordCount = new AtomicLong();
+        
+        final Connection connection = this.borrow();
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            statement.execute(CREATE_TIME_INDEX);
+            statement.execute(CREATE_CHUNK_INDEX);
+            try (final ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM lag_history")) {
+                this.recordCount.set(result.next() ? result.getLong(1) : 0L);
+            }
+        } catch (SQLException e) {
+            this.pool.close();
+            throw new IOException("Failed to open history database " + file.getFileName(), e);
+        } finally {
+            this.pool.release(connection);
+        }
+        
+        this.writer = new HistoryWriter(this::write, logger, commitIntervalMillis, batchSize);
+    }
+    
+    @Override
+    public void start() {
+        this.writer.start();
+    }
+    
+    @Override
+    public void importRecords(final Collection<LagScore> scores) throws IOException {
+        this.insert(scores);
+    }
+    
+    @Override
+    public void store(final LagScore score) {
+        this.writer.enqueue(score);
+    }
+    
+    @Override
+    public void query(final HistoryFilter filter, final Consumer<LagScore> consumer) throws IOException {
+        // Every part of the filter becomes a condition of the WHERE clause
+        final StringBuilder sql = new StringBuilder(SELECT);
+        if (filter.worldName() != null) {
+            sql.append(" AND world = ?");
+        }
+        if (filter.minimumLevel() != null) {
+            sql.append(" AND lag_level >= ?");
+        }
+        if (filter.bounds() != null) {
+            sql.append(" AND chunk_x BETWEEN ? AND ? AND chunk_z BETWEEN ? AND ?");
+        }
+        sql.append(" AND rowid <= ? ORDER BY timestamp");
+        
+        this.writer.read(() -> {
+            // Rows inserted after the pin are read from the pending records instead
+            final long lastRowId = this.lastRowId();
+            return committed -> this.select(sql.toString(), filter, lastRowId, committed);
+        }, score -> {
+            if (filter.matches(score)) {
+                consumer.accept(score);
+            }
+        });
+    }
+    
+    @Override
+    public long deleteBefore(final long cutoffMillis) throws IOException {
+        // One indexed range delete
+        final Connection connection = this.borrow();
+        try (final PreparedStatement statement = connection.prepareStatement("DELETE FROM lag_history WHERE timestamp < ?")) {
+            statement.setLong(1, cutoffMillis);
+            final long deleted = statement.executeUpdate();
+            this.recordCount.addAndGet(-deleted);
+            return deleted;
+        } catch (SQLException e) {
+            throw new IOException("Failed to delete history records", e);
+        } finally {
+            this.pool.release(connection);
+        }
+    }
+    
+    @Override
+    public long clear() throws IOException {
+        return this.writer.clear(() -> this.deleteBefore(Long.MAX_VALUE));
+    }
+    
+    @Override
+    public long getRecordCount() {
+        return this.recordCount.get();
+    }
+    
+    @Override
+    public int getQueueDepth() {
+        return this.writer.getQueueDepth();
+    }
+    
+    @Override
+    public long getDiskSize() {
+        long size = 0L;
+        for (Path path : new Path[] {this.file, this.file.resolveSibling(this.file.getFileName() + "-wal")}) {
+            try {
+                if (Files.exists(path)) {
+                    size += Files.size(path);
+                }
+            } catch (IOException e) {
+                // Checkpointed while reading
+            }
+        }
+        return size;
+    }
+    
+    @Override
+    public void configure(final long commitIntervalMillis, final int batchSize) {
+        this.writer.configure(commitIntervalMillis, batchSize);
+    }
+    
+    @Override
+    public void addStats(final Map<String, Object> stats) {
+        stats.put("history_store", "database");
+        this.writer.addStats(stats);
+    }
+    
+    @Override
+    public void close() {
+        this.writer.shutdown();
+        this.pool.close();
+    }
+    
+    private void write(final List<LagScore> batch, final long now) throws IOException {
+        if (!batch.isEmpty()) {
+            this.insert(batch);
+        }
+    }
+    
+    /**
+     * Insert records as one transaction of batched statements.
+     */
+    private void insert(final Collection<LagScore> scores) throws IOException {
+        final Connection connection = this.borrow();
+        try {
+            connection.setAutoCommit(false);
+            try (final PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (LagScore score : scores) {
+                    statement.setLong(1, score.getTimestamp());
+                    statement.setString(2, score.getWorldName());
+                    statement.setInt(3, score.getChunkX());
+                    statement.setInt(4, score.getChunkZ());
+                    statement.setInt(5, score.getEntityCount());
+                    statement.setInt(6, score.getTileEntityCount());
+                    statement.setInt(7, score.getRedstoneCount());
+                    statement.setDouble(8, score.getOverallScore());
+                    statement.setDouble(9, score.getCurrentTps());
+                    statement.setInt(10, score.getLagLevel().ordinal());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+                this.recordCount.addAndGet(scores.size());
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to insert " + scores.size() + " history records", e);
+        } finally {
+            this.pool.release(connection);
+        }
+    }
+    
+    /**
+     * Stream the rows selected by a filter query, up to a rowid.
+     */
+    private void select(final String sql, final HistoryFilter filter, final long lastRowId,
+                        final Consumer<LagScore> consumer) throws IOException {
+        final Connection connection = this.borrow();
+        try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setFetchSize(FETCH_SIZE);
+            int parameter = 1;
+            statement.setLong(parameter++, filter.fromMillis());
+            statement.setLong(parameter++, filter.toMillis());
+            if (filter.worldName() != null) {
+                statement.setString(parameter++, filter.worldName());
+            }
+            if (filter.minimumLevel() != null) {
+                statement.setInt(parameter++, filter.minimumLevel().ordinal());
+            }
+            if (filter.bounds() != null) {
+                statement.setInt(parameter++, filter.bounds().minX());
+                statement.setInt(parameter++, filter.bounds().maxX());
+                statement.setInt(parameter++, filter.bounds().minZ());
+                statement.setInt(parameter++, filter.bounds().maxZ());
+            }
+            statement.setLong(parameter, lastRowId);
+            
+            try (final ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    final int level = result.getInt(10);
+                    if (level < 0 || level >= LEVELS.length) {
+                        continue;
+                    }
+                    consumer.accept(LagScore.restore(result.getString(2), result.getInt(3), result.getInt(4),
+                        result.getLong(1), result.getInt(5), result.getInt(6), result.getInt(7),
+                        result.getDouble(8), result.getDouble(9), LEVELS[level]));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to query history database", e);
+        } finally {
+            this.pool.release(connection);
+        }
+    }
+    
+    /**
+     * Get the rowid of the newest row. Rowids grow with every insert, so it marks what is committed.
+     */
+    private long lastRowId() throws IOException {
+        final Connection connection = this.borrow();
+        try (final Statement statement = connection.createStatement();
+             final ResultSet result = statement.executeQuery("SELECT MAX(rowid) FROM lag_history")) {
+            return result.next() ? result.getLong(1) : 0L;
+        } catch (SQLException e) {
+            throw new IOException("Failed to query history database", e);
+        } finally {
+            this.pool.release(connection);
+        }
+    }
+    
+    private Connection borrow() throws IOException {
+        try {
+            return this.pool.borrow();
+        } catch (SQLException e) {
+            throw new IOException("No connection to the history database", e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.tracer.plugin.storage;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for expiring timers in constant amortized time.
+ * 
+ * The wheel has four levels of 64 buckets with power-of-two spans of roughly one second,
+ * one minute, one hour and three days. A timer is linked into the bucket of the coarsest
+ * level its delay still fits, and is moved down a level when that bucket comes due, so
+ * advancing the wheel only touches timers that are due or close to due. Timers fire up to
+ * one level-0 span late. Timers further out than the top level are parked in it and
+ * re-placed whenever their bucket comes around.
+ * 
+ * Not thread-safe, the owner must guard all calls.
+ * 
+ * @param <T> The timer type
+ */
+final class TimerWheel<T extends TimerWheel.Timer> {
+    
+    private static final int[] SHIFTS = {10, 16, 22, 28};
+    private static final int BUCKETS = 64;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    
+    private final Timer[][] wheel;
+    private long time;
+    
+    TimerWheel(final long time) {
+        this.time = time;
+        this.wheel = new Timer[SHIFTS.length][BUCKETS];
+        for (int level = 0; level < SHIFTS.length; level++) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                this.wheel[level][bucket] = new Sentinel();
+            }
+        }
+    }
+    
+    /**
+     * Schedule a timer at its expiration time, moving it if it is already scheduled.
+     * 
+     * @param timer The timer
+     */
+    void schedule(final T timer) {
+        if (timer.nextInBucket != null) {
+            unlink(timer);
+        }
+        this.link(timer);
+    }
+    
+    /**
+     * Remove a timer from the wheel. Does nothing if it is not scheduled.
+     * 
+     * @param timer The timer
+     */
+    void deschedule(final T timer) {
+        if (timer.nextInBucket != null) {
+            unlink(timer);
+        }
+    }
+    
+    /**
+     * Advance the wheel, descheduling and handing over every timer that expired.
+     * 
+     * @param now The current time in milliseconds
+     * @param onExpire Receives each expired timer after it has been descheduled
+     * @return The number of expired timers
+     */
+    @SuppressWarnings("unchecked")
+    int advance(final long now, final Consumer<T> onExpire) {
+        final long previous = this.time;
+        if (now <= previous) {
+            return 0;
+        }
+        this.time = now;
+        
+        int expired = 0;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            final long previousTicks = previous >>> SHIFTS[level];
+            final long currentTicks = now >>> SHIFTS[level];
+            if (currentTicks == previousTicks) {
+                break;
+            }
+            
+            // Level 0 expires the buckets that have fully passed, higher levels
+            // cascade the buckets that have just become current
+            final long first = level == 0 ? previousTicks : previousTicks + 1;
+            final long count = Math.min(currentTicks - previousTicks, BUCKETS);
+            for (long tick = first; tick < first + count; tick++) {
+                final Timer sentinel = this.wheel[level][(int) (tick & BUCKET_MASK)];
+                
+                // Detach the bucket, then expire or re-place each of its timers
+                Timer timer = sentinel.nextInBucket;
+                sentinel.nextInBucket = sentinel;
+                sentinel.prevInBucket = sentinel;
+                while (timer != sentinel) {
+                    final Timer next = timer.nextInBucket;
+                    timer.prevInBucket = null;
+                    timer.nextInBucket = null;
+                    
+                    if (timer.expiresAt <= now) {
+                        expired++;
+                        onExpire.accept((T) timer);
+                    } else {
+                        this.link(timer);
+                    }
+                    timer = next;
+                }
+            }
+        }
+        return expired;
+    }
+    
+    /**
+     * Remove all timers.
+     */
+    void clear() {
+        for (Timer[] level : this.wheel) {
+            for (Timer sentinel : level) {
+                Timer timer = sentinel.nextInBucket;
+                while (timer != sentinel) {
+                    final Timer next = timer.nextInBucket;
+                    timer.prevInBucket = null;
+                    timer.nextInBucket = null;
+                    timer = next;
+                }
+                sentinel.nextInBucket = sentinel;
+                sentinel.prevInBucket = sentinel;
+            }
+        }
+    }
+    
+    private void link(final Timer timer) {
+        // Overdue timers go into the current bucket and expire on the next advance
+        final long expiresAt = Math.max(timer.expiresAt, this.time);
+        final long delay = expiresAt - this.time;
+        
+        int level = 0;
+        while (level < SHIFTS.length - 1 && delay >= (1L << SHIFTS[level + 1])) {
+            level++;
+        }
+        
+        final Timer sentinel = this.wheel[level][(int) ((expiresAt >>> SHIFTS[level]) & BUCKET_MASK)];
+        timer.nextInBucket = sentinel;
+        timer.prevInBucket = sentinel.prevInBucket;
+        sentinel.prevInBucket.nextInBucket = timer;
+        sentinel.prevInBucket = timer;
+    }
+    
+    private static void unlink(final Timer timer) {
+        timer.prevInBucket.nextInBucket = timer.nextInBucket;
+        timer.nextInBucket.prevInBucket = timer.prevInBucket;
+        timer.prevInBucket = null;
+        timer.nextInBucket = null;
+    }
+    
+    /**
+     * An entry that can be scheduled in the wheel.
+     */
+    abstract static class Timer {
+        long expiresAt;
+        Timer prevInBucket;
+        Timer nextInBucket;
+    }
+    
+    /**
+     * Head of a bucket's circular list.
+     */
+    private static final class Sentinel extends Timer {
+        private Sentinel() {
+            this.prevInBucket = this;
+            this.nextInBucket = this;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.tracer.plugin.storage;
+
+import com.tracer.plugin.analysis.LagScore;
+import com.tracer.plugin.analysis.TypeCounts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverted index from entity types and tile entity materials to the cached chunks that
+ * contain them, for finding the sources of lag without scanning the server again.
+ * 
+ * Every type keeps a concurrent skip list of the chunks it occurs in, ordered from the
+ * highest count to the lowest, so a page of the chunks with the most of a type is read
+ * from the head of the list. The number of chunks and the total count of each type are
+ * kept alongside.
+ * 
+ * The index is updated by the cache while it holds its lock, reads take no lock and see
+ * a weakly consistent view of concurrent updates.
+ */
+public final class TypeIndex {
+    
+    // Highest count first, then by chunk so distinct chunks never compare equal
+    private static final Comparator<Match> ORDER = Comparator
+        .comparingInt(Match::count).reversed()
+        .thenComparing(match -> match.score().getWorldName())
+        .thenComparingInt(match -> match.score().getChunkX())
+        .thenComparingInt(match -> match.score().getChunkZ());
+    
+    private final Map<Enum<?>, Postings> types;
+    
+    TypeIndex() {
+        this.types = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Get a page of the cached chunks with the highest count of a type.
+     * 
+     * @param type An entity type or a material
+     * @param offset The number of chunks to skip
+     * @param limit The maximum number of chunks to return
+     * @return The chunks of the page, highest count first
+     */
+    public List<Match> getPage(final Enum<?> type, final int offset, final int limit) {
+        final Postings postings = this.types.get(type);
+        if (postings == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        
+        final List<Match> page = new ArrayList<>(Math.min(limit, 64));
+        final Iterator<Match> iterator = postings.chunks.iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+    
+    /**
+     * Count the cached chunks that contain a type.
+     * 
+     * @param type An entity type or a material
+     * @return The number of chunks
+     */
+    public int countChunks(final Enum<?> type) {
+        final Postings postings = this.types.get(type);
+        return postings != null ? postings.chunkCount.get() : 0;
+    }
+    
+    /**
+     * Get the total count of a type over the cached chunks.
+     * 
+     * @param type An entity type or a material
+     * @return The total count
+     */
+    public long countTotal(final Enum<?> type) {
+        final Postings postings = this.types.get(type);
+        return postings != null ? postings.total.get() : 0L;
+    }
+    
+    /**
+     * Get the types that occur in at least one cached chunk.
+     * 
+     * @return The entity types and materials
+     */
+    public Set<Enum<?>> getIndexedTypes() {
+        final Set<Enum<?>> indexed = new HashSet<>();
+        this.types.forEach((type, postings) -> {
+            if (postings.chunkCount.get() > 0) {
+                indexed.add(type);
+            }
+        });
+        return indexed;
+    }
+    
+    void add(final LagScore score) {
+        final TypeCounts counts = score.getTypeCounts();
+        for (int index = 0; index < counts.size(); index++) {
+            this.types.computeIfAbsent(counts.getType(index), type -> new Postings())
+                .add(new Match(score, counts.getCount(index)));
+        }
+    }
+    
+    void remove(final LagScore score) {
+        final TypeCounts counts = score.getTypeCounts();
+        for (int index = 0; index < counts.size(); index++) {
+            final Postings postings = this.types.get(counts.getType(index));
+            if (postings != null) {
+                postings.remove(new Match(score, counts.getCount(index)));
+            }
+        }
+    }
+    
+    void clear() {
+        this.types.clear();
+    }
+    
+    /**
+     * A cached chunk and the count of the type it was found by.
+     * 
+     * @param score The cached score of the chunk
+     * @param count The count of the type in the chunk
+     */
+    public record Match(LagScore score, int count) {
+    }
+    
+    /**
+     * The chunks one type occurs in.
+     */
+    private static final class Postings {
+        
+        private final ConcurrentSkipListSet<Match> chunks;
+        private final AtomicInteger chunkCount;
+        private final AtomicLong total;
+        
+        private Postings() {
+            this.chunks = new ConcurrentSkipListSet<>(ORDER);
+            this.chunkCount = new AtomicInteger();
+            this.total = new AtomicLong();
+        }
+        
+        private void add(final Match match) {
+            if (this.chunks.add(match)) {
+                this.chunkCount.incrementAndGet();
+                this.total.addAndGet(match.count());
+            }
+        }
+        
+        private void remove(final Match match) {
+            if (this.chunks.remove(match)) {
+                this.chunkCount.decrementAndGet();
+                this.total.addAndGet(-match.count());
+            }
+        }
+    }
+}
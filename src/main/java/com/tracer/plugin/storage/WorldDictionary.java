@@ -0,0 +1,69 @@
+package com.tracer.plugin.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only dictionary of world names, so records store a world as an int id.
+ * Ids are the line numbers of the dictionary file.
+ * 
+ * The owner must guard {@link #id(String)}, names can be looked up from any thread.
+ */
+final class WorldDictionary {
+    
+    private final Path file;
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    
+    WorldDictionary(final Path file) throws IOException {
+        this.file = file;
+        this.names = new CopyOnWriteArrayList<>();
+        this.ids = new HashMap<>();
+        
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                this.ids.putIfAbsent(line, this.names.size());
+                this.names.add(line);
+            }
+        }
+    }
+    
+    /**
+     * Get the id of a world, adding it to the dictionary file first if it is new.
+     * 
+     * @param worldName The world name
+     * @return The id
+     * @throws IOException If the dictionary cannot be written
+     */
+    int id(final String worldName) throws IOException {
+        final Integer id = this.ids.get(worldName);
+        if (id != null) {
+            return id;
+        }
+        
+        // New world, append it to the dictionary durably before any record references it
+        Files.writeString(this.file, worldName + "\n", StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        final int newId = this.names.size();
+        this.names.add(worldName);
+        this.ids.put(worldName, newId);
+        return newId;
+    }
+    
+    /**
+     * Get the name of a world id.
+     * 
+     * @param id The id
+     * @return The world name, or null if the id is unknown
+     */
+    String name(final int id) {
+        return id >= 0 && id < this.names.size() ? this.names.get(id) : null;
+    }
+}
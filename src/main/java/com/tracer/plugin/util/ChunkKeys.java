@@ -0,0 +1,115 @@
+package com.tracer.plugin.util;
+
+/**
+ * Packs chunk and block coordinates into single long keys.
+ * Chunk keys use the same layout as Paper's {@code Chunk#getChunkKey()}.
+ */
+public final class ChunkKeys {
+    
+    private ChunkKeys() {
+    }
+    
+    /**
+     * Pack chunk coordinates into a chunk key.
+     * 
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The packed chunk key
+     */
+    public static long pack(final int chunkX, final int chunkZ) {
+        return ((long) chunkX & 0xFFFFFFFFL) | (((long) chunkZ & 0xFFFFFFFFL) << 32);
+    }
+    
+    /**
+     * Get the chunk X coordinate from a chunk key.
+     * 
+     * @param key The packed chunk key
+     * @return The chunk X coordinate
+     */
+    public static int unpackX(final long key) {
+        return (int) key;
+    }
+    
+    /**
+     * Get the chunk Z coordinate from a chunk key.
+     * 
+     * @param key The packed chunk key
+     * @return The chunk Z coordinate
+     */
+    public static int unpackZ(final long key) {
+        return (int) (key >>> 32);
+    }
+    
+    /**
+     * Interleave chunk coordinates into a Morton (Z-order) code. Codes compared as unsigned
+     * values keep chunks that are close together mostly close together, and every rectangle
+     * of chunks lies between the codes of its lowest and highest corner.
+     * 
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The Morton code, X in the even bits and Z in the odd bits
+     */
+    public static long morton(final int chunkX, final int chunkZ) {
+        // Flipping the sign bits makes negative coordinates order before positive ones
+        return spread(chunkX ^ Integer.MIN_VALUE) | (spread(chunkZ ^ Integer.MIN_VALUE) << 1);
+    }
+    
+    /**
+     * Get the chunk X coordinate from a Morton code.
+     * 
+     * @param code The Morton code
+     * @return The chunk X coordinate
+     */
+    public static int mortonX(final long code) {
+        return compact(code) ^ Integer.MIN_VALUE;
+    }
+    
+    /**
+     * Get the chunk Z coordinate from a Morton code.
+     * 
+     * @param code The Morton code
+     * @return The chunk Z coordinate
+     */
+    public static int mortonZ(final long code) {
+        return compact(code >>> 1) ^ Integer.MIN_VALUE;
+    }
+    
+    /**
+     * Pack block coordinates into a block key.
+     * X and Z use 26 bits each and Y uses 12 bits, which covers the full world border.
+     * 
+     * @param x The block X coordinate
+     * @param y The block Y coordinate
+     * @param z The block Z coordinate
+     * @return The packed block key
+     */
+    public static long blockKey(final int x, final int y, final int z) {
+        return (((long) x & 0x3FFFFFFL) << 38) | (((long) z & 0x3FFFFFFL) << 12) | ((long) y & 0xFFFL);
+    }
+    
+    /**
+     * Move the 32 bits of a value to the even bits of a long.
+     */
+    private static long spread(final int value) {
+        long bits = value & 0xFFFFFFFFL;
+        bits = (bits | (bits << 16)) & 0x0000FFFF0000FFFFL;
+        bits = (bits | (bits << 8)) & 0x00FF00FF00FF00FFL;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        bits = (bits | (bits << 2)) & 0x3333333333333333L;
+        bits = (bits | (bits << 1)) & 0x5555555555555555L;
+        return bits;
+    }
+    
+    /**
+     * Gather the even bits of a long into an int.
+     */
+    private static int compact(final long code) {
+        long bits = code & 0x5555555555555555L;
+        bits = (bits | (bits >>> 1)) & 0x3333333333333333L;
+        bits = (bits | (bits >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        bits = (bits | (bits >>> 4)) & 0x00FF00FF00FF00FFL;
+        bits = (bits | (bits >>> 8)) & 0x0000FFFF0000FFFFL;
+        bits = (bits | (bits >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) bits;
+    }
+}
@@ -0,0 +1,236 @@
+package com.tracer.plugin.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to objects.
+ * Uses linear probing with backward-shift deletion, so there are no tombstones
+ * and no boxed keys. Not thread-safe; callers must synchronize access.
+ * 
+ * @param <V> The value type
+ */
+public final class LongObjectHashMap<V> {
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+    
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+    
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public LongObjectHashMap(final int expectedSize) {
+        final int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR));
+        this.allocate(capacity);
+    }
+    
+    /**
+     * Get the value for a key.
+     * 
+     * @param key The key
+     * @return The value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        int index = mix(key) & this.mask;
+        while (true) {
+            final Object value = this.values[index];
+            if (value == null) {
+                return null;
+            }
+            if (this.keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & this.mask;
+        }
+    }
+    
+    /**
+     * Check if a key is present.
+     * 
+     * @param key The key
+     * @return true if the key is present
+     */
+    public boolean containsKey(final long key) {
+        return this.get(key) != null;
+    }
+    
+    /**
+     * Associate a value with a key.
+     * 
+     * @param key The key
+     * @param value The value, must not be null
+     * @return The previous value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        
+        int index = mix(key) & this.mask;
+        while (true) {
+            final Object existing = this.values[index];
+            if (existing == null) {
+                this.keys[index] = key;
+                this.values[index] = value;
+                if (++this.size > this.resizeThreshold) {
+                    this.rehash(this.keys.length << 1);
+                }
+                return null;
+            }
+            if (this.keys[index] == key) {
+                this.values[index] = value;
+                return (V) existing;
+            }
+            index = (index + 1) & this.mask;
+        }
+    }
+    
+    /**
+     * Remove the value for a key.
+     * 
+     * @param key The key
+     * @return The removed value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long key) {
+        int index = mix(key) & this.mask;
+        while (true) {
+            final Object value = this.values[index];
+            if (value == null) {
+                return null;
+            }
+            if (this.keys[index] == key) {
+                this.shiftBack(index);
+                this.size--;
+                return (V) value;
+            }
+            index = (index + 1) & this.mask;
+        }
+    }
+    
+    /**
+     * Visit every entry in the map.
+     * 
+     * @param consumer The consumer receiving each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final LongObjectConsumer<? super V> consumer) {
+        for (int i = 0; i < this.values.length; i++) {
+            final Object value = this.values[i];
+            if (value != null) {
+                consumer.accept(this.keys[i], (V) value);
+            }
+        }
+    }
+    
+    /**
+     * Get the number of entries.
+     * 
+     * @return The size
+     */
+    public int size() {
+        return this.size;
+    }
+    
+    /**
+     * Check if the map is empty.
+     * 
+     * @return true if there are no entries
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+    
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+    
+    /**
+     * Get the number of slots in the backing table.
+     * 
+     * @return The table capacity
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+    
+    /**
+     * Close the gap left by a removed entry by moving later entries of the probe chain back.
+     */
+    private void shiftBack(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & this.mask;
+            final Object value = this.values[index];
+            if (value == null) {
+                break;
+            }
+            
+            final int home = mix(this.keys[index]) & this.mask;
+            // Move the entry if its home slot is not in the cyclic range (gap, index]
+            if (((index - home) & this.mask) >= ((index - gap) & this.mask)) {
+                this.keys[gap] = this.keys[index];
+                this.values[gap] = value;
+                gap = index;
+            }
+        }
+        this.values[gap] = null;
+    }
+    
+    private void rehash(final int newCapacity) {
+        final long[] oldKeys = this.keys;
+        final Object[] oldValues = this.values;
+        this.allocate(newCapacity);
+        
+        for (int i = 0; i < oldValues.length; i++) {
+            final Object value = oldValues[i];
+            if (value == null) {
+                continue;
+            }
+            int index = mix(oldKeys[i]) & this.mask;
+            while (this.values[index] != null) {
+                index = (index + 1) & this.mask;
+            }
+            this.keys[index] = oldKeys[i];
+            this.values[index] = value;
+        }
+    }
+    
+    private void allocate(final int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    private static int tableSizeFor(final int size) {
+        final int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        return Math.max(capacity, DEFAULT_CAPACITY);
+    }
+    
+    private static int mix(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+    
+    /**
+     * Consumer of primitive long keys and object values.
+     * 
+     * @param <V> The value type
+     */
+    @FunctionalInterface
+    public interface LongObjectConsumer<V> {
+        void accept(long key, V value);
+    }
+}
@@ -100,6 +100,14 @@ public final class VisualizationManager {
         final String message = this.configManager.getMessage("messages.visualization.enabled", "Visualization enabled");
         player.sendMessage(ChatColor.GREEN + message);
         
+        // Show the cached results around the player right away instead of waiting for the next scan
+        final List<LagScore> nearbyScores = this.plugin.getDataStorage().getSpatialIndex().getWithinRadius(
+            player.getWorld().getName(), player.getLocation().getBlockX() >> 4, player.getLocation().getBlockZ() >> 4,
+            this.configManager.getDefaultScanRadius(), LagLevel.LOW);
+        if (!nearbyScores.isEmpty()) {
+            this.updateVisualization(player, nearbyScores);
+        }
+        
         this.plugin.debugLog("Enabled visualization for player: " + player.getName());
     }
     